@@ -0,0 +1,133 @@
+package com.davidholiday.camel.harness.config;
+
+
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.DynamicStringProperty;
+
+import org.apache.camel.component.properties.PropertiesComponent;
+import org.apache.camel.component.properties.PropertiesLocation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * camel properties component that resolves {{...}} placeholders from archaius, so routes and expressions see the
+ * current value of a property rather than whatever was in a properties file when the context started. register it
+ * under the name "properties" before any routes are added:
+ *
+ *   camelContext.addComponent("properties", new ArchaiusPropertiesComponent());
+ *
+ * every uri is compiled once into a PlaceholderTemplate and its resolution cached. the cache is invalidated per
+ * property by archaius callbacks on the properties the placeholders refer to, so resolving a uri whose properties
+ * haven't changed is a map lookup and a volatile read. uris the templates can't handle go through the regular
+ * PropertiesComponent, which reads archaius through an ArchaiusPropertiesResolver. so do placeholders for properties
+ * archaius doesn't have when the component has locations, in case a location has them - a {{key:default}} placeholder
+ * only falls back to its default when neither does.
+ *
+ * @implNote an endpoint resolves its uri when its route is created, so a change to a placeholder in an endpoint uri
+ * still needs the route recreated (ShutDownAndRecreateRoutesRunnable's selective cycling traces placeholders for
+ * that). placeholders resolved at runtime - in simple expressions, toD and the like - pick up changes straight away.
+ */
+public class ArchaiusPropertiesComponent extends PropertiesComponent {
+
+    // uri -> its compiled template
+    private final ConcurrentMap<String, PlaceholderTemplate> placeholderTemplateMap = new ConcurrentHashMap<>();
+
+    // property name -> the templates with a placeholder for it
+    private final ConcurrentMap<String, Set<PlaceholderTemplate>> propertyNameToTemplateSetMap =
+            new ConcurrentHashMap<>();
+
+    // property name -> the archaius property it's read from
+    private final ConcurrentMap<String, DynamicStringProperty> dynamicPropertyMap = new ConcurrentHashMap<>();
+
+    private final ArchaiusPropertiesResolver archaiusPropertiesResolver = new ArchaiusPropertiesResolver(this);
+
+
+    public ArchaiusPropertiesComponent() {
+        super();
+        setPropertiesResolver(archaiusPropertiesResolver);
+
+        // the fallback path has to see current archaius values, so what the resolver returns can't be kept around
+        setCache(false);
+    }
+
+
+    @Override
+    public String parseUri(String uri, List<PropertiesLocation> locationList) throws Exception {
+        if (uri == null || uri.contains(getPrefixToken()) == false) {
+            return super.parseUri(uri, locationList);
+        }
+
+        PlaceholderTemplate placeholderTemplate = placeholderTemplateMap.get(uri);
+        if (placeholderTemplate == null) {
+            placeholderTemplate = placeholderTemplateMap.computeIfAbsent(uri, this::compile);
+        }
+
+        boolean hasLocations = locationList != null && locationList.isEmpty() == false;
+        String resolvedUri = placeholderTemplate.resolve(getOverrideProperties(), hasLocations);
+        return resolvedUri == null ? super.parseUri(uri, locationList) : resolvedUri;
+    }
+
+
+    @Override
+    protected void doStop() throws Exception {
+        archaiusPropertiesResolver.close();
+        super.doStop();
+    }
+
+
+    /**
+     * @return how many uris have been compiled
+     */
+    public int getPlaceholderTemplateCount() { return placeholderTemplateMap.size(); }
+
+
+    /**
+     *
+     * @param uri
+     * @return
+     */
+    private PlaceholderTemplate compile(String uri) {
+        PlaceholderTemplate placeholderTemplate =
+                new PlaceholderTemplate(uri, getPrefixToken(), getSuffixToken(), this::getDynamicProperty);
+
+        for (String propertyName : placeholderTemplate.getPropertyNameSet()) {
+            propertyNameToTemplateSetMap.computeIfAbsent(propertyName, key -> ConcurrentHashMap.newKeySet())
+                                        .add(placeholderTemplate);
+        }
+
+        return placeholderTemplate;
+    }
+
+
+    /**
+     * the callback only fires once archaius has the new value, so a resolution can't pick up the old value after the
+     * cache has been invalidated
+     *
+     * @param propertyName
+     * @return
+     */
+    private DynamicStringProperty getDynamicProperty(String propertyName) {
+        return dynamicPropertyMap.computeIfAbsent(propertyName, key -> {
+            DynamicStringProperty dynamicProperty = DynamicPropertyFactory.getInstance().getStringProperty(key, null);
+            dynamicProperty.addCallback(() -> invalidate(key));
+            return dynamicProperty;
+        });
+    }
+
+
+    /**
+     * drops the cached resolutions that depend on the changed property
+     *
+     * @param propertyName
+     */
+    private void invalidate(String propertyName) {
+        propertyNameToTemplateSetMap.getOrDefault(propertyName, Collections.emptySet())
+                                    .forEach(PlaceholderTemplate::invalidate);
+    }
+
+}
@@ -0,0 +1,142 @@
+package com.davidholiday.camel.harness.config;
+
+
+import com.netflix.config.ConfigurationManager;
+import com.netflix.config.DynamicPropertyFactory;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.component.properties.DefaultPropertiesResolver;
+import org.apache.camel.component.properties.PropertiesComponent;
+import org.apache.camel.component.properties.PropertiesLocation;
+import org.apache.camel.component.properties.PropertiesResolver;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+import org.apache.commons.configuration.event.ConfigurationListener;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * resolves camel properties from archaius. properties from the PropertiesComponent's locations, if it has any, are
+ * read the usual way and anything archaius also has is overridden with the archaius value.
+ *
+ * walking archaius is the expensive part, so what's resolved is kept per location list and thrown away whenever
+ * archaius reports a change. a fallback resolution that nothing has changed under since the last one doesn't touch
+ * archaius or the locations at all. the locations themselves are only re-read after an archaius change - the same as
+ * camel's own cache, which never re-reads them.
+ */
+public class ArchaiusPropertiesResolver implements PropertiesResolver, ConfigurationListener, AutoCloseable {
+
+    private final PropertiesResolver locationPropertiesResolver;
+
+    // location list -> what was resolved for it. emptied by every archaius change
+    private final Map<List<PropertiesLocation>, Properties> resolvedPropertiesMap = new ConcurrentHashMap<>();
+
+    // bumped on every archaius change so a resolution that raced one isn't kept. guarded by this
+    private long generation;
+
+    // guarded by this
+    private boolean listening;
+
+
+    /**
+     *
+     * @param propertiesComponent the component whose locations are resolved
+     */
+    public ArchaiusPropertiesResolver(PropertiesComponent propertiesComponent) {
+        this.locationPropertiesResolver = new DefaultPropertiesResolver(propertiesComponent);
+    }
+
+
+    @Override
+    public Properties resolveProperties(CamelContext camelContext,
+                                        boolean ignoreMissingLocation,
+                                        List<PropertiesLocation> locationList) throws Exception {
+
+        Properties properties = resolvedPropertiesMap.get(locationList);
+        if (properties != null) {
+            return properties;
+        }
+
+        long startGeneration;
+        synchronized (this) {
+            if (listening == false) {
+                // archaius' own listener has to come first so its properties have the new value by the time this
+                // one drops what was resolved from the old one
+                DynamicPropertyFactory.getInstance();
+                ConfigurationManager.getConfigInstance().addConfigurationListener(this);
+                listening = true;
+            }
+
+            startGeneration = generation;
+        }
+
+        properties = new Properties();
+
+        if (locationList.isEmpty() == false) {
+            properties.putAll(
+                    locationPropertiesResolver.resolveProperties(camelContext, ignoreMissingLocation, locationList)
+            );
+        }
+
+        AbstractConfiguration configuration = ConfigurationManager.getConfigInstance();
+        Iterator<String> keyIterator = configuration.getKeys();
+
+        while (keyIterator.hasNext()) {
+            String key = keyIterator.next();
+            String value = DynamicPropertyFactory.getInstance().getStringProperty(key, null).get();
+
+            if (value != null) {
+                properties.setProperty(key, value);
+            }
+        }
+
+        synchronized (this) {
+            if (generation == startGeneration) {
+                resolvedPropertiesMap.put(new ArrayList<>(locationList), properties);
+            }
+        }
+
+        return properties;
+    }
+
+
+    /**
+     *
+     * @param event
+     */
+    @Override
+    public void configurationChanged(ConfigurationEvent event) {
+        // the after event is the one that comes once archaius has the new value
+        if (event.isBeforeUpdate()) {
+            return;
+        }
+
+        synchronized (this) {
+            generation++;
+            resolvedPropertiesMap.clear();
+        }
+    }
+
+
+    /**
+     * stops following archaius and forgets what's been resolved. the next resolution starts following archaius again
+     */
+    @Override
+    public synchronized void close() {
+        if (listening) {
+            ConfigurationManager.getConfigInstance().removeConfigurationListener(this);
+            listening = false;
+        }
+
+        generation++;
+        resolvedPropertiesMap.clear();
+    }
+
+}
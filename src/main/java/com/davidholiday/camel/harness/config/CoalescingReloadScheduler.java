@@ -0,0 +1,240 @@
+package com.davidholiday.camel.harness.config;
+
+
+import com.davidholiday.camel.harness.metrics.ReloadMetrics;
+import com.davidholiday.camel.harness.metrics.ReloadPhase;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * collects the runnables triggered by a burst of property changes and runs each of them once the burst is over. a
+ * burst is over when no property has changed for the length of the quiet window.
+ *
+ * this is what keeps a properties file push that changes five connection strings for the same routebuilder from
+ * cycling that routebuilder's routes five times. when a burst is over its runnables are handed to the ReloadDispatcher,
+ * which makes sure two of them can't trip over each other trying to cycle the same routes.
+ *
+ * a BurstEndHandler gets the last word on what's dispatched once a burst is over - ConfigurationChangeListener uses it
+ * to drop runnables whose properties ended the burst where they started it.
+ */
+public class CoalescingReloadScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoalescingReloadScheduler.class);
+
+    public static final long DEFAULT_QUIET_WINDOW_MILLIS = 500;
+
+    private final long quietWindowMillis;
+
+    private final ReloadDispatcher reloadDispatcher;
+
+    private final BurstEndHandler burstEndHandler;
+
+    private final ScheduledExecutorService scheduledExecutorService;
+
+    // what's accumulated since the last flush. guarded by this
+    private final Set<String> pendingPropertyNameSet = new LinkedHashSet<>();
+
+    // pending runnable -> when the first change that triggered it this burst arrived and which properties changed
+    private final Map<Runnable, PendingReload> pendingReloadMap = new LinkedHashMap<>();
+
+    // the flush that'll fire when the current quiet window elapses. guarded by this
+    private ScheduledFuture<?> flushFuture;
+
+
+    /**
+     *
+     * @param quietWindowMillis how long property changes have to stop arriving for before the pending runnables run
+     * @param reloadDispatcher runs the pending runnables once the quiet window has elapsed
+     */
+    public CoalescingReloadScheduler(long quietWindowMillis, ReloadDispatcher reloadDispatcher) {
+        this(quietWindowMillis, reloadDispatcher, pendingPropertyNameMap -> pendingPropertyNameMap);
+    }
+
+
+    /**
+     *
+     * @param quietWindowMillis how long property changes have to stop arriving for before the pending runnables run
+     * @param reloadDispatcher runs the pending runnables once the quiet window has elapsed
+     * @param burstEndHandler decides what's dispatched once the quiet window has elapsed
+     */
+    public CoalescingReloadScheduler(long quietWindowMillis,
+                                     ReloadDispatcher reloadDispatcher,
+                                     BurstEndHandler burstEndHandler) {
+
+        this.quietWindowMillis = quietWindowMillis;
+        this.reloadDispatcher = reloadDispatcher;
+        this.burstEndHandler = burstEndHandler;
+
+        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, CoalescingReloadScheduler.class.getSimpleName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * adds the runnables to the pending set and restarts the quiet window. with no runnables this just makes sure
+     * the BurstEndHandler hears about the burst
+     *
+     * @param propertyName the property whose change triggered the runnables
+     * @param runnables
+     */
+    public synchronized void schedule(String propertyName, Collection<Runnable> runnables) {
+        long eventNanos = System.nanoTime();
+
+        pendingPropertyNameSet.add(propertyName);
+        for (Runnable runnable : runnables) {
+            pendingReloadMap.computeIfAbsent(runnable, key -> new PendingReload(eventNanos))
+                            .propertyNameSet
+                            .add(propertyName);
+        }
+
+        if (flushFuture != null) {
+            flushFuture.cancel(false);
+        }
+
+        flushFuture = scheduledExecutorService.schedule(this::flush, quietWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * stops the scheduler thread. anything still pending is dropped.
+     */
+    public void shutdown() {
+        scheduledExecutorService.shutdownNow();
+    }
+
+
+    /**
+     * dispatches every pending runnable once. a HarnessedRouteBuilderRunnable is told which of the changed properties
+     * triggered it before it's dispatched, and how long it waited between the first of those changes and being
+     * dispatched is reported to ReloadMetrics as the EVENT_TO_DISPATCH phase.
+     * runnables the BurstEndHandler adds are timed from the end of the burst.
+     */
+    private void flush() {
+        List<String> propertyNameList;
+        Map<Runnable, PendingReload> reloadMap;
+
+        synchronized (this) {
+            propertyNameList = new ArrayList<>(pendingPropertyNameSet);
+            reloadMap = new LinkedHashMap<>(pendingReloadMap);
+            pendingPropertyNameSet.clear();
+            pendingReloadMap.clear();
+            flushFuture = null;
+        }
+
+        // a change that landed while the previous flush was taking its snapshot can leave an empty flush behind
+        if (propertyNameList.isEmpty()) {
+            return;
+        }
+
+        Map<Runnable, Set<String>> pendingPropertyNameMap = new LinkedHashMap<>();
+        for (Map.Entry<Runnable, PendingReload> entry : reloadMap.entrySet()) {
+            pendingPropertyNameMap.put(entry.getKey(), new LinkedHashSet<>(entry.getValue().propertyNameSet));
+        }
+
+        Map<Runnable, Set<String>> dispatchPropertyNameMap = burstEndHandler.onBurstEnd(pendingPropertyNameMap);
+
+        if (dispatchPropertyNameMap.isEmpty()) {
+            LOGGER.info("no property changes for {}ms after changes to {} - nothing to dispatch",
+                        quietWindowMillis, propertyNameList);
+            return;
+        }
+
+        LOGGER.info(
+                "no property changes for {}ms after changes to {} - dispatching {} reload runnable(s)",
+                quietWindowMillis,
+                propertyNameList,
+                dispatchPropertyNameMap.size()
+        );
+
+        long flushNanos = System.nanoTime();
+
+        for (Map.Entry<Runnable, Set<String>> entry : dispatchPropertyNameMap.entrySet()) {
+            Runnable runnable = entry.getKey();
+
+            // this runs on the scheduler thread, where nothing would hear about an exception - and it would take the
+            // rest of the burst's runnables down with it
+            try {
+                dispatch(runnable, entry.getValue(), reloadMap.get(runnable), flushNanos);
+            } catch (RuntimeException e) {
+                LOGGER.error("couldn't dispatch reload runnable {} for changes to {}", runnable, entry.getValue(), e);
+            }
+        }
+    }
+
+
+    /**
+     *
+     * @param runnable
+     * @param propertyNameSet the changed properties that triggered it
+     * @param pendingReload null if the BurstEndHandler added it
+     * @param flushNanos
+     */
+    private void dispatch(Runnable runnable,
+                          Set<String> propertyNameSet,
+                          PendingReload pendingReload,
+                          long flushNanos) {
+
+        // reload metrics are kept per base id, so a runnable without one has nothing stable to record them under
+        if (runnable instanceof HarnessedRouteBuilderRunnable) {
+            HarnessedRouteBuilderRunnable harnessedRouteBuilderRunnable = (HarnessedRouteBuilderRunnable)runnable;
+            harnessedRouteBuilderRunnable.propertiesChanged(propertyNameSet);
+
+            ReloadMetrics.recordPhase(
+                    harnessedRouteBuilderRunnable.getBaseId(),
+                    ReloadPhase.EVENT_TO_DISPATCH,
+                    pendingReload == null ? 0 : flushNanos - pendingReload.firstEventNanos
+            );
+        }
+
+        reloadDispatcher.dispatch(runnable);
+    }
+
+
+    /**
+     * gets the last word on what a burst dispatches once it's over
+     */
+    @FunctionalInterface
+    public interface BurstEndHandler {
+
+        /**
+         *
+         * @param pendingPropertyNameMap runnable -> the properties whose changes triggered it during the burst
+         * @return runnable -> the properties to dispatch it for. runnables that aren't in here aren't dispatched
+         */
+        Map<Runnable, Set<String>> onBurstEnd(Map<Runnable, Set<String>> pendingPropertyNameMap);
+    }
+
+
+    /**
+     * what's known about a pending runnable
+     */
+    private static final class PendingReload {
+
+        // System.nanoTime() of the first change this burst that triggered the runnable
+        private final long firstEventNanos;
+
+        private final Set<String> propertyNameSet = new LinkedHashSet<>();
+
+        private PendingReload(long firstEventNanos) {
+            this.firstEventNanos = firstEventNanos;
+        }
+    }
+
+}
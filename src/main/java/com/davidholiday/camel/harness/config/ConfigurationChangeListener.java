@@ -1,6 +1,11 @@
 package com.davidholiday.camel.harness.config;
 
 
+import com.davidholiday.camel.harness.helpers.ConfigurationSnapshotPublisher;
+
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.commons.configuration.AbstractConfiguration;
 import org.apache.commons.configuration.event.ConfigurationEvent;
 import org.apache.commons.configuration.event.ConfigurationListener;
 
@@ -8,10 +13,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
@@ -26,26 +39,98 @@ import java.util.Optional;
  * things this way so as to allow us to respond when one of a *collection* of properties changes w/o having to
  * add callbacks everywhere
  *
+ * when a polled source is replaced wholesale archaius clears and re-adds every property, which would otherwise
+ * schedule every runnable. the value each watched property had before its first change in a burst is remembered, and
+ * once the burst is over a runnable is only dispatched for the properties that ended it with a different value. a
+ * configuration-wide clear also checks every watched property against what the configuration holds once the burst is
+ * over, so properties that didn't come back are treated as cleared. watched properties start off with whatever
+ * ConfigurationManager's configuration holds when they're registered, so the first bulk reload after startup is
+ * checked against that rather than treated as a change to everything.
+ *
+ * events for single properties don't take a lock - racing updates are sorted out by the state store's compare-and-set.
+ * only bulk events and the end of a burst take burstLock.
+ *
  */
 public class ConfigurationChangeListener implements ConfigurationListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ConfigurationChangeListener.class);
 
-    // so we can tell when the content of a configuration value has changed as opposed to something else that might've
-    // triggered the ConfigurationEvent (like replacing a properties file with an identical clone)
-    private final Map<String, String> propertyValueStateStore = new HashMap<>();
+    // what a bulk event is scheduled under so the scheduler flushes even if no watched property changed
+    private static final String BULK_RELOAD_PROPERTY_NAME = "<bulk reload>";
+
+    // stands in for a null baseline, which burstBaselineMap can't hold
+    private static final Object NULL_BASELINE = new Object();
+
+    // the last value seen for each watched property. so we can tell when the content of a configuration value has
+    // changed as opposed to something else that might've triggered the ConfigurationEvent (like replacing a properties
+    // file with an identical clone)
+    private final PropertyStateStore propertyStateStore = new PropertyStateStore();
 
     // map of property names linked to a given runnable. when value associated with property name changes we fire
-    // off the runnable
+    // off the runnable. guarded by this
     private final Map<List<String>, Runnable> propertiesNamesToRunnableMap;
 
+    // propertiesNamesToRunnableMap inverted - property name to every runnable watching it. immutable. rebuilt and
+    // swapped in whole when a runnable is added so the event path never takes a lock to read it
+    private volatile Map<String, List<Runnable>> propertyNameToRunnableListIndex;
+
+    // runs runnables off the archaius polling thread, one at a time per routebuilder
+    private final ReloadDispatcher reloadDispatcher;
+
+    // holds on to runnables until a burst of property changes is over so each one only runs once per burst
+    private final CoalescingReloadScheduler reloadScheduler;
+
+    // guards bulkSource and keeps bulk events and the end of a burst from overlapping
+    private final Object burstLock = new Object();
+
+    // property name -> its value before its first change in the current burst. PropertyStateStore.ABSENT if it
+    // hadn't been seen, NULL_BASELINE if it had no value
+    private final ConcurrentMap<String, Object> burstBaselineMap = new ConcurrentHashMap<>();
+
+    // the configuration a bulk event came from during the current burst, if there was one. guarded by burstLock
+    private AbstractConfiguration bulkSource;
+
 
     /**
+     * uses CoalescingReloadScheduler.DEFAULT_QUIET_WINDOW_MILLIS as the quiet window
      *
      * @param propertiesNamesToRunnableMap
      */
     public ConfigurationChangeListener(Map<List<String>, Runnable> propertiesNamesToRunnableMap) {
-        this.propertiesNamesToRunnableMap = propertiesNamesToRunnableMap;
+        this(propertiesNamesToRunnableMap, CoalescingReloadScheduler.DEFAULT_QUIET_WINDOW_MILLIS);
+    }
+
+
+    /**
+     *
+     * @param propertiesNamesToRunnableMap
+     * @param quietWindowMillis how long property changes have to stop arriving for before the runnables they
+     *                          triggered are run
+     */
+    public ConfigurationChangeListener(Map<List<String>, Runnable> propertiesNamesToRunnableMap,
+                                       long quietWindowMillis) {
+
+        this(propertiesNamesToRunnableMap, quietWindowMillis, ReloadDispatcher.DEFAULT_POOL_SIZE);
+    }
+
+
+    /**
+     *
+     * @param propertiesNamesToRunnableMap
+     * @param quietWindowMillis how long property changes have to stop arriving for before the runnables they
+     *                          triggered are run
+     * @param reloadPoolSize the most runnables that can run at the same time. runnables acting on the same
+     *                       routebuilder always run one at a time regardless
+     */
+    public ConfigurationChangeListener(Map<List<String>, Runnable> propertiesNamesToRunnableMap,
+                                       long quietWindowMillis,
+                                       int reloadPoolSize) {
+
+        this.propertiesNamesToRunnableMap = new HashMap<>(propertiesNamesToRunnableMap);
+        this.propertyNameToRunnableListIndex = buildPropertyNameToRunnableListIndex(this.propertiesNamesToRunnableMap);
+        seedPropertyStateStore(this.propertyNameToRunnableListIndex.keySet());
+        this.reloadDispatcher = new ReloadDispatcher(reloadPoolSize);
+        this.reloadScheduler = new CoalescingReloadScheduler(quietWindowMillis, reloadDispatcher, this::onBurstEnd);
     }
 
 
@@ -55,50 +140,238 @@ public class ConfigurationChangeListener implements ConfigurationListener {
      */
     @Override
     public void configurationChanged(ConfigurationEvent event){
-        Optional<List<Runnable>> runnableListOptional = getRunnableListForPropertyName(event.getPropertyName());
+        // archaius fires the before and after event for a property update with the *new* value, so the value to
+        // check against is whatever the last after event for the property said
+        if (event.isBeforeUpdate()) {
+            return;
+        }
+
+        String propertyName = event.getPropertyName();
 
-        // store previous state of property so we can later check if it's actually changed
-        if (event.isBeforeUpdate() && runnableListOptional.isPresent()) {
-            String currentPropertyValue = (String)event.getPropertyValue();
-            propertyValueStateStore.put(event.getPropertyName(), currentPropertyValue);
+        if (event.getType() == AbstractConfiguration.EVENT_CLEAR || propertyName == null) {
+            onBulkEvent(event);
+            return;
         }
-        // now that the property has updated itself check previous against current and fire runnable if property value
-        // has changed
-        else if (event.isBeforeUpdate() == false && runnableListOptional.isPresent()) {
-            String currentPropertyValue = (String)event.getPropertyValue();
-            String previousPropertyValue = propertyValueStateStore.get(event.getPropertyName());
-            List<Runnable> runnableList = runnableListOptional.get();
-
-            // TODO it's theoretically possible to fire off multiple runnables that end up creating a race condition if
-            // TODO   those runnables are trying to cycle the same routes. in future it might be beneficial to put
-            // TODO   some kind of check for this
-            if (currentPropertyValue.equals(previousPropertyValue) == false) {
-                runnableList.stream().forEach(runnable -> runnable.run());
+
+        List<Runnable> runnableList = propertyNameToRunnableListIndex.get(propertyName);
+        if (runnableList == null) {
+            return;
+        }
+
+        // the scheduler runs each runnable once per burst of changes and one at a time, so runnables that cycle
+        // the same routes can't race each other. the baseline goes in before the property is scheduled so the end
+        // of the burst it's scheduled in always has one to check against
+        Object previousValue = propertyStateStore.getAndUpdate(propertyName, event.getPropertyValue());
+        if (previousValue != PropertyStateStore.UNCHANGED) {
+            burstBaselineMap.putIfAbsent(propertyName, previousValue == null ? NULL_BASELINE : previousValue);
+            reloadScheduler.schedule(propertyName, runnableList);
+        }
+    }
+
+
+    /**
+     * exposes queue depth and execution time metrics for the runnables the listener has triggered
+     *
+     * @return
+     */
+    public ReloadDispatcher getReloadDispatcher() { return reloadDispatcher; }
+
+
+    /**
+     * stops the threads pending runnables are scheduled and run on, then shuts down the registered
+     * HarnessedRouteBuilderRunnables
+     */
+    public void shutdown() {
+        reloadScheduler.shutdown();
+        reloadDispatcher.shutdown();
+
+        // the same runnable can be registered against more than one list of property names
+        Set<Runnable> runnables;
+        synchronized (this) {
+            runnables = new LinkedHashSet<>(propertiesNamesToRunnableMap.values());
+        }
+
+        for (Runnable runnable : runnables) {
+            if (runnable instanceof HarnessedRouteBuilderRunnable) {
+                try {
+                    ((HarnessedRouteBuilderRunnable)runnable).shutdown();
+                } catch (RuntimeException e) {
+                    LOGGER.warn("couldn't shut down reload runnable {}", runnable, e);
+                }
             }
+        }
+    }
 
+
+    /**
+     * registers a runnable after construction. safe to call while events are being handled - events that arrive while
+     * the index is being rebuilt are matched against the previous one.
+     *
+     * @param propertyNamesList
+     * @param runnable
+     */
+    public synchronized void addRunnable(List<String> propertyNamesList, Runnable runnable) {
+        seedPropertyStateStore(propertyNamesList);
+        propertiesNamesToRunnableMap.put(propertyNamesList, runnable);
+        propertyNameToRunnableListIndex = buildPropertyNameToRunnableListIndex(propertiesNamesToRunnableMap);
+    }
+
+
+    /**
+     * registers a snapshot publisher to be refreshed once per burst of changes to any of its properties
+     *
+     * @param configurationSnapshotPublisher
+     */
+    public void addSnapshotPublisher(ConfigurationSnapshotPublisher configurationSnapshotPublisher) {
+        addRunnable(configurationSnapshotPublisher.getPropertyNameList(), configurationSnapshotPublisher);
+    }
+
+
+    /**
+     * a configuration-wide event doesn't say which properties it touched. the source is remembered so onBurstEnd()
+     * can work that out against what the source holds once the burst is over
+     *
+     * @param event
+     */
+    private void onBulkEvent(ConfigurationEvent event) {
+        synchronized (burstLock) {
+            if (event.getSource() instanceof AbstractConfiguration) {
+                bulkSource = (AbstractConfiguration)event.getSource();
+            }
+
+            reloadScheduler.schedule(BULK_RELOAD_PROPERTY_NAME, Collections.emptyList());
+        }
+    }
+
+
+    /**
+     * called by the scheduler once a burst is over. reconciles watched properties against the source of any bulk
+     * event, then drops every property that ended the burst with the value it started it with - along with the
+     * runnables that have nothing left to run for.
+     *
+     * only the baselines of the burst's own properties are dropped. a property changed while this runs has either
+     * already got its new value into the store, in which case it's checked here, or it puts a fresh baseline in for
+     * the burst it's scheduled in next.
+     *
+     * @param pendingPropertyNameMap
+     * @return
+     */
+    private Map<Runnable, Set<String>> onBurstEnd(Map<Runnable, Set<String>> pendingPropertyNameMap) {
+        synchronized (burstLock) {
+            if (bulkSource != null) {
+                reconcileDeletedProperties(bulkSource, pendingPropertyNameMap);
+                bulkSource = null;
+            }
+        }
+
+        // a property can be pending for more than one runnable, but its baseline can only be taken once
+        Set<String> changedPropertyNameSet = new HashSet<>();
+        for (Set<String> propertyNameSet : pendingPropertyNameMap.values()) {
+            for (String propertyName : propertyNameSet) {
+                Object baselineValue = burstBaselineMap.remove(propertyName);
+                if (baselineValue != null && isChanged(propertyName, baselineValue)) {
+                    changedPropertyNameSet.add(propertyName);
+                }
+            }
         }
 
+        Iterator<Map.Entry<Runnable, Set<String>>> entryIterator = pendingPropertyNameMap.entrySet().iterator();
+        while (entryIterator.hasNext()) {
+            Set<String> propertyNameSet = entryIterator.next().getValue();
+            propertyNameSet.retainAll(changedPropertyNameSet);
+
+            if (propertyNameSet.isEmpty()) {
+                entryIterator.remove();
+            }
+        }
+
+        return pendingPropertyNameMap;
+    }
+
+
+    /**
+     * treats watched properties the bulk source no longer has as cleared. guarded by burstLock
+     *
+     * @param source
+     * @param pendingPropertyNameMap
+     */
+    private void reconcileDeletedProperties(AbstractConfiguration source,
+                                            Map<Runnable, Set<String>> pendingPropertyNameMap) {
+
+        for (Map.Entry<String, List<Runnable>> entry : propertyNameToRunnableListIndex.entrySet()) {
+            String propertyName = entry.getKey();
+            if (source.containsKey(propertyName)) {
+                continue;
+            }
+
+            Object previousValue = propertyStateStore.getAndUpdate(propertyName, null);
+            if (previousValue == PropertyStateStore.UNCHANGED || previousValue == PropertyStateStore.ABSENT) {
+                continue;
+            }
+
+            burstBaselineMap.putIfAbsent(propertyName, previousValue);
+            for (Runnable runnable : entry.getValue()) {
+                pendingPropertyNameMap.computeIfAbsent(runnable, key -> new LinkedHashSet<>()).add(propertyName);
+            }
+        }
     }
 
 
     /**
      *
      * @param propertyName
+     * @param baselineValue the property's value before its first change in the burst
+     * @return
+     */
+    private boolean isChanged(String propertyName, Object baselineValue) {
+        if (baselineValue == PropertyStateStore.ABSENT) {
+            return true;
+        }
+
+        Object startValue = baselineValue == NULL_BASELINE ? null : baselineValue;
+        return Objects.deepEquals(startValue, propertyStateStore.getValue(propertyName)) == false;
+    }
+
+
+    /**
+     * records what ConfigurationManager's configuration holds for properties the listener hasn't seen yet, so their
+     * first change is checked against that. properties the configuration doesn't have are recorded as null
+     *
+     * @param propertyNameCollection
+     */
+    private void seedPropertyStateStore(Collection<String> propertyNameCollection) {
+        AbstractConfiguration configuration = ConfigurationManager.getConfigInstance();
+
+        for (String propertyName : propertyNameCollection) {
+            propertyStateStore.updateIfAbsent(propertyName, configuration.getProperty(propertyName));
+        }
+    }
+
+
+    /**
+     *
+     * @param propertiesNamesToRunnableMap
      * @return
      */
-    private Optional<List<Runnable>> getRunnableListForPropertyName(String propertyName) {
-        List<Runnable> runnableList = new ArrayList<>();
+    private static Map<String, List<Runnable>> buildPropertyNameToRunnableListIndex(
+            Map<List<String>, Runnable> propertiesNamesToRunnableMap) {
+
+        Map<String, Set<Runnable>> runnableSetMap = new HashMap<>();
 
-        for (List<String> propertyNamesList : propertiesNamesToRunnableMap.keySet()) {
-            if (propertyNamesList.contains(propertyName)) {
-                Runnable runnable = propertiesNamesToRunnableMap.get(propertyNamesList);
-                runnableList.add(runnable);
+        for (Map.Entry<List<String>, Runnable> entry : propertiesNamesToRunnableMap.entrySet()) {
+            for (String propertyName : entry.getKey()) {
+                runnableSetMap.computeIfAbsent(propertyName, key -> new LinkedHashSet<>())
+                              .add(entry.getValue());
             }
         }
 
-        Optional<List<Runnable>> returnVal = runnableList.isEmpty() ? Optional.empty() : Optional.of(runnableList);
-        return returnVal;
-    }
+        Map<String, List<Runnable>> propertyNameToRunnableListIndex = new HashMap<>();
+        for (Map.Entry<String, Set<Runnable>> entry : runnableSetMap.entrySet()) {
+            List<Runnable> runnableList = Collections.unmodifiableList(new ArrayList<>(entry.getValue()));
+            propertyNameToRunnableListIndex.put(entry.getKey(), runnableList);
+        }
 
+        return Collections.unmodifiableMap(propertyNameToRunnableListIndex);
+    }
 
 }
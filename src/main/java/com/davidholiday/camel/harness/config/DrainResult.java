@@ -0,0 +1,54 @@
+package com.davidholiday.camel.harness.config;
+
+
+/**
+ * what happened to the exchanges that were in flight through a set of harnessed routes when the routes were drained
+ * ahead of being stopped and removed
+ */
+public class DrainResult {
+
+    // in flight when the drain started and finished before the drain deadline
+    private final int drainedCount;
+
+    // still in flight when the drain deadline passed
+    private final int timedOutCount;
+
+    // still in flight after the routes were stopped - camel shut the routes down underneath them
+    private final int forcedCount;
+
+    private final long drainMillis;
+
+
+    /**
+     *
+     * @param drainedCount
+     * @param timedOutCount
+     * @param forcedCount
+     * @param drainMillis
+     */
+    public DrainResult(int drainedCount, int timedOutCount, int forcedCount, long drainMillis) {
+        this.drainedCount = drainedCount;
+        this.timedOutCount = timedOutCount;
+        this.forcedCount = forcedCount;
+        this.drainMillis = drainMillis;
+    }
+
+
+    public int getDrainedCount() { return drainedCount; }
+
+    public int getTimedOutCount() { return timedOutCount; }
+
+    public int getForcedCount() { return forcedCount; }
+
+    public long getDrainMillis() { return drainMillis; }
+
+
+    @Override
+    public String toString() {
+        return "drained=" + drainedCount
+                + ", timedOut=" + timedOutCount
+                + ", forced=" + forcedCount
+                + ", drainMillis=" + drainMillis;
+    }
+
+}
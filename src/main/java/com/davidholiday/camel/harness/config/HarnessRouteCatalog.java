@@ -0,0 +1,357 @@
+package com.davidholiday.camel.harness.config;
+
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.ServiceStatus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+
+/**
+ * registry of the harnessed routebuilders live in a camel context - the runnable that reloads each one, the
+ * properties it watches and the ids its routes are live under. looking a routebuilder up by base id is a map lookup.
+ *
+ * a bulk reload runs the reload runnables of the routebuilders it's given side by side, at most reloadConcurrency at
+ * a time - or as many as the thread pool profile it was given allows - and waits for them all. each runnable still
+ * only reloads its own routebuilder one reload at a time, so a bulk reload can't interleave with a reload the
+ * ConfigurationChangeListener dispatched for the same routebuilder. the pool comes from the camel context's
+ * ExecutorServiceManager, so it's shut down with the context if shutdown() isn't called first.
+ *
+ * the catalog can hand the ConfigurationChangeListener its property names to runnable map, so the two can't disagree
+ * about which properties a routebuilder watches:
+ *
+ *   new ConfigurationChangeListener(harnessRouteCatalog.getPropertiesNamesToRunnableMap());
+ */
+public class HarnessRouteCatalog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HarnessRouteCatalog.class);
+
+    public static final int DEFAULT_RELOAD_CONCURRENCY = ReloadDispatcher.DEFAULT_POOL_SIZE;
+
+    private final CamelContext camelContext;
+
+    // base id -> its entry
+    private final Map<String, CatalogEntry> catalogEntryMap = new ConcurrentHashMap<>();
+
+    // property name -> base ids of the routebuilders watching it. immutable. rebuilt and swapped in whole on
+    // registration, same as ConfigurationChangeListener's index
+    private volatile Map<String, List<String>> propertyNameToBaseIdListIndex = Collections.emptyMap();
+
+    private final ExecutorService reloadExecutorService;
+
+
+    /**
+     * uses DEFAULT_RELOAD_CONCURRENCY
+     *
+     * @param camelContext
+     */
+    public HarnessRouteCatalog(CamelContext camelContext) {
+        this(camelContext, DEFAULT_RELOAD_CONCURRENCY);
+    }
+
+
+    /**
+     *
+     * @param camelContext
+     * @param reloadConcurrency the most routebuilders a bulk reload reloads at the same time
+     */
+    public HarnessRouteCatalog(CamelContext camelContext, int reloadConcurrency) {
+        if (reloadConcurrency < 1) {
+            throw new IllegalArgumentException("reload concurrency has to be at least 1, got " + reloadConcurrency);
+        }
+
+        this.camelContext = camelContext;
+        this.reloadExecutorService = camelContext.getExecutorServiceManager().newFixedThreadPool(
+                this, HarnessRouteCatalog.class.getSimpleName(), reloadConcurrency
+        );
+    }
+
+
+    /**
+     * runs bulk reloads on a pool made from the given camel thread pool profile - VirtualThreadPoolFactory.PROFILE_ID
+     * for instance, since a reload is mostly waiting on routes to stop and start. the profile's pool size is the
+     * reload concurrency
+     *
+     * @param camelContext
+     * @param threadPoolProfileId
+     */
+    public HarnessRouteCatalog(CamelContext camelContext, String threadPoolProfileId) {
+        this.camelContext = camelContext;
+        this.reloadExecutorService = camelContext.getExecutorServiceManager().newThreadPool(
+                this, HarnessRouteCatalog.class.getSimpleName(), threadPoolProfileId
+        );
+
+        if (reloadExecutorService == null) {
+            throw new IllegalArgumentException("no thread pool profile with id " + threadPoolProfileId);
+        }
+    }
+
+
+    /**
+     * adds a routebuilder to the catalog, replacing whatever was registered under its base id
+     *
+     * @param shutDownAndRecreateRoutesRunnable what reloads the routebuilder
+     * @param propertyNameList the properties whose changes should reload it
+     * @return
+     */
+    public CatalogEntry register(ShutDownAndRecreateRoutesRunnable shutDownAndRecreateRoutesRunnable,
+                                 List<String> propertyNameList) {
+
+        CatalogEntry catalogEntry = new CatalogEntry(shutDownAndRecreateRoutesRunnable, propertyNameList);
+
+        synchronized (this) {
+            catalogEntryMap.put(catalogEntry.getBaseId(), catalogEntry);
+            propertyNameToBaseIdListIndex = buildPropertyNameToBaseIdListIndex(catalogEntryMap.values());
+        }
+
+        LOGGER.info("registered {} watching {}", catalogEntry.getBaseId(), propertyNameList);
+        return catalogEntry;
+    }
+
+
+    /**
+     *
+     * @param baseId
+     * @return null if nothing is registered under the base id
+     */
+    public CatalogEntry get(String baseId) { return catalogEntryMap.get(baseId); }
+
+
+    /**
+     * @return base id -> entry for every registered routebuilder
+     */
+    public Map<String, CatalogEntry> getCatalogEntryMap() { return Collections.unmodifiableMap(catalogEntryMap); }
+
+
+    /**
+     * @return the watched property names -> reload runnable of every registered routebuilder
+     */
+    public Map<List<String>, Runnable> getPropertiesNamesToRunnableMap() {
+        Map<List<String>, Runnable> propertiesNamesToRunnableMap = new HashMap<>();
+
+        for (CatalogEntry catalogEntry : catalogEntryMap.values()) {
+            propertiesNamesToRunnableMap.put(
+                    catalogEntry.getPropertyNameList(), catalogEntry.getShutDownAndRecreateRoutesRunnable()
+            );
+        }
+
+        return propertiesNamesToRunnableMap;
+    }
+
+
+    /**
+     * reloads every registered routebuilder
+     *
+     * @return base id -> whether its reload worked
+     * @throws InterruptedException
+     */
+    public Map<String, Boolean> reloadAll() throws InterruptedException {
+        return reload(catalogEntryMap.keySet());
+    }
+
+
+    /**
+     * reloads the routebuilders that watch any of the properties, telling each one which of its properties changed so
+     * selective cycling can work out which of its routes to cycle. the names go in with the reload itself, so a reload
+     * the ConfigurationChangeListener dispatches at the same time can't take them
+     *
+     * @param changedPropertyNames
+     * @return base id -> whether its reload worked
+     * @throws InterruptedException
+     */
+    public Map<String, Boolean> reloadForProperties(Collection<String> changedPropertyNames)
+            throws InterruptedException {
+
+        Map<String, List<String>> propertyNameToBaseIdListIndex = this.propertyNameToBaseIdListIndex;
+        Map<String, Set<String>> baseIdToChangedPropertyNameMap = new LinkedHashMap<>();
+
+        for (String propertyName : changedPropertyNames) {
+            for (String baseId : propertyNameToBaseIdListIndex.getOrDefault(propertyName, Collections.emptyList())) {
+                baseIdToChangedPropertyNameMap.computeIfAbsent(baseId, key -> new LinkedHashSet<>()).add(propertyName);
+            }
+        }
+
+        return reload(baseIdToChangedPropertyNameMap);
+    }
+
+
+    /**
+     * reloads the routebuilders side by side, at most reloadConcurrency at a time, and waits for all of them. base ids
+     * that aren't registered are skipped
+     *
+     * @param baseIds
+     * @return base id -> whether its reload worked
+     * @throws InterruptedException
+     */
+    public Map<String, Boolean> reload(Collection<String> baseIds) throws InterruptedException {
+        Map<String, Set<String>> baseIdToChangedPropertyNameMap = new LinkedHashMap<>();
+        for (String baseId : new ArrayList<>(baseIds)) {
+            baseIdToChangedPropertyNameMap.put(baseId, Collections.emptySet());
+        }
+
+        return reload(baseIdToChangedPropertyNameMap);
+    }
+
+
+    /**
+     * stops the bulk reload threads. reloads that haven't started are dropped.
+     */
+    public void shutdown() {
+        camelContext.getExecutorServiceManager().shutdownNow(reloadExecutorService);
+    }
+
+
+    /**
+     *
+     * @param baseIdToChangedPropertyNameMap base id -> the changed properties to hand its reload
+     * @return base id -> whether its reload worked
+     * @throws InterruptedException
+     */
+    private Map<String, Boolean> reload(Map<String, Set<String>> baseIdToChangedPropertyNameMap)
+            throws InterruptedException {
+
+        Map<String, Future<Boolean>> reloadFutureMap = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Set<String>> entry : baseIdToChangedPropertyNameMap.entrySet()) {
+            String baseId = entry.getKey();
+            CatalogEntry catalogEntry = catalogEntryMap.get(baseId);
+
+            if (catalogEntry == null) {
+                LOGGER.warn("nothing registered under {} - skipping its reload", baseId);
+                continue;
+            }
+
+            ShutDownAndRecreateRoutesRunnable shutDownAndRecreateRoutesRunnable =
+                    catalogEntry.getShutDownAndRecreateRoutesRunnable();
+
+            Set<String> changedPropertyNames = entry.getValue();
+            reloadFutureMap.put(
+                    baseId,
+                    reloadExecutorService.submit(() -> shutDownAndRecreateRoutesRunnable.reload(changedPropertyNames))
+            );
+        }
+
+        LOGGER.info("reloading {}", reloadFutureMap.keySet());
+
+        Map<String, Boolean> reloadResultMap = new LinkedHashMap<>();
+        for (Map.Entry<String, Future<Boolean>> entry : reloadFutureMap.entrySet()) {
+            try {
+                reloadResultMap.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                LOGGER.error("something went wrong reloading {}", entry.getKey(), e.getCause());
+                reloadResultMap.put(entry.getKey(), false);
+            }
+        }
+
+        return reloadResultMap;
+    }
+
+
+    /**
+     *
+     * @param catalogEntries
+     * @return
+     */
+    private static Map<String, List<String>> buildPropertyNameToBaseIdListIndex(
+            Collection<CatalogEntry> catalogEntries) {
+
+        Map<String, List<String>> propertyNameToBaseIdListIndex = new HashMap<>();
+
+        for (CatalogEntry catalogEntry : catalogEntries) {
+            for (String propertyName : catalogEntry.getPropertyNameList()) {
+                propertyNameToBaseIdListIndex.computeIfAbsent(propertyName, key -> new ArrayList<>())
+                                             .add(catalogEntry.getBaseId());
+            }
+        }
+
+        propertyNameToBaseIdListIndex.replaceAll((key, baseIdList) -> Collections.unmodifiableList(baseIdList));
+        return Collections.unmodifiableMap(propertyNameToBaseIdListIndex);
+    }
+
+
+    /**
+     * one registered routebuilder
+     */
+    public class CatalogEntry {
+
+        private final String baseId;
+
+        private final ShutDownAndRecreateRoutesRunnable shutDownAndRecreateRoutesRunnable;
+
+        private final List<String> propertyNameList;
+
+
+        /**
+         *
+         * @param shutDownAndRecreateRoutesRunnable
+         * @param propertyNameList
+         */
+        private CatalogEntry(ShutDownAndRecreateRoutesRunnable shutDownAndRecreateRoutesRunnable,
+                             List<String> propertyNameList) {
+
+            this.baseId = shutDownAndRecreateRoutesRunnable.getBaseId();
+            this.shutDownAndRecreateRoutesRunnable = shutDownAndRecreateRoutesRunnable;
+            this.propertyNameList = Collections.unmodifiableList(new ArrayList<>(propertyNameList));
+        }
+
+
+        public String getBaseId() { return baseId; }
+
+        public ShutDownAndRecreateRoutesRunnable getShutDownAndRecreateRoutesRunnable() {
+            return shutDownAndRecreateRoutesRunnable;
+        }
+
+        public List<String> getPropertyNameList() { return propertyNameList; }
+
+
+        /**
+         * @return the ids the routebuilder's routes are live under right now
+         */
+        public List<String> getLiveRouteIdList() { return shutDownAndRecreateRoutesRunnable.getLiveRouteIdList(); }
+
+
+        /**
+         * @return live route id -> its status, for the live routes that are in the camel context
+         */
+        public Map<String, ServiceStatus> getRouteStatusMap() {
+            Map<String, ServiceStatus> routeStatusMap = new LinkedHashMap<>();
+
+            for (String routeId : getLiveRouteIdList()) {
+                ServiceStatus serviceStatus = camelContext.getRouteStatus(routeId);
+                if (serviceStatus != null) {
+                    routeStatusMap.put(routeId, serviceStatus);
+                }
+            }
+
+            return routeStatusMap;
+        }
+
+
+        /**
+         * a lazily started routebuilder's from-route is enough - its other routes are started when it needs them
+         *
+         * @return whether the routebuilder's from-route is started
+         */
+        public boolean isStarted() {
+            ServiceStatus serviceStatus = camelContext.getRouteStatus(getLiveRouteIdList().get(0));
+            return serviceStatus != null && serviceStatus.isStarted();
+        }
+
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.davidholiday.camel.harness.config;
+
+
+import com.davidholiday.camel.harness.metrics.ReloadMetrics;
+
+import java.util.Collection;
+
+/**
+ * a runnable that acts on the routes of one harnessed routebuilder. the ReloadDispatcher uses the base id to make sure
+ * no two runnables acting on the same routebuilder's routes run at the same time.
+ */
+public interface HarnessedRouteBuilderRunnable extends Runnable {
+
+    /**
+     * asked for on the scheduler and dispatcher threads every time the runnable is dispatched, so it has to be known
+     * up front - working it out on the spot can fail at exactly the moment a reload is needed
+     *
+     * @return the base id of the RouteBuilderHarness whose routes this runnable acts on
+     */
+    String getBaseId();
+
+
+    /**
+     * called with the names of the properties whose change triggered the runnable before it's dispatched. a runnable
+     * that's dispatched while an identical one is waiting is dropped, so this can be called more than once for the
+     * same run - implementations should accumulate the names until they run.
+     *
+     * @param propertyNames
+     */
+    default void propertiesChanged(Collection<String> propertyNames) {}
+
+
+    /**
+     * called once the runnable won't be dispatched again. the reload metrics recorded under its base id are dropped,
+     * which takes them off JMX
+     */
+    default void shutdown() {
+        ReloadMetrics.remove(getBaseId());
+    }
+
+}
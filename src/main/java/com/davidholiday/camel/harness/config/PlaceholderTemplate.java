@@ -0,0 +1,185 @@
+package com.davidholiday.camel.harness.config;
+
+
+import com.netflix.config.DynamicStringProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+
+
+/**
+ * a uri with property placeholders split up once into literal text and the placeholders between it, so resolving it
+ * is a walk over the pieces rather than a re-parse. the last resolution is cached until invalidate() is called.
+ *
+ * only flat {{key}} and {{key:default}} placeholders are handled here. anything else - nested placeholders, functions
+ * like {{env:NAME}}, values that hold placeholders of their own, properties archaius doesn't have that may be in one
+ * of the PropertiesComponent's locations - is left to the PropertiesComponent, which is what a null resolution means.
+ */
+class PlaceholderTemplate {
+
+    private final String uri;
+
+    private final String prefixToken;
+
+    // alternating literal text (String) and placeholders (Placeholder). null if the uri can't be compiled
+    private final List<Object> segmentList;
+
+    private final Set<String> propertyNameSet;
+
+    // bumped by invalidate() so a resolution that raced an invalidation isn't cached. guarded by this
+    private long generation;
+
+    private volatile String resolvedUri;
+
+
+    /**
+     *
+     * @param uri
+     * @param prefixToken
+     * @param suffixToken
+     * @param propertyLookup property name -> the archaius property to read it from
+     */
+    PlaceholderTemplate(String uri,
+                        String prefixToken,
+                        String suffixToken,
+                        Function<String, DynamicStringProperty> propertyLookup) {
+
+        this.uri = uri;
+        this.prefixToken = prefixToken;
+
+        List<Object> segmentList = new ArrayList<>();
+        Set<String> propertyNameSet = new LinkedHashSet<>();
+        int index = 0;
+        boolean compilable = true;
+
+        while (compilable && index < uri.length()) {
+            int prefixIndex = uri.indexOf(prefixToken, index);
+
+            if (prefixIndex < 0) {
+                segmentList.add(uri.substring(index));
+                break;
+            }
+
+            int suffixIndex = uri.indexOf(suffixToken, prefixIndex + prefixToken.length());
+            if (suffixIndex < 0) {
+                compilable = false;
+                break;
+            }
+
+            String placeholder = uri.substring(prefixIndex + prefixToken.length(), suffixIndex);
+            int colonIndex = placeholder.indexOf(':');
+            String propertyName = colonIndex < 0 ? placeholder : placeholder.substring(0, colonIndex);
+            String defaultValue = colonIndex < 0 ? null : placeholder.substring(colonIndex + 1);
+
+            if (placeholder.contains(prefixToken)
+                    || propertyName.isEmpty()
+                    || RouteEndpointDependencies.PLACEHOLDER_FUNCTION_SET.contains(propertyName)) {
+
+                compilable = false;
+                break;
+            }
+
+            if (prefixIndex > index) {
+                segmentList.add(uri.substring(index, prefixIndex));
+            }
+
+            segmentList.add(new Placeholder(propertyName, defaultValue, propertyLookup.apply(propertyName)));
+            propertyNameSet.add(propertyName);
+            index = suffixIndex + suffixToken.length();
+        }
+
+        this.segmentList = compilable ? Collections.unmodifiableList(segmentList) : null;
+        this.propertyNameSet = Collections.unmodifiableSet(propertyNameSet);
+    }
+
+
+    /**
+     * @return the names of the properties the uri's placeholders refer to
+     */
+    Set<String> getPropertyNameSet() { return propertyNameSet; }
+
+
+    /**
+     * @param overrideProperties the PropertiesComponent's override properties, may be null
+     * @param hasLocations whether the PropertiesComponent has locations that may have properties archaius doesn't
+     * @return the resolved uri, or null if the PropertiesComponent has to resolve it
+     */
+    String resolve(Properties overrideProperties, boolean hasLocations) {
+        String currentResolvedUri = resolvedUri;
+        if (currentResolvedUri != null || segmentList == null) {
+            return currentResolvedUri;
+        }
+
+        long startGeneration;
+        synchronized (this) {
+            startGeneration = generation;
+        }
+
+        StringBuilder stringBuilder = new StringBuilder(uri.length());
+
+        for (Object segment : segmentList) {
+            if (segment instanceof String) {
+                stringBuilder.append((String)segment);
+                continue;
+            }
+
+            Placeholder placeholder = (Placeholder)segment;
+            String value = overrideProperties == null ? null : overrideProperties.getProperty(placeholder.propertyName);
+
+            if (value == null) {
+                value = placeholder.property.get();
+            }
+
+            // the PropertiesComponent looks in its locations before it settles for the default
+            if (value == null && hasLocations == false) {
+                value = placeholder.defaultValue;
+            }
+
+            // missing values and values with placeholders of their own are the PropertiesComponent's problem
+            if (value == null || value.contains(prefixToken)) {
+                return null;
+            }
+
+            stringBuilder.append(value);
+        }
+
+        String newResolvedUri = stringBuilder.toString();
+
+        synchronized (this) {
+            if (generation == startGeneration) {
+                resolvedUri = newResolvedUri;
+            }
+        }
+
+        return newResolvedUri;
+    }
+
+
+    /**
+     * forgets the cached resolution
+     */
+    synchronized void invalidate() {
+        generation++;
+        resolvedUri = null;
+    }
+
+
+    private static final class Placeholder {
+
+        private final String propertyName;
+        private final String defaultValue;
+        private final DynamicStringProperty property;
+
+        private Placeholder(String propertyName, String defaultValue, DynamicStringProperty property) {
+            this.propertyName = propertyName;
+            this.defaultValue = defaultValue;
+            this.property = property;
+        }
+    }
+
+}
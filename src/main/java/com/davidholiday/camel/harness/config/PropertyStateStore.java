@@ -0,0 +1,140 @@
+package com.davidholiday.camel.harness.config;
+
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * remembers the last value seen for each property so a ConfigurationEvent can be checked for whether it actually
+ * changed anything. safe to update from several archaius polling threads at once - updates to a property are applied
+ * with compare-and-set so exactly one of two racing updates that change the value is reported as the change.
+ *
+ * every recorded value carries a version that goes up by one each time the value changes, and a fingerprint (the
+ * value's hash code) that's compared before falling back to equals() so a changed value is usually spotted without
+ * walking the whole thing. values can be of any type, including null and arrays.
+ */
+public class PropertyStateStore {
+
+    // what getAndUpdate() returns for a property that hadn't had a value recorded
+    public static final Object ABSENT = new Object();
+
+    // what getAndUpdate() returns when the value is the same as the last one recorded
+    public static final Object UNCHANGED = new Object();
+
+    // property name -> the last value recorded for it
+    private final ConcurrentMap<String, PropertyState> propertyStateMap = new ConcurrentHashMap<>();
+
+
+    /**
+     * records the value for the property
+     *
+     * @param propertyName
+     * @param propertyValue
+     * @return true if the value differs from the last one recorded for the property, or if it's the first one
+     */
+    public boolean update(String propertyName, Object propertyValue) {
+        return getAndUpdate(propertyName, propertyValue) != UNCHANGED;
+    }
+
+
+    /**
+     * records the value for the property. of two racing updates that change the value, each gets back the value the
+     * other replaced or was replaced by - never the same one
+     *
+     * @param propertyName
+     * @param propertyValue
+     * @return the value this one replaced, ABSENT if it's the first one, UNCHANGED if it's the same as the last one
+     */
+    public Object getAndUpdate(String propertyName, Object propertyValue) {
+        int fingerprint = fingerprint(propertyValue);
+
+        while (true) {
+            PropertyState currentPropertyState = propertyStateMap.get(propertyName);
+
+            if (currentPropertyState == null) {
+                PropertyState propertyState = new PropertyState(propertyValue, fingerprint, 1);
+                if (propertyStateMap.putIfAbsent(propertyName, propertyState) == null) {
+                    return ABSENT;
+                }
+            } else if (currentPropertyState.matches(propertyValue, fingerprint)) {
+                return UNCHANGED;
+            } else {
+                PropertyState propertyState =
+                        new PropertyState(propertyValue, fingerprint, currentPropertyState.version + 1);
+
+                if (propertyStateMap.replace(propertyName, currentPropertyState, propertyState)) {
+                    return currentPropertyState.value;
+                }
+            }
+        }
+    }
+
+
+    /**
+     * records the value for the property unless one has been recorded already - for starting the store off with what
+     * the configuration holds without overwriting anything seen since
+     *
+     * @param propertyName
+     * @param propertyValue
+     * @return true if the value was recorded
+     */
+    public boolean updateIfAbsent(String propertyName, Object propertyValue) {
+        PropertyState propertyState = new PropertyState(propertyValue, fingerprint(propertyValue), 1);
+        return propertyStateMap.putIfAbsent(propertyName, propertyState) == null;
+    }
+
+
+    /**
+     * @param propertyName
+     * @return how many distinct values have been recorded for the property in a row, 0 if none have
+     */
+    public long getVersion(String propertyName) {
+        PropertyState propertyState = propertyStateMap.get(propertyName);
+        return propertyState == null ? 0 : propertyState.version;
+    }
+
+
+    /**
+     * @param propertyName
+     * @return the last value recorded for the property, null if none has been
+     */
+    public Object getValue(String propertyName) {
+        PropertyState propertyState = propertyStateMap.get(propertyName);
+        return propertyState == null ? null : propertyState.value;
+    }
+
+
+    /**
+     *
+     * @param propertyValue
+     * @return
+     */
+    private static int fingerprint(Object propertyValue) {
+        return Arrays.deepHashCode(new Object[] {propertyValue});
+    }
+
+
+    /**
+     * immutable so it can be swapped in with a single compare-and-set. compared by identity in the map.
+     */
+    private static final class PropertyState {
+
+        private final Object value;
+        private final int fingerprint;
+        private final long version;
+
+        private PropertyState(Object value, int fingerprint, long version) {
+            this.value = value;
+            this.fingerprint = fingerprint;
+            this.version = version;
+        }
+
+        private boolean matches(Object otherValue, int otherFingerprint) {
+            return fingerprint == otherFingerprint && Objects.deepEquals(value, otherValue);
+        }
+    }
+
+}
@@ -0,0 +1,175 @@
+package com.davidholiday.camel.harness.config;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * runs reload runnables on a bounded pool of worker threads. runnables that share a serial key run one at a time in
+ * the order they were dispatched, runnables with different serial keys run in parallel.
+ *
+ * the serial key of a HarnessedRouteBuilderRunnable is the base id of the routebuilder it acts on, so reloads of the
+ * same routebuilder never interleave while independent routebuilders reload side by side. any other runnable is only
+ * serialized against itself.
+ *
+ * a runnable that's dispatched while an identical one is still waiting its turn is dropped - the waiting one will
+ * pick up the same configuration when it runs.
+ */
+public class ReloadDispatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReloadDispatcher.class);
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+
+    private final ExecutorService executorService;
+
+    // serial key -> runnables waiting behind the one currently running for that key. a key is only in here while a
+    // worker is draining its queue. guarded by this
+    private final Map<String, Deque<Runnable>> pendingRunnableQueueMap = new HashMap<>();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    private final Map<String, ReloadExecutionStats> executionStatsMap = new ConcurrentHashMap<>();
+
+
+    /**
+     *
+     * @param poolSize the most runnables that can run at the same time
+     */
+    public ReloadDispatcher(int poolSize) {
+        AtomicInteger threadCounter = new AtomicInteger();
+
+        this.executorService = Executors.newFixedThreadPool(poolSize, runnable -> {
+            String threadName = ReloadDispatcher.class.getSimpleName() + "-" + threadCounter.incrementAndGet();
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * queues the runnable behind whatever is running or waiting for its serial key
+     *
+     * @param runnable
+     */
+    public void dispatch(Runnable runnable) {
+        String serialKey = getSerialKey(runnable);
+        boolean startDrain = false;
+
+        synchronized (this) {
+            Deque<Runnable> pendingRunnableQueue = pendingRunnableQueueMap.get(serialKey);
+
+            if (pendingRunnableQueue == null) {
+                pendingRunnableQueue = new ArrayDeque<>();
+                pendingRunnableQueueMap.put(serialKey, pendingRunnableQueue);
+                startDrain = true;
+            } else if (pendingRunnableQueue.contains(runnable)) {
+                LOGGER.debug("{} is already waiting to run for {} - dropping duplicate", runnable, serialKey);
+                return;
+            }
+
+            pendingRunnableQueue.add(runnable);
+            queueDepth.incrementAndGet();
+        }
+
+        if (startDrain) {
+            executorService.execute(() -> drain(serialKey));
+        }
+    }
+
+
+    /**
+     * @return how many dispatched runnables are waiting to run across all serial keys
+     */
+    public int getQueueDepth() { return queueDepth.get(); }
+
+
+    /**
+     * @param serialKey
+     * @return how many dispatched runnables are waiting to run for the serial key
+     */
+    public synchronized int getQueueDepth(String serialKey) {
+        Deque<Runnable> pendingRunnableQueue = pendingRunnableQueueMap.get(serialKey);
+        return pendingRunnableQueue == null ? 0 : pendingRunnableQueue.size();
+    }
+
+
+    /**
+     * @return serial key -> execution stats for every serial key that has had a runnable run
+     */
+    public Map<String, ReloadExecutionStats> getExecutionStatsMap() {
+        return Collections.unmodifiableMap(executionStatsMap);
+    }
+
+
+    /**
+     * stops the worker threads. runnables that haven't started are dropped.
+     */
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+
+    /**
+     * runs the serial key's runnables one after another until its queue is empty
+     *
+     * @param serialKey
+     */
+    private void drain(String serialKey) {
+        ReloadExecutionStats executionStats =
+                executionStatsMap.computeIfAbsent(serialKey, key -> new ReloadExecutionStats());
+
+        while (true) {
+            Runnable runnable;
+
+            synchronized (this) {
+                Deque<Runnable> pendingRunnableQueue = pendingRunnableQueueMap.get(serialKey);
+                runnable = pendingRunnableQueue.poll();
+
+                if (runnable == null) {
+                    pendingRunnableQueueMap.remove(serialKey);
+                    return;
+                }
+
+                queueDepth.decrementAndGet();
+            }
+
+            long startNanos = System.nanoTime();
+            boolean failed = false;
+
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                failed = true;
+                LOGGER.error("reload runnable {} for {} failed ", runnable, serialKey, e);
+            } finally {
+                executionStats.record(System.nanoTime() - startNanos, failed);
+            }
+        }
+    }
+
+
+    /**
+     *
+     * @param runnable
+     * @return
+     */
+    static String getSerialKey(Runnable runnable) {
+        return runnable instanceof HarnessedRouteBuilderRunnable
+                ? ((HarnessedRouteBuilderRunnable)runnable).getBaseId()
+                : String.valueOf(runnable);
+    }
+
+}
@@ -0,0 +1,48 @@
+package com.davidholiday.camel.harness.config;
+
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * running totals for the reload runnables the ReloadDispatcher has executed for one serial key
+ */
+public class ReloadExecutionStats {
+
+    private final LongAdder executionCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder totalExecutionNanos = new LongAdder();
+    private final AtomicLong maxExecutionNanos = new AtomicLong();
+    private volatile long lastExecutionNanos;
+
+
+    /**
+     *
+     * @param executionNanos
+     * @param failed
+     */
+    void record(long executionNanos, boolean failed) {
+        executionCount.increment();
+        totalExecutionNanos.add(executionNanos);
+        maxExecutionNanos.accumulateAndGet(executionNanos, Math::max);
+        lastExecutionNanos = executionNanos;
+
+        if (failed) {
+            failureCount.increment();
+        }
+    }
+
+
+    public long getExecutionCount() { return executionCount.sum(); }
+
+    public long getFailureCount() { return failureCount.sum(); }
+
+    public long getTotalExecutionMillis() { return TimeUnit.NANOSECONDS.toMillis(totalExecutionNanos.sum()); }
+
+    public long getMaxExecutionMillis() { return TimeUnit.NANOSECONDS.toMillis(maxExecutionNanos.get()); }
+
+    public long getLastExecutionMillis() { return TimeUnit.NANOSECONDS.toMillis(lastExecutionNanos); }
+
+}
@@ -0,0 +1,124 @@
+package com.davidholiday.camel.harness.config;
+
+
+import org.apache.camel.model.FromDefinition;
+import org.apache.camel.model.ProcessorDefinitionHelper;
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.model.SendDefinition;
+import org.apache.camel.model.ToDynamicDefinition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+
+/**
+ * works out which routes of a routebuilder a property change actually touches by looking at the endpoint uris in its
+ * route definitions. a route depends on a property if
+ *
+ *   - one of its endpoint uris holds a {{property}} placeholder for it, or
+ *   - the property's value was resolved into the uri when the routebuilder was constructed (the way
+ *     DynamicPropertyHelpers is used), in which case the route shows up as one whose endpoint uris differ from the
+ *     live route's
+ *
+ * only from, to and toD endpoints are looked at. a property that's only used by a processor can't be traced this way.
+ */
+public class RouteEndpointDependencies {
+
+    private static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("\\{\\{([^}]+)}}");
+
+    // placeholder prefixes camel resolves itself rather than asking the properties component. PlaceholderTemplate
+    // leaves these to camel too
+    static final Set<String> PLACEHOLDER_FUNCTION_SET = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("env", "sys", "service", "service.host", "service.port"))
+    );
+
+
+    /**
+     * @param routeDefinitionCollection
+     * @return property name -> ids of the routes with an endpoint uri that holds a placeholder for it
+     */
+    public static Map<String, Set<String>> buildPropertyToRouteIdMap(
+            Collection<RouteDefinition> routeDefinitionCollection) {
+
+        Map<String, Set<String>> propertyToRouteIdMap = new LinkedHashMap<>();
+
+        for (RouteDefinition routeDefinition : routeDefinitionCollection) {
+            for (String endpointUri : getEndpointUriList(routeDefinition)) {
+                for (String propertyName : getPlaceholderPropertyNameSet(endpointUri)) {
+                    propertyToRouteIdMap.computeIfAbsent(propertyName, key -> new LinkedHashSet<>())
+                                        .add(routeDefinition.getId());
+                }
+            }
+        }
+
+        return propertyToRouteIdMap;
+    }
+
+
+    /**
+     * @param routeDefinition
+     * @return the from, to and toD endpoint uris of the route in the order they're defined
+     */
+    public static List<String> getEndpointUriList(RouteDefinition routeDefinition) {
+        List<String> endpointUriList = new ArrayList<>();
+
+        for (FromDefinition fromDefinition : routeDefinition.getInputs()) {
+            endpointUriList.add(fromDefinition.getEndpointUri());
+        }
+
+        // camel hands back an iterator of the raw type, so each element is cast to the wildcard one instead
+        Iterator<?> sendDefinitionIterator =
+                ProcessorDefinitionHelper.filterTypeInOutputs(routeDefinition.getOutputs(), SendDefinition.class);
+
+        while (sendDefinitionIterator.hasNext()) {
+            endpointUriList.add(((SendDefinition<?>)sendDefinitionIterator.next()).getEndpointUri());
+        }
+
+        Iterator<ToDynamicDefinition> toDynamicDefinitionIterator =
+                ProcessorDefinitionHelper.filterTypeInOutputs(routeDefinition.getOutputs(), ToDynamicDefinition.class);
+
+        while (toDynamicDefinitionIterator.hasNext()) {
+            endpointUriList.add(toDynamicDefinitionIterator.next().getUri());
+        }
+
+        return endpointUriList;
+    }
+
+
+    /**
+     * @param endpointUri
+     * @return the property names of the placeholders in the uri. {{name:default}} counts as name
+     */
+    public static Set<String> getPlaceholderPropertyNameSet(String endpointUri) {
+        if (endpointUri == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> propertyNameSet = new LinkedHashSet<>();
+        Matcher matcher = PLACEHOLDER_PATTERN.matcher(endpointUri);
+
+        while (matcher.find()) {
+            String placeholder = matcher.group(1).trim();
+            int colonIndex = placeholder.indexOf(':');
+            String propertyName = colonIndex < 0 ? placeholder : placeholder.substring(0, colonIndex);
+
+            if (PLACEHOLDER_FUNCTION_SET.contains(propertyName) == false) {
+                propertyNameSet.add(propertyName);
+            }
+        }
+
+        return propertyNameSet;
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.davidholiday.camel.harness.config;
+
+
+import org.apache.camel.CamelContext;
+
+import org.apache.camel.management.event.AbstractRouteEvent;
+import org.apache.camel.management.event.RouteRemovedEvent;
+import org.apache.camel.management.event.RouteStoppedEvent;
+
+import org.apache.camel.support.EventNotifierSupport;
+
+import java.util.EventObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+
+/**
+ * listens for camel's route stopped and route removed events and releases whoever registered interest in them for a
+ * given route id. lets the route cycling logic block until camel says a route is gone rather than polling route status.
+ *
+ * one of these is shared by everything that cycles routes in a given camel context - use register() to get at it.
+ */
+public class RouteLifecycleEventNotifier extends EventNotifierSupport {
+
+    // route id -> latch released when that route's stopped event fires
+    private final Map<String, CountDownLatch> routeStoppedLatchMap = new ConcurrentHashMap<>();
+
+    // route id -> latch released when that route's removed event fires
+    private final Map<String, CountDownLatch> routeRemovedLatchMap = new ConcurrentHashMap<>();
+
+
+    /**
+     * returns the notifier registered with the camel context, registering and starting one if there isn't one yet
+     *
+     * @param camelContext
+     * @return
+     * @throws Exception
+     */
+    public static RouteLifecycleEventNotifier register(CamelContext camelContext) throws Exception {
+        synchronized (camelContext) {
+            RouteLifecycleEventNotifier routeLifecycleEventNotifier =
+                    camelContext.hasService(RouteLifecycleEventNotifier.class);
+
+            if (routeLifecycleEventNotifier == null) {
+                routeLifecycleEventNotifier = new RouteLifecycleEventNotifier();
+                camelContext.getManagementStrategy().addEventNotifier(routeLifecycleEventNotifier);
+                camelContext.addService(routeLifecycleEventNotifier);
+            }
+
+            return routeLifecycleEventNotifier;
+        }
+    }
+
+
+    /**
+     * must be called before the route is told to stop or the event might be missed
+     *
+     * @param routeId
+     * @return latch that is released when the route's stopped event fires
+     */
+    public CountDownLatch expectRouteStopped(String routeId) {
+        return routeStoppedLatchMap.computeIfAbsent(routeId, key -> new CountDownLatch(1));
+    }
+
+
+    /**
+     * must be called before the route is told to be removed or the event might be missed
+     *
+     * @param routeId
+     * @return latch that is released when the route's removed event fires
+     */
+    public CountDownLatch expectRouteRemoved(String routeId) {
+        return routeRemovedLatchMap.computeIfAbsent(routeId, key -> new CountDownLatch(1));
+    }
+
+
+    /**
+     * drops any interest still registered for the route - for when the caller gives up waiting on it
+     *
+     * @param routeId
+     */
+    public void forget(String routeId) {
+        routeStoppedLatchMap.remove(routeId);
+        routeRemovedLatchMap.remove(routeId);
+    }
+
+
+    @Override
+    public void notify(EventObject event) throws Exception {
+        String routeId = ((AbstractRouteEvent)event).getRoute().getId();
+
+        Map<String, CountDownLatch> latchMap =
+                event instanceof RouteStoppedEvent ? routeStoppedLatchMap : routeRemovedLatchMap;
+
+        CountDownLatch latch = latchMap.remove(routeId);
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+
+    @Override
+    public boolean isEnabled(EventObject event) {
+        return event instanceof RouteStoppedEvent || event instanceof RouteRemovedEvent;
+    }
+
+
+    @Override
+    protected void doStart() throws Exception {
+        setIgnoreCamelContextEvents(true);
+        setIgnoreExchangeEvents(true);
+        setIgnoreServiceEvents(true);
+    }
+
+
+    @Override
+    protected void doStop() throws Exception {
+        routeStoppedLatchMap.clear();
+        routeRemovedLatchMap.clear();
+    }
+
+}
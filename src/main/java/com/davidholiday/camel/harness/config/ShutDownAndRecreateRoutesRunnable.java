@@ -1,107 +1,1007 @@
 package com.davidholiday.camel.harness.config;
 
 
+import com.davidholiday.camel.harness.metrics.ReloadMetrics;
+import com.davidholiday.camel.harness.metrics.ReloadPhase;
+import com.davidholiday.camel.harness.routing.ResultCache;
 import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
 
 import org.apache.camel.CamelContext;
+import org.apache.camel.ServiceStatus;
+
+import org.apache.camel.model.FromDefinition;
+import org.apache.camel.model.ModelCamelContext;
+import org.apache.camel.model.ProcessorDefinitionHelper;
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.model.RoutesDefinition;
+import org.apache.camel.model.SendDefinition;
+import org.apache.camel.spi.ExecutorServiceManager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 
 /**
  * handles shutdown, removal, and recreation of camel routes. invoked when arhcaius detects a property change that
  * impacts a route's behaviour.
  *
- * @implNote the constructor takes a RouteBuilderHarness class rather than the object because harnessed routeBuilders
- * will resolve connection strings when they are constructed and we want to make sure those values are up-to-date.
+ * there are two ways routes can be recreated:
+ *
+ * *cycle* (default)
+ *   the live routes are stopped and removed, then the new routes are added. nothing consumes from the from-route's
+ *   endpoint until the new routes are up.
+ *
+ *   with selective cycling on only the routes whose endpoints depend on the changed properties are cycled (see
+ *   RouteEndpointDependencies). the rest keep their endpoints, consumers and connections. if the from-route isn't
+ *   one of the cycled routes it's suspended while the routes downstream of it are down and resumed once they're back.
+ *   when the change can't be tied to any route all of them are cycled.
+ *
+ * *swap*
+ *   the new routes are added alongside the live ones under the ids and internal endpoint names of the standby route
+ *   set (the harness names with SWAP_SUFFIX appended, or the plain harness names if the swap suffixed set is the live
+ *   one). the standby business logic and to-routes are started first. then the live from-route is suspended and
+ *   the standby from-route is started in its place. the retired route set is drained, stopped and removed in the
+ *   background while the new set serves traffic.
+ *
+ * @implNote the constructors take a RouteBuilderHarness class or supplier rather than the object because harnessed
+ * routeBuilders will resolve connection strings when they are constructed and we want to make sure those values are
+ * up-to-date. a class is instantiated through a constructor handle that's looked up once, a supplier is simply called.
+ * either way a new routebuilder is needed for every reload - camel won't configure the same one twice - but a
+ * supplier is free to hand each new routebuilder pre-built processors and connection resources to reuse.
+ *
+ * @implNote in swap mode only the route ids and the harness' business logic from/to endpoint names are suffixed. any
+ * other internal endpoint a harnessed routeBuilder consumes from must tolerate a second consumer for the duration of
+ * the swap.
  *
  * TODO in cases (like MongoDB's connector) where stateful properties like host/port are stored inside the object
  * TODO  registered with JNDI it needs to be included in the list of things to restart. a future iteration of this
  * TODO  needs to add that capability
  */
-public class ShutDownAndRecreateRoutesRunnable implements Runnable {
+public class ShutDownAndRecreateRoutesRunnable implements HarnessedRouteBuilderRunnable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ShutDownAndRecreateRoutesRunnable.class);
 
+    // appended to the route ids and internal endpoint names of every other route set brought up in swap mode
+    public static final String SWAP_SUFFIX = "_swap";
+
+    // upper bound on how long the live from-route is given to finish in-flight exchanges before it's suspended
+    public static final long FROM_ROUTE_SUSPEND_TIMEOUT_MILLIS = 100;
+
+    // how long a route is given to stop, and then to be removed, before route removal is considered failed
+    public static final long DEFAULT_ROUTE_REMOVAL_TIMEOUT_MILLIS = 30000;
+
+    // in drain mode, how often the inflight repository is checked while waiting on in-flight exchanges
+    public static final long DRAIN_POLL_INTERVAL_MILLIS = 50;
+
+    // in drain mode the waiting has already happened by the time routes are stopped, so whatever's still in flight
+    // only gets this long before camel forces the routes down
+    public static final long DRAINED_ROUTE_STOP_TIMEOUT_MILLIS = 100;
+
     private CamelContext camelContext;
-    private Class<RouteBuilderHarness> harnessedRouteBuilderClazz;
+
+    // creates the routebuilder for each reload, and what to call it in error messages
+    private final Supplier<? extends RouteBuilderHarness> harnessedRouteBuilderSupplier;
+    private final String harnessedRouteBuilderName;
+
+    // whether routes are recreated by swapping in a standby route set or by cycling the live one
+    private final boolean swapRoutes;
+
+    private volatile long routeRemovalTimeoutMillis = DEFAULT_ROUTE_REMOVAL_TIMEOUT_MILLIS;
+
+    // drain deadline. drain mode is off when this is 0, which leaves waiting on in-flight exchanges to camel's
+    // shutdown strategy
+    private volatile long drainTimeoutMillis = 0;
+
+    // what happened the last time routes were drained
+    private volatile DrainResult lastDrainResult;
+
+    // whether cycle mode only cycles the routes whose endpoints depend on the changed properties
+    private volatile boolean selectiveCycling = false;
+
+    // properties that have changed since the last run. guarded by itself
+    private final Set<String> changedPropertyNameSet = new LinkedHashSet<>();
+
+    // the base id of the routebuilders this runnable creates
+    private final String baseId;
+
+    // the harness route ids of the routebuilders this runnable creates, unsuffixed. for a supplier, resolved by the
+    // first reload or the first time something asks for them
+    private volatile List<String> routeIdList;
+
+    // the harness id of the from-route out of routeIdList, unsuffixed
+    private volatile String fromRouteId;
+
+    // the suffix applied to the route set that's currently live. flips between "" and SWAP_SUFFIX on every swap
+    private volatile String liveSuffix = "";
+
+    // drains and removes retired route sets so the thread that invoked the swap doesn't have to wait on it
+    private ExecutorService drainExecutorService;
+
+    // the camel thread pool profile drainExecutorService is created from. a single thread executor if null
+    private volatile String threadPoolProfileId;
+
+    // the drain of the most recently retired route set. the next swap reuses its ids so it has to wait on this
+    private Future<?> drainFuture;
 
 
     /**
      * @param camelContext
-     * @param harnessedRouteBuilderClazz
+     * @param harnessedRouteBuilderClazz must have a public no-arg constructor
+     */
+    public ShutDownAndRecreateRoutesRunnable(CamelContext camelContext,
+                                             Class<? extends RouteBuilderHarness> harnessedRouteBuilderClazz) {
+
+        this(camelContext, harnessedRouteBuilderClazz, false);
+    }
+
+
+    /**
+     * @param camelContext
+     * @param harnessedRouteBuilderClazz must have a public no-arg constructor
+     * @param swapRoutes if true the new routes are brought up alongside the live ones and traffic is swapped over to
+     *                   them, otherwise the live routes are removed before the new ones are added
+     */
+    public ShutDownAndRecreateRoutesRunnable(CamelContext camelContext,
+                                             Class<? extends RouteBuilderHarness> harnessedRouteBuilderClazz,
+                                             boolean swapRoutes) {
+
+        this(
+                camelContext,
+                newConstructorHandleSupplier(harnessedRouteBuilderClazz),
+                harnessedRouteBuilderClazz.getSimpleName(),
+                null,
+                swapRoutes
+        );
+    }
+
+
+    /**
+     * @param camelContext
+     * @param baseId the base id of the routebuilders the supplier makes. a supplier doesn't have a name of its own,
+     *               so this is what the runnable goes by in logs and metrics
+     * @param harnessedRouteBuilderSupplier must return a new routebuilder every time it's called
+     * @param swapRoutes if true the new routes are brought up alongside the live ones and traffic is swapped over to
+     *                   them, otherwise the live routes are removed before the new ones are added
      */
     public ShutDownAndRecreateRoutesRunnable(CamelContext camelContext,
-                                             Class<RouteBuilderHarness> harnessedRouteBuilderClazz) {
+                                             String baseId,
+                                             Supplier<? extends RouteBuilderHarness> harnessedRouteBuilderSupplier,
+                                             boolean swapRoutes) {
+
+        this(
+                camelContext,
+                harnessedRouteBuilderSupplier,
+                baseId,
+                Objects.requireNonNull(baseId, "a supplier needs a base id"),
+                swapRoutes
+        );
+    }
+
+
+    /**
+     * the base id is what reloads are serialized and recorded under, so it has to be known before the runnable is
+     * handed to anything that dispatches it. a class only tells us once it's instantiated, so one routebuilder is
+     * created here to ask - a routebuilder that can't be constructed fails the runnable's construction rather than
+     * the first thread that asks for its base id
+     *
+     * @param camelContext
+     * @param harnessedRouteBuilderSupplier
+     * @param harnessedRouteBuilderName
+     * @param baseId null to ask a routebuilder from the supplier
+     * @param swapRoutes
+     */
+    private ShutDownAndRecreateRoutesRunnable(CamelContext camelContext,
+                                              Supplier<? extends RouteBuilderHarness> harnessedRouteBuilderSupplier,
+                                              String harnessedRouteBuilderName,
+                                              String baseId,
+                                              boolean swapRoutes) {
 
         this.camelContext = camelContext;
-        this.harnessedRouteBuilderClazz = harnessedRouteBuilderClazz;
+        this.harnessedRouteBuilderSupplier = harnessedRouteBuilderSupplier;
+        this.harnessedRouteBuilderName = harnessedRouteBuilderName;
+        this.swapRoutes = swapRoutes;
+
+        if (baseId == null) {
+            RouteBuilderHarness harnessedRouteBuilder = newHarnessedRouteBuilder();
+            this.baseId = harnessedRouteBuilder.getBaseId();
+            this.routeIdList = harnessedRouteBuilder.getRouteIdList();
+            this.fromRouteId = harnessedRouteBuilder.getFromRouteId();
+        } else {
+            this.baseId = baseId;
+        }
     }
 
 
     public void run() {
+        reload();
+    }
+
+
+    /**
+     * recreates the routes. does the same as run() but says whether it worked
+     *
+     * @return false if something went wrong - the details are logged
+     */
+    public boolean reload() {
+        return reload(Collections.emptySet());
+    }
+
+
+    /**
+     * recreates the routes for the given property changes along with any that propertiesChanged() was told about.
+     * handing the names over here rather than through propertiesChanged() means a reload running at the same time
+     * can't take them first
+     *
+     * @param changedPropertyNames
+     * @return false if something went wrong - the details are logged
+     */
+    public synchronized boolean reload(Collection<String> changedPropertyNames) {
+        boolean succeeded = false;
+        Set<String> reloadPropertyNames;
+
+        synchronized (changedPropertyNameSet) {
+            reloadPropertyNames = new LinkedHashSet<>(changedPropertyNameSet);
+            changedPropertyNameSet.clear();
+        }
+
+        reloadPropertyNames.addAll(changedPropertyNames);
 
         try {
             // create instance of new routebuilder which should come online with the new connection strings
-            // embedded in its routes. also grab IDs of routes that need to be cycled
+            // embedded in its routes
             //
-            Constructor constructor = harnessedRouteBuilderClazz.getConstructor();
-            RouteBuilderHarness harnessedRouteBuilder = (RouteBuilderHarness) constructor.newInstance();
+            long constructionStartNanos = System.nanoTime();
+            RouteBuilderHarness harnessedRouteBuilder = newHarnessedRouteBuilder();
+            checkBaseId(harnessedRouteBuilder);
+            routeIdList = harnessedRouteBuilder.getRouteIdList();
+            fromRouteId = harnessedRouteBuilder.getFromRouteId();
+            recordPhase(ReloadPhase.BUILDER_CONSTRUCTION, constructionStartNanos);
+
+            if (swapRoutes) {
+                swapRoutes(harnessedRouteBuilder);
+            } else {
+                cycleRoutes(harnessedRouteBuilder, reloadPropertyNames);
+            }
+
+            // whatever changed may change what the business logic route answers with
+            ResultCache.clear(baseId);
+
+            succeeded = true;
+        } catch (Exception e) {
+            LOGGER.error("something went wrong removing and re-injecting routes ", e);
+        } finally {
+            ReloadMetrics.recordReload(baseId, succeeded);
+        }
+
+        return succeeded;
+    }
 
-            List<String> routesToRemoveList = Stream.of(
-                    harnessedRouteBuilder.getBusinessLogicRouteFromName(),
-                    harnessedRouteBuilder.getBusinessLogicRouteId()
-            ).collect(Collectors.toList());
 
-            if (harnessedRouteBuilder.getBusinessLogicRouteToNameOptional().isPresent()) {
-                String businessLogicRouteToName = harnessedRouteBuilder.getBusinessLogicRouteToNameOptional().get();
-                routesToRemoveList.add(businessLogicRouteToName);
+    @Override
+    public String getBaseId() { return baseId; }
+
+
+    /**
+     * waits for a retired route set that's still draining to be removed, lets go of the drain thread and drops the
+     * reload metrics kept for the base id. the routes themselves are left alone
+     */
+    @Override
+    public synchronized void shutdown() {
+        try {
+            if (drainFuture != null) {
+                drainFuture.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOGGER.warn("draining {}'s retired routes failed", baseId, e.getCause());
+        } finally {
+            drainFuture = null;
 
+            if (drainExecutorService != null) {
+                camelContext.getExecutorServiceManager().shutdown(drainExecutorService);
+                drainExecutorService = null;
+            }
 
-            // cycle routes
-            //
-            for (String routeToRemove : routesToRemoveList) {
-                LOGGER.info("stopping and removing route: {}", routeToRemove);
-                camelContext.stopRoute(routeToRemove);
-                camelContext.removeRoute(routeToRemove);
-            }
-
-            // putting this in a for-loop so we can't end up in an infinite-loop situation.
-            // fyi - the call to addRoutes() later will blow up if we somehow exit this loop w/o first removing all the
-            // requested routes due to namespace violation (each route must have a unique identifier)
-            for (int i = 0; i < 10; i++) {
-                if (i == 9) {
-                    LOGGER.warn("potential problem removing all of the requested routes...");
+            ReloadMetrics.remove(baseId);
+        }
+    }
+
+
+    /**
+     * takes the routebuilder out of the camel context for good - stops and removes its live routes, releases what its
+     * stages keep for its base id and shuts the runnable down. the runnable shouldn't be run again afterwards
+     *
+     * @return false if the routes couldn't be removed - the details are logged. everything else is released anyway
+     */
+    public synchronized boolean removeRoutes() {
+        boolean succeeded = false;
+
+        try {
+            List<String> liveRouteIdList = getLiveRouteIdList();
+            stopAndRemoveRoutes(liveRouteIdList, fromRouteId + liveSuffix);
+            succeeded = true;
+        } catch (Exception e) {
+            LOGGER.error("something went wrong removing {}'s routes", baseId, e);
+        } finally {
+            // a retired route set that's still draining may be using the stages, so they go once it's gone
+            shutdown();
+            RouteBuilderHarness.releaseStages(baseId);
+        }
+
+        return succeeded;
+    }
+
+
+    /**
+     * the ids the routebuilder's routes are live under right now. in swap mode these flip between the harness ids and
+     * the SWAP_SUFFIX ones with every reload
+     *
+     * @return
+     */
+    public List<String> getLiveRouteIdList() {
+        if (routeIdList == null) {
+            resolveRouteIdList();
+        }
+
+        String suffix = liveSuffix;
+        return routeIdList.stream()
+                          .map(routeId -> routeId + suffix)
+                          .collect(Collectors.toList());
+    }
+
+
+    @Override
+    public void propertiesChanged(Collection<String> propertyNames) {
+        synchronized (changedPropertyNameSet) {
+            changedPropertyNameSet.addAll(propertyNames);
+        }
+    }
+
+
+    /**
+     * turns selective cycling on or off. only applies to cycle mode - swap mode always brings up a whole route set.
+     *
+     * @param selectiveCycling
+     */
+    public void setSelectiveCycling(boolean selectiveCycling) {
+        this.selectiveCycling = selectiveCycling;
+    }
+
+
+    /**
+     * overrides DEFAULT_ROUTE_REMOVAL_TIMEOUT_MILLIS. the timeout is applied to each route separately, once for the
+     * stop and once for the removal.
+     *
+     * @param routeRemovalTimeout
+     * @param timeUnit
+     */
+    public void setRouteRemovalTimeout(long routeRemovalTimeout, TimeUnit timeUnit) {
+        this.routeRemovalTimeoutMillis = timeUnit.toMillis(routeRemovalTimeout);
+    }
+
+
+    /**
+     * turns on drain mode. before routes are stopped the from-route is suspended so it stops accepting new exchanges,
+     * then the runnable waits up to the drain timeout for the exchanges in flight through the routes to finish.
+     * whatever's left after that is given DRAINED_ROUTE_STOP_TIMEOUT_MILLIS before camel forces the routes down, so
+     * a reload never waits on in-flight exchanges much longer than the drain timeout.
+     *
+     * @param drainTimeout 0 turns drain mode off
+     * @param timeUnit
+     */
+    public void setDrainTimeout(long drainTimeout, TimeUnit timeUnit) {
+        this.drainTimeoutMillis = timeUnit.toMillis(drainTimeout);
+    }
+
+
+    /**
+     * runs the draining and removal of retired route sets on a pool made from the given camel thread pool profile -
+     * VirtualThreadPoolFactory.PROFILE_ID for instance, since that work is mostly waiting. has to be called before the
+     * first swap
+     *
+     * @param threadPoolProfileId
+     */
+    public void setThreadPoolProfileId(String threadPoolProfileId) {
+        this.threadPoolProfileId = threadPoolProfileId;
+    }
+
+
+    /**
+     * @return how many exchanges were drained, timed out or forced the last time routes were drained. null if drain
+     * mode is off or routes haven't been drained yet
+     */
+    public DrainResult getLastDrainResult() { return lastDrainResult; }
+
+
+    /**
+     * stops and removes the live routes then adds the ones defined by the new routebuilder. with selective cycling on
+     * only the routes affected by the changed properties are touched.
+     *
+     * @param harnessedRouteBuilder
+     * @param changedPropertyNames
+     * @throws Exception
+     */
+    private void cycleRoutes(RouteBuilderHarness harnessedRouteBuilder, Set<String> changedPropertyNames)
+            throws Exception {
+
+        List<String> routeIdList = harnessedRouteBuilder.getRouteIdList();
+
+        if (selectiveCycling == false) {
+            stopAndRemoveRoutes(routeIdList, harnessedRouteBuilder.getFromRouteId());
+
+            LOGGER.info("routes are removed - attempting to recreate...");
+            addRoutes(harnessedRouteBuilder);
+            return;
+        }
+
+        // configuring up front is what lets the new route definitions be compared with the live ones. the call to
+        // addRoutes() further down won't configure the routebuilder a second time
+        //
+        RoutesDefinition routesDefinition = harnessedRouteBuilder.configureRoutes((ModelCamelContext)camelContext);
+        List<String> affectedRouteIdList =
+                getAffectedRouteIdList(routeIdList, routesDefinition.getRoutes(), changedPropertyNames);
+
+        LOGGER.info("changes to {} affect routes: {}", changedPropertyNames, affectedRouteIdList);
+
+        Set<String> unaffectedRouteIdSet = new HashSet<>(routeIdList);
+        unaffectedRouteIdSet.removeAll(affectedRouteIdList);
+        routesDefinition.getRoutes()
+                        .removeIf(routeDefinition -> unaffectedRouteIdSet.contains(routeDefinition.getId()));
+
+        String fromRouteId = harnessedRouteBuilder.getFromRouteId();
+        boolean suspendFromRoute = affectedRouteIdList.contains(fromRouteId) == false
+                                   && camelContext.getRouteStatus(fromRouteId) == ServiceStatus.Started;
+
+        if (suspendFromRoute) {
+            camelContext.suspendRoute(fromRouteId, FROM_ROUTE_SUSPEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        // a lazily started routebuilder's from-route only starts the other routes once, so any of those it had
+        // already started have to be started again here
+        //
+        List<String> startedRouteIdList = affectedRouteIdList.stream()
+                                                             .filter(routeId -> routeId.equals(fromRouteId) == false)
+                                                             .filter(this::isRouteStarted)
+                                                             .collect(Collectors.toList());
+
+        try {
+            stopAndRemoveRoutes(affectedRouteIdList, fromRouteId);
+
+            LOGGER.info("routes {} are removed - attempting to recreate...", affectedRouteIdList);
+            addRoutes(harnessedRouteBuilder);
+            startRoutes(startedRouteIdList);
+        } finally {
+            if (suspendFromRoute) {
+                camelContext.resumeRoute(fromRouteId);
+            }
+        }
+    }
+
+
+    /**
+     *
+     * @param harnessedRouteBuilder
+     * @throws Exception
+     */
+    private void addRoutes(RouteBuilderHarness harnessedRouteBuilder) throws Exception {
+        long addRoutesStartNanos = System.nanoTime();
+        camelContext.addRoutes(harnessedRouteBuilder);
+        recordPhase(ReloadPhase.ADD_ROUTES, addRoutesStartNanos);
+    }
+
+
+    /**
+     * a harness route is affected if one of its endpoint uris holds a placeholder for a changed property or if its
+     * endpoint uris differ from the live route's
+     *
+     * @param routeIdList the harness' route ids in the order traffic flows through them
+     * @param newRouteDefinitionList the new routebuilder's route definitions
+     * @param changedPropertyNames
+     * @return the affected route ids in the order traffic flows through them. all of them if none were affected
+     */
+    private List<String> getAffectedRouteIdList(List<String> routeIdList,
+                                                List<RouteDefinition> newRouteDefinitionList,
+                                                Set<String> changedPropertyNames) {
+
+        Set<String> affectedRouteIdSet = new HashSet<>();
+
+        Map<String, Set<String>> propertyToRouteIdMap =
+                RouteEndpointDependencies.buildPropertyToRouteIdMap(newRouteDefinitionList);
+
+        for (String changedPropertyName : changedPropertyNames) {
+            affectedRouteIdSet.addAll(propertyToRouteIdMap.getOrDefault(changedPropertyName, Collections.emptySet()));
+        }
+
+        for (RouteDefinition newRouteDefinition : newRouteDefinitionList) {
+            if (routeIdList.contains(newRouteDefinition.getId()) == false) {
+                continue;
+            }
+
+            RouteDefinition liveRouteDefinition =
+                    ((ModelCamelContext)camelContext).getRouteDefinition(newRouteDefinition.getId());
+
+            List<String> newEndpointUriList = RouteEndpointDependencies.getEndpointUriList(newRouteDefinition);
+
+            if (liveRouteDefinition == null
+                    || RouteEndpointDependencies.getEndpointUriList(liveRouteDefinition).equals(newEndpointUriList)
+                       == false) {
+
+                affectedRouteIdSet.add(newRouteDefinition.getId());
+            }
+        }
+
+        if (affectedRouteIdSet.isEmpty()) {
+            LOGGER.info("couldn't tie changes to {} to any route's endpoints - cycling all routes",
+                        changedPropertyNames);
+            return routeIdList;
+        }
+
+        return routeIdList.stream()
+                          .filter(affectedRouteIdSet::contains)
+                          .collect(Collectors.toList());
+    }
+
+
+    /**
+     * brings up the new routebuilder's routes as the standby route set, points the from-route's endpoint at them, and
+     * hands the retired route set off to be drained and removed in the background
+     *
+     * @param harnessedRouteBuilder
+     * @throws Exception
+     */
+    private void swapRoutes(RouteBuilderHarness harnessedRouteBuilder) throws Exception {
+
+        // the standby ids are the ones the previously retired route set was using - make sure it's gone
+        if (drainFuture != null) {
+            drainFuture.get();
+        }
+
+        String standbySuffix = liveSuffix.isEmpty() ? SWAP_SUFFIX : "";
+        String standbyFromRouteId = harnessedRouteBuilder.getFromRouteId() + standbySuffix;
+        String liveFromRouteId = harnessedRouteBuilder.getFromRouteId() + liveSuffix;
+
+        List<String> standbyRouteIdList = getSuffixedRouteIdList(harnessedRouteBuilder, standbySuffix);
+        List<String> liveRouteIdList = getSuffixedRouteIdList(harnessedRouteBuilder, liveSuffix);
+
+
+        // bring up the standby route set minus its from-route. starting the routes is what creates their endpoints,
+        // producers and consumers, so by the time the from-route comes up the standby set is warm
+        //
+        RoutesDefinition routesDefinition = harnessedRouteBuilder.configureRoutes((ModelCamelContext)camelContext);
+        applySuffix(harnessedRouteBuilder, routesDefinition, standbySuffix);
+
+        for (RouteDefinition routeDefinition : routesDefinition.getRoutes()) {
+            if (standbyFromRouteId.equals(routeDefinition.getId())) {
+                routeDefinition.setAutoStartup("false");
+            }
+        }
+
+        LOGGER.info("bringing up standby routes: {}", standbyRouteIdList);
+        addRoutes(harnessedRouteBuilder);
+
+        // a lazily started routebuilder leaves these for its from-route to start, but the standby set has to be warm
+        // before traffic is swapped to it
+        List<String> standbyDownstreamRouteIdList = new ArrayList<>(standbyRouteIdList);
+        standbyDownstreamRouteIdList.remove(standbyFromRouteId);
+        Collections.reverse(standbyDownstreamRouteIdList);
+        startRoutes(standbyDownstreamRouteIdList);
+
+
+        // swap. camel won't start a second consumer on an endpoint that doesn't support multiple consumers while the
+        // first one's route is started, so the live from-route is suspended first. suspending (as opposed to
+        // stopping) the from-route keeps the retired business logic and to-routes running so whatever is in flight
+        // through them can finish. the timeout bounds how long the suspend waits on in-flight exchanges before it
+        // suspends the consumer anyway
+        //
+        boolean liveFromRouteSuspended = false;
+
+        if (camelContext.getRoute(liveFromRouteId) != null) {
+            camelContext.suspendRoute(liveFromRouteId, FROM_ROUTE_SUSPEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            liveFromRouteSuspended = true;
+        }
+
+        try {
+            camelContext.startRoute(standbyFromRouteId);
+        } catch (Exception e) {
+            LOGGER.error("couldn't start standby from-route {} - restoring live routes", standbyFromRouteId);
+
+            if (liveFromRouteSuspended) {
+                camelContext.resumeRoute(liveFromRouteId);
+            }
+
+            stopAndRemoveRoutes(standbyRouteIdList, standbyFromRouteId);
+            throw e;
+        }
+
+        liveSuffix = standbySuffix;
+        LOGGER.info("swapped traffic from routes: {} to routes: {}", liveRouteIdList, standbyRouteIdList);
+
+
+        // retire the old route set
+        //
+        drainFuture = getDrainExecutorService().submit(() -> {
+            try {
+                stopAndRemoveRoutes(liveRouteIdList, liveFromRouteId);
+            } catch (Exception e) {
+                LOGGER.error("something went wrong draining and removing retired routes ", e);
+            }
+        });
+    }
+
+
+    /**
+     * starts whichever of the routes aren't already started, in the order given
+     *
+     * @param routeIdList
+     * @throws Exception
+     */
+    private void startRoutes(List<String> routeIdList) throws Exception {
+        for (String routeId : routeIdList) {
+            if (camelContext.getRouteStatus(routeId) != null && isRouteStarted(routeId) == false) {
+                camelContext.startRoute(routeId);
+            }
+        }
+    }
+
+
+    /**
+     * the route ids are only known to routebuilder instances, so this creates one to ask
+     */
+    private void resolveRouteIdList() {
+        RouteBuilderHarness harnessedRouteBuilder;
+        try {
+            harnessedRouteBuilder = newHarnessedRouteBuilder();
+        } catch (Exception e) {
+            throw new IllegalStateException("couldn't create " + harnessedRouteBuilderName, e);
+        }
+
+        checkBaseId(harnessedRouteBuilder);
+        routeIdList = harnessedRouteBuilder.getRouteIdList();
+        fromRouteId = harnessedRouteBuilder.getFromRouteId();
+    }
+
+
+    /**
+     * a supplier that hands back a different routebuilder than the one it was registered under would have the
+     * runnable cycle routes nothing else knows it owns
+     *
+     * @param harnessedRouteBuilder
+     */
+    private void checkBaseId(RouteBuilderHarness harnessedRouteBuilder) {
+        if (baseId.equals(harnessedRouteBuilder.getBaseId()) == false) {
+            throw new IllegalStateException(
+                    harnessedRouteBuilderName + " supplied a routebuilder with base id "
+                            + harnessedRouteBuilder.getBaseId() + " - expected " + baseId
+            );
+        }
+    }
+
+
+    /**
+     *
+     * @param routeId
+     * @return
+     */
+    private boolean isRouteStarted(String routeId) {
+        ServiceStatus serviceStatus = camelContext.getRouteStatus(routeId);
+        return serviceStatus != null && serviceStatus.isStarted();
+    }
+
+
+    /**
+     * stops and removes the requested routes in the order given. each route is waited on until camel fires its route
+     * stopped and route removed events or the route removal timeout elapses, whichever happens first. routes that
+     * aren't in the camel context are skipped. in drain mode the routes are drained before any of them are stopped.
+     *
+     * @param routesToRemoveList
+     * @param fromRouteId the from-route feeding the routes, which needn't be one of them. suspended to drain them
+     * @throws Exception
+     */
+    private void stopAndRemoveRoutes(List<String> routesToRemoveList, String fromRouteId) throws Exception {
+        RouteLifecycleEventNotifier routeLifecycleEventNotifier = RouteLifecycleEventNotifier.register(camelContext);
+
+        boolean drainRoutes = drainTimeoutMillis > 0;
+        long drainStartNanos = System.nanoTime();
+        int inflightAtDrainStartCount = 0;
+        int timedOutCount = 0;
+
+        if (drainRoutes) {
+            suspendFromRoute(fromRouteId);
+
+            // counted once nothing new can get in, so every exchange counted here either drains or times out
+            inflightAtDrainStartCount = countInflightExchanges(routesToRemoveList);
+            timedOutCount = awaitDrain(routesToRemoveList);
+            recordPhase(ReloadPhase.DRAIN, drainStartNanos);
+        }
+
+        long stopTimeoutMillis = drainRoutes ? DRAINED_ROUTE_STOP_TIMEOUT_MILLIS : routeRemovalTimeoutMillis;
+
+        for (String routeToRemove : routesToRemoveList) {
+            if (camelContext.getRoute(routeToRemove) == null) {
+                LOGGER.info("route {} isn't in the camel context - nothing to stop and remove", routeToRemove);
+                continue;
+            }
+
+            LOGGER.info("stopping and removing route: {}", routeToRemove);
+
+            try {
+                long stopStartNanos = System.nanoTime();
+                CountDownLatch routeStoppedLatch = routeLifecycleEventNotifier.expectRouteStopped(routeToRemove);
+                camelContext.stopRoute(routeToRemove, stopTimeoutMillis, TimeUnit.MILLISECONDS);
+                awaitRouteEvent(routeStoppedLatch, routeToRemove, "stopped");
+                long stopMillis = TimeUnit.NANOSECONDS.toMillis(recordPhase(ReloadPhase.ROUTE_STOP, stopStartNanos));
+
+                long removeStartNanos = System.nanoTime();
+                CountDownLatch routeRemovedLatch = routeLifecycleEventNotifier.expectRouteRemoved(routeToRemove);
+                if (camelContext.removeRoute(routeToRemove) == false) {
+                    throw new IllegalStateException("camel refused to remove route " + routeToRemove);
                 }
+                awaitRouteEvent(routeRemovedLatch, routeToRemove, "removed");
+                long removeMillis =
+                        TimeUnit.NANOSECONDS.toMillis(recordPhase(ReloadPhase.ROUTE_REMOVE, removeStartNanos));
+
+                LOGGER.info("route {} stopped in {}ms and removed in {}ms", routeToRemove, stopMillis, removeMillis);
+            } finally {
+                routeLifecycleEventNotifier.forget(routeToRemove);
+            }
+        }
 
-                List<Boolean> gtgList =
-                        routesToRemoveList.stream()
-                                .map(routeToRemove -> camelContext.getRouteStatus(routeToRemove) == null)
-                                .filter(x -> x == true)
-                                .collect(Collectors.toList());
+        if (drainRoutes) {
+            lastDrainResult = new DrainResult(
+                    // an exchange handed into the routes by something other than the from-route can time out
+                    // without having been counted at the start
+                    Math.max(inflightAtDrainStartCount - timedOutCount, 0),
+                    timedOutCount,
+                    countInflightExchanges(routesToRemoveList),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drainStartNanos)
+            );
 
-                if (gtgList.size() == routesToRemoveList.size()) {
-                    break;
-                } else {
-                    Thread.sleep(3000);
+            LOGGER.info("drained routes {}: {}", routesToRemoveList, lastDrainResult);
+        }
+    }
+
+
+    /**
+     * stops new exchanges entering the routes. a from-route that isn't started - already suspended by a selective
+     * cycle or a swap, or not in the camel context - is left as it is
+     *
+     * @param fromRouteId
+     * @throws Exception
+     */
+    private void suspendFromRoute(String fromRouteId) throws Exception {
+        if (camelContext.getRouteStatus(fromRouteId) == ServiceStatus.Started) {
+            camelContext.suspendRoute(fromRouteId, FROM_ROUTE_SUSPEND_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+
+    /**
+     * waits until nothing is in flight through any of the routes or the drain timeout elapses
+     *
+     * @param routeIdList
+     * @return how many exchanges were still in flight when the drain timeout elapsed
+     * @throws InterruptedException
+     */
+    private int awaitDrain(List<String> routeIdList) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeoutMillis);
+        int inflightCount = countInflightExchanges(routeIdList);
+
+        while (inflightCount > 0 && System.nanoTime() < deadlineNanos) {
+            Thread.sleep(DRAIN_POLL_INTERVAL_MILLIS);
+            inflightCount = countInflightExchanges(routeIdList);
+        }
+
+        if (inflightCount > 0) {
+            LOGGER.warn("{} exchange(s) still in flight through {} after {}ms drain timeout",
+                        inflightCount, routeIdList, drainTimeoutMillis);
+        }
+
+        return inflightCount;
+    }
+
+
+    /**
+     * an exchange that's passed from one harnessed route into another over a synchronous endpoint is in flight in
+     * both, so this counts exchanges rather than adding up each route's inflight count
+     *
+     * @param routeIdList
+     * @return how many exchanges are in flight through any of the routes
+     */
+    private int countInflightExchanges(List<String> routeIdList) {
+        Set<String> routeIdSet = new HashSet<>(routeIdList);
+
+        return (int)camelContext.getInflightRepository()
+                                .browse()
+                                .stream()
+                                .filter(inflightExchange -> routeIdSet.contains(inflightExchange.getFromRouteId())
+                                                            || routeIdSet.contains(inflightExchange.getAtRouteId()))
+                                .count();
+    }
+
+
+    /**
+     * the call to addRoutes() that follows route removal will blow up due to namespace violation (each route must
+     * have a unique identifier) if a route didn't go away, so better to fail here with a message that says why
+     *
+     * @param latch
+     * @param routeId
+     * @param eventName
+     * @throws InterruptedException
+     */
+    private void awaitRouteEvent(CountDownLatch latch, String routeId, String eventName) throws InterruptedException {
+        if (latch.await(routeRemovalTimeoutMillis, TimeUnit.MILLISECONDS) == false) {
+            throw new IllegalStateException(
+                    "route " + routeId + " wasn't " + eventName + " within " + routeRemovalTimeoutMillis + "ms"
+            );
+        }
+    }
+
+
+    /**
+     * appends the suffix to the id of every route in the routebuilder that has one and to every reference to the
+     * harness' business logic from/to endpoints. this is what lets two copies of the same routebuilder be live in
+     * the camel context at the same time.
+     *
+     * @param harnessedRouteBuilder
+     * @param routesDefinition
+     * @param suffix
+     */
+    private void applySuffix(RouteBuilderHarness harnessedRouteBuilder,
+                             RoutesDefinition routesDefinition,
+                             String suffix) {
+
+        if (suffix.isEmpty()) {
+            return;
+        }
+
+        String businessLogicRouteFromName = harnessedRouteBuilder.getBusinessLogicRouteFromName();
+        String businessLogicRouteToName = harnessedRouteBuilder.getBusinessLogicRouteToNameOptional().orElse(null);
+
+        for (RouteDefinition routeDefinition : routesDefinition.getRoutes()) {
+            if (routeDefinition.hasCustomIdAssigned()) {
+                routeDefinition.setId(routeDefinition.getId() + suffix);
+            }
+
+            for (FromDefinition fromDefinition : routeDefinition.getInputs()) {
+                String uri = fromDefinition.getUri();
+                if (uri != null && (uri.equals(businessLogicRouteFromName) || uri.equals(businessLogicRouteToName))) {
+                    fromDefinition.setUri(uri + suffix);
                 }
             }
 
-            LOGGER.info("presuming routes are removed - attempting to recreate...");
-            camelContext.addRoutes(harnessedRouteBuilder);
+            // camel hands back an iterator of the raw type, so each element is cast to the wildcard one instead
+            Iterator<?> sendDefinitionIterator =
+                    ProcessorDefinitionHelper.filterTypeInOutputs(routeDefinition.getOutputs(), SendDefinition.class);
 
-        } catch (Exception e) {
-            LOGGER.error("something went wrong removing and re-injecting routes ", e);
+            while (sendDefinitionIterator.hasNext()) {
+                SendDefinition<?> sendDefinition = (SendDefinition<?>)sendDefinitionIterator.next();
+                String uri = sendDefinition.getUri();
+                if (uri != null && (uri.equals(businessLogicRouteFromName) || uri.equals(businessLogicRouteToName))) {
+                    sendDefinition.setUri(uri + suffix);
+                }
+            }
         }
     }
 
+
+    /**
+     *
+     * @param harnessedRouteBuilder
+     * @param suffix
+     * @return
+     */
+    private List<String> getSuffixedRouteIdList(RouteBuilderHarness harnessedRouteBuilder, String suffix) {
+        return harnessedRouteBuilder.getRouteIdList()
+                                    .stream()
+                                    .map(routeId -> routeId + suffix)
+                                    .collect(Collectors.toList());
+    }
+
+
+    /**
+     * reports how long the reload phase has been running for to ReloadMetrics
+     *
+     * @param reloadPhase
+     * @param startNanos when the phase started
+     * @return how long the phase took in nanoseconds
+     */
+    private long recordPhase(ReloadPhase reloadPhase, long startNanos) {
+        long durationNanos = System.nanoTime() - startNanos;
+        ReloadMetrics.recordPhase(baseId, reloadPhase, durationNanos);
+        return durationNanos;
+    }
+
+
+    /**
+     *
+     * @return
+     */
+    private RouteBuilderHarness newHarnessedRouteBuilder() {
+        RouteBuilderHarness harnessedRouteBuilder = harnessedRouteBuilderSupplier.get();
+
+        if (harnessedRouteBuilder == null) {
+            throw new IllegalStateException(harnessedRouteBuilderName + " supplied a null routebuilder");
+        }
+
+        return harnessedRouteBuilder;
+    }
+
+
+    /**
+     * looks the no-arg constructor up once so each reload is a plain constructor call rather than a reflective lookup
+     * and invocation
+     *
+     * @param harnessedRouteBuilderClazz
+     * @return
+     */
+    private static Supplier<RouteBuilderHarness> newConstructorHandleSupplier(
+            Class<? extends RouteBuilderHarness> harnessedRouteBuilderClazz) {
+
+        MethodHandle constructorHandle;
+
+        try {
+            constructorHandle = MethodHandles.publicLookup()
+                                             .findConstructor(harnessedRouteBuilderClazz,
+                                                              MethodType.methodType(void.class))
+                                             .asType(MethodType.methodType(RouteBuilderHarness.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalArgumentException(
+                    harnessedRouteBuilderClazz.getName() + " needs a public no-arg constructor", e
+            );
+        }
+
+        return () -> {
+            try {
+                return (RouteBuilderHarness)constructorHandle.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable t) {
+                throw new IllegalStateException("couldn't create " + harnessedRouteBuilderClazz.getName(), t);
+            }
+        };
+    }
+
+
+    /**
+     * lazily created so runnables that never swap don't hold on to a thread
+     *
+     * @return
+     */
+    private ExecutorService getDrainExecutorService() {
+        if (drainExecutorService == null) {
+            ExecutorServiceManager executorServiceManager = camelContext.getExecutorServiceManager();
+            String drainThreadName = baseId + "Drain";
+
+            drainExecutorService = threadPoolProfileId == null
+                    ? executorServiceManager.newSingleThreadExecutor(this, drainThreadName)
+                    : executorServiceManager.newThreadPool(this, drainThreadName, threadPoolProfileId);
+        }
+
+        return drainExecutorService;
+    }
+
 }
 
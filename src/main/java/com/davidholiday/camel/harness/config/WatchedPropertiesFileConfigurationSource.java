@@ -0,0 +1,361 @@
+package com.davidholiday.camel.harness.config;
+
+
+import com.netflix.config.WatchedConfigurationSource;
+import com.netflix.config.WatchedUpdateListener;
+import com.netflix.config.WatchedUpdateResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * archaius configuration source that pushes changes to local properties files as they happen rather than waiting for
+ * a polling scheduler to re-read them. the directories holding the files are watched with an nio WatchService. when a
+ * file changes it's re-read and diffed against what it held before, and only the keys that were added, changed or
+ * deleted are handed to archaius - so ConfigurationChangeListener only hears about properties that actually changed.
+ *
+ * when several files are watched a key in a later file overrides the same key in an earlier one.
+ *
+ * to plug it into archaius:
+ *
+ *   WatchedPropertiesFileConfigurationSource source = new WatchedPropertiesFileConfigurationSource(path);
+ *   ((ConcurrentCompositeConfiguration)ConfigurationManager.getConfigInstance())
+ *       .addConfiguration(new DynamicWatchedConfiguration(source), "watchedProperties");
+ *   source.start();
+ *
+ * @implNote how quickly a change is noticed is up to the platform's WatchService. on linux (inotify) it's immediate,
+ * some platforms fall back to polling the directory every few seconds.
+ */
+public class WatchedPropertiesFileConfigurationSource implements WatchedConfigurationSource, Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WatchedPropertiesFileConfigurationSource.class);
+
+    // editors and deploy tools tend to write a file in several steps. events for the same files that arrive within
+    // this long of each other are handled as one change
+    public static final long DEFAULT_SETTLE_MILLIS = 20;
+
+    private final List<Path> pathList;
+
+    private final long settleMillis;
+
+    private final List<WatchedUpdateListener> updateListenerList = new CopyOnWriteArrayList<>();
+
+    // watched file -> what it held the last time it was read. guarded by this
+    private final Map<Path, Map<String, Object>> fileContentsMap = new HashMap<>();
+
+    // the merged contents of every file as of the last update pushed to archaius. guarded by this
+    private Map<String, Object> currentData;
+
+    private WatchService watchService;
+
+    private Thread watchThread;
+
+
+    /**
+     *
+     * @param paths the properties files to watch. a file that doesn't exist yet is treated as empty
+     */
+    public WatchedPropertiesFileConfigurationSource(Path... paths) {
+        this(Arrays.asList(paths), DEFAULT_SETTLE_MILLIS);
+    }
+
+
+    /**
+     *
+     * @param pathList the properties files to watch, lowest priority first
+     * @param settleMillis see DEFAULT_SETTLE_MILLIS
+     */
+    public WatchedPropertiesFileConfigurationSource(List<Path> pathList, long settleMillis) {
+        List<Path> absolutePathList = new ArrayList<>(pathList.size());
+        for (Path path : pathList) {
+            absolutePathList.add(path.toAbsolutePath().normalize());
+        }
+
+        this.pathList = Collections.unmodifiableList(absolutePathList);
+        this.settleMillis = settleMillis;
+
+        synchronized (this) {
+            for (Path path : this.pathList) {
+                Map<String, Object> fileContents = readProperties(path);
+                fileContentsMap.put(path, fileContents == null ? Collections.emptyMap() : fileContents);
+            }
+
+            currentData = mergeFileContents();
+        }
+    }
+
+
+    /**
+     * starts watching the files
+     *
+     * @throws IOException
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+
+        Set<Path> directorySet = new LinkedHashSet<>();
+        for (Path path : pathList) {
+            directorySet.add(path.getParent());
+        }
+
+        for (Path directory : directorySet) {
+            directory.register(
+                    watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE
+            );
+        }
+
+        WatchService startedWatchService = watchService;
+        watchThread = new Thread(() -> watch(startedWatchService), getClass().getSimpleName());
+        watchThread.setDaemon(true);
+        watchThread.start();
+
+        LOGGER.info("watching {} for changes", pathList);
+    }
+
+
+    /**
+     * stops watching the files
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService == null) {
+            return;
+        }
+
+        watchThread.interrupt();
+        watchService.close();
+        watchService = null;
+        watchThread = null;
+    }
+
+
+    @Override
+    public void addUpdateListener(WatchedUpdateListener watchedUpdateListener) {
+        updateListenerList.add(watchedUpdateListener);
+    }
+
+
+    @Override
+    public void removeUpdateListener(WatchedUpdateListener watchedUpdateListener) {
+        updateListenerList.remove(watchedUpdateListener);
+    }
+
+
+    @Override
+    public synchronized Map<String, Object> getCurrentData() {
+        return new HashMap<>(currentData);
+    }
+
+
+    /**
+     * re-reads the files and pushes whatever changed to the update listeners. this is what the watch thread calls when
+     * one of the files changes - it's exposed so a change can also be pushed on demand.
+     */
+    public void refresh() {
+        refresh(new LinkedHashSet<>(pathList));
+    }
+
+
+    /**
+     *
+     * @param changedPathSet the files to re-read
+     */
+    private void refresh(Set<Path> changedPathSet) {
+        WatchedUpdateResult watchedUpdateResult;
+
+        synchronized (this) {
+            for (Path changedPath : changedPathSet) {
+                Map<String, Object> fileContents = readProperties(changedPath);
+                if (fileContents != null) {
+                    fileContentsMap.put(changedPath, fileContents);
+                }
+            }
+
+            Map<String, Object> newData = mergeFileContents();
+            Map<String, Object> addedMap = new HashMap<>();
+            Map<String, Object> changedMap = new HashMap<>();
+            Map<String, Object> deletedMap = new HashMap<>();
+
+            for (Map.Entry<String, Object> entry : newData.entrySet()) {
+                if (currentData.containsKey(entry.getKey()) == false) {
+                    addedMap.put(entry.getKey(), entry.getValue());
+                } else if (Objects.equals(currentData.get(entry.getKey()), entry.getValue()) == false) {
+                    changedMap.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            for (Map.Entry<String, Object> entry : currentData.entrySet()) {
+                if (newData.containsKey(entry.getKey()) == false) {
+                    deletedMap.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            currentData = newData;
+            watchedUpdateResult = WatchedUpdateResult.createIncremental(addedMap, changedMap, deletedMap);
+
+            if (watchedUpdateResult.hasChanges() == false) {
+                LOGGER.debug("{} changed on disk but none of their properties did", changedPathSet);
+                return;
+            }
+
+            LOGGER.info(
+                    "{} changed - added: {} changed: {} deleted: {}",
+                    changedPathSet,
+                    addedMap.keySet(),
+                    changedMap.keySet(),
+                    deletedMap.keySet()
+            );
+        }
+
+        for (WatchedUpdateListener watchedUpdateListener : updateListenerList) {
+            try {
+                watchedUpdateListener.updateConfiguration(watchedUpdateResult);
+            } catch (RuntimeException e) {
+                LOGGER.error("update listener {} failed to apply changes ", watchedUpdateListener, e);
+            }
+        }
+    }
+
+
+    /**
+     * runs on the watch thread until the source is closed
+     *
+     * @param watchService
+     */
+    private void watch(WatchService watchService) {
+        try {
+            while (Thread.currentThread().isInterrupted() == false) {
+                Set<Path> changedPathSet = new LinkedHashSet<>();
+                WatchKey watchKey = watchService.take();
+
+                // keep collecting until the files have settled
+                while (watchKey != null) {
+                    collectChangedPaths(watchKey, changedPathSet);
+                    watchKey = watchService.poll(settleMillis, TimeUnit.MILLISECONDS);
+                }
+
+                if (changedPathSet.isEmpty() == false) {
+                    refreshQuietly(changedPathSet);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOGGER.info("stopped watching {}", pathList);
+        }
+    }
+
+
+    /**
+     * whatever goes wrong with one refresh, the watch thread has to survive it or nothing is reloaded again until a
+     * restart
+     *
+     * @param changedPathSet
+     */
+    private void refreshQuietly(Set<Path> changedPathSet) {
+        try {
+            refresh(changedPathSet);
+        } catch (RuntimeException e) {
+            LOGGER.error("something went wrong refreshing {} - still watching", changedPathSet, e);
+        }
+    }
+
+
+    /**
+     *
+     * @param watchKey
+     * @param changedPathSet the watched files the key's events are for are added to this
+     */
+    private void collectChangedPaths(WatchKey watchKey, Set<Path> changedPathSet) {
+        Path directory = (Path)watchKey.watchable();
+
+        for (WatchEvent<?> watchEvent : watchKey.pollEvents()) {
+            if (watchEvent.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changedPathSet.addAll(pathList);
+                continue;
+            }
+
+            Path path = directory.resolve((Path)watchEvent.context()).toAbsolutePath().normalize();
+            if (pathList.contains(path)) {
+                changedPathSet.add(path);
+            }
+        }
+
+        watchKey.reset();
+    }
+
+
+    /**
+     * @return every file's properties, later files overriding earlier ones
+     */
+    private Map<String, Object> mergeFileContents() {
+        Map<String, Object> mergedData = new HashMap<>();
+        for (Path path : pathList) {
+            mergedData.putAll(fileContentsMap.get(path));
+        }
+
+        return mergedData;
+    }
+
+
+    /**
+     *
+     * @param path
+     * @return the file's properties. empty if the file doesn't exist, null if it can't be read - in which case what
+     * was last read from it is kept rather than treating every property in it as deleted
+     */
+    private static Map<String, Object> readProperties(Path path) {
+        Properties properties = new Properties();
+
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            properties.load(inputStream);
+        } catch (NoSuchFileException e) {
+            LOGGER.debug("{} doesn't exist - treating it as empty", path);
+        } catch (IOException | IllegalArgumentException e) {
+            // Properties.load() throws IllegalArgumentException for a malformed unicode escape
+            LOGGER.warn("couldn't read {} - keeping what was last read from it", path, e);
+            return null;
+        }
+
+        Map<String, Object> propertyMap = new HashMap<>();
+        for (String propertyName : properties.stringPropertyNames()) {
+            propertyMap.put(propertyName, properties.getProperty(propertyName));
+        }
+
+        return propertyMap;
+    }
+
+}
@@ -0,0 +1,176 @@
+package com.davidholiday.camel.harness.helpers;
+
+
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.DynamicStringProperty;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * the chain walking half of the chained dynamic properties. resolves to the first of an ordered list of archaius
+ * properties that has a usable value - a property with no value, an empty value or a value that doesn't parse as the
+ * subclass' type counts as missing. if none of them has one the subclass falls back to its default value.
+ *
+ * every link has an archaius callback on it, so setting or clearing any of the properties re-resolves the chain. the
+ * value is parsed once per change and the subclass keeps the result in a volatile field, which is all its get() reads.
+ *
+ * the archaius callbacks keep the chain reachable from archaius' property registry for as long as they're on the links,
+ * which is forever unless close() is called. a chain that's created per route, per reload or for anything else that
+ * doesn't live as long as the application should be closed once it's done with.
+ *
+ * subclasses must call start() at the end of their constructor.
+ */
+public abstract class AbstractChainedDynamicProperty implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AbstractChainedDynamicProperty.class);
+
+    private final List<DynamicStringProperty> linkList;
+
+    // the property the current value came from and its unparsed value. both null when it's the default value
+    private volatile String resolvedPropertyName;
+    private String resolvedRawValue;
+
+    private final List<Runnable> callbackList = new CopyOnWriteArrayList<>();
+
+
+    /**
+     *
+     * @param propertyNameList tried in order. at least one is required
+     */
+    protected AbstractChainedDynamicProperty(List<String> propertyNameList) {
+        if (propertyNameList.isEmpty()) {
+            throw new IllegalArgumentException("a chained property needs at least one property name");
+        }
+
+        List<DynamicStringProperty> linkList = new ArrayList<>(propertyNameList.size());
+        for (String propertyName : propertyNameList) {
+            linkList.add(DynamicPropertyFactory.getInstance().getStringProperty(propertyName, ""));
+        }
+
+        this.linkList = Collections.unmodifiableList(linkList);
+    }
+
+
+    /**
+     * parses the value and, if it's usable, makes it the current value
+     *
+     * @param rawValue never null or empty
+     * @return false if the value can't be parsed
+     */
+    protected abstract boolean applyValue(String rawValue);
+
+
+    /**
+     * makes the default value the current value
+     */
+    protected abstract void applyDefault();
+
+
+    /**
+     * resolves the chain for the first time and starts following changes to it
+     */
+    protected final void start() {
+        resolve();
+        for (DynamicStringProperty link : linkList) {
+            link.addCallback(this::resolve);
+        }
+    }
+
+
+    /**
+     * @return the name of the property the current value came from, null if it's the default value
+     */
+    public String getResolvedPropertyName() { return resolvedPropertyName; }
+
+
+    /**
+     * @return the property names in the order they're tried
+     */
+    public List<String> getPropertyNameList() {
+        List<String> propertyNameList = new ArrayList<>(linkList.size());
+        for (DynamicStringProperty link : linkList) {
+            propertyNameList.add(link.getName());
+        }
+
+        return propertyNameList;
+    }
+
+
+    /**
+     * @param callback run whenever the resolved value changes
+     */
+    public void addCallback(Runnable callback) {
+        callbackList.add(callback);
+    }
+
+
+    /**
+     * stops following changes to the chain and drops the callbacks added to it. the value stays whatever it was last
+     * resolved to
+     */
+    @Override
+    public void close() {
+        // every link is a wrapper of its own, so this only takes off the callback start() put on it
+        for (DynamicStringProperty link : linkList) {
+            link.removeAllCallbacks();
+        }
+
+        callbackList.clear();
+    }
+
+
+    /**
+     * walks the chain. synchronized because callbacks for different links can fire on different threads
+     */
+    private synchronized void resolve() {
+        String newPropertyName = null;
+        String newRawValue = null;
+
+        for (DynamicStringProperty link : linkList) {
+            String rawValue = link.get();
+
+            if (rawValue == null || rawValue.isEmpty()) {
+                continue;
+            }
+
+            if (applyValue(rawValue)) {
+                newPropertyName = link.getName();
+                newRawValue = rawValue;
+                break;
+            }
+
+            LOGGER.warn("ignoring value {} of property {} - it doesn't parse as {}",
+                        rawValue, link.getName(), getClass().getSimpleName());
+        }
+
+        if (newPropertyName == null) {
+            applyDefault();
+        }
+
+        boolean changed = Objects.equals(resolvedRawValue, newRawValue) == false;
+
+        resolvedPropertyName = newPropertyName;
+        resolvedRawValue = newRawValue;
+
+        if (changed) {
+            for (Runnable callback : callbackList) {
+                callback.run();
+            }
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{" + getPropertyNameList() + " -> " + resolvedRawValue + "}";
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.davidholiday.camel.harness.helpers;
+
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * a boolean property that resolves to the first of an ordered list of archaius properties whose value is true or false
+ * (in any case). anything else counts as missing rather than false. if none of them has a usable value the default
+ * value is used. see AbstractChainedDynamicProperty for how the chain is followed.
+ */
+public class ChainedDynamicBooleanProperty extends AbstractChainedDynamicProperty {
+
+    private final boolean defaultValue;
+
+    private volatile boolean value;
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a usable value
+     * @param propertyNames tried in order. at least one is required
+     */
+    public ChainedDynamicBooleanProperty(boolean defaultValue, String... propertyNames) {
+        this(defaultValue, Arrays.asList(propertyNames));
+    }
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a usable value
+     * @param propertyNameList tried in order. at least one is required
+     */
+    public ChainedDynamicBooleanProperty(boolean defaultValue, List<String> propertyNameList) {
+        super(propertyNameList);
+        this.defaultValue = defaultValue;
+        start();
+    }
+
+
+    /**
+     * @return the parsed value of the first property in the chain that has a usable one, otherwise the default value
+     */
+    public boolean get() { return value; }
+
+
+    @Override
+    protected boolean applyValue(String rawValue) {
+        String trimmedValue = rawValue.trim();
+
+        if (trimmedValue.equalsIgnoreCase("true")) {
+            value = true;
+        } else if (trimmedValue.equalsIgnoreCase("false")) {
+            value = false;
+        } else {
+            return false;
+        }
+
+        return true;
+    }
+
+
+    @Override
+    protected void applyDefault() {
+        value = defaultValue;
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.davidholiday.camel.harness.helpers;
+
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * a double property that resolves to the first of an ordered list of archaius properties with a value that
+ * parses as a double. if none of them has one the default value is used. see AbstractChainedDynamicProperty for how
+ * the chain is followed.
+ */
+public class ChainedDynamicDoubleProperty extends AbstractChainedDynamicProperty {
+
+    private final double defaultValue;
+
+    private volatile double value;
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a usable value
+     * @param propertyNames tried in order. at least one is required
+     */
+    public ChainedDynamicDoubleProperty(double defaultValue, String... propertyNames) {
+        this(defaultValue, Arrays.asList(propertyNames));
+    }
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a usable value
+     * @param propertyNameList tried in order. at least one is required
+     */
+    public ChainedDynamicDoubleProperty(double defaultValue, List<String> propertyNameList) {
+        super(propertyNameList);
+        this.defaultValue = defaultValue;
+        start();
+    }
+
+
+    /**
+     * @return the parsed value of the first property in the chain that has a usable one, otherwise the default value
+     */
+    public double get() { return value; }
+
+
+    @Override
+    protected boolean applyValue(String rawValue) {
+        try {
+            value = Double.parseDouble(rawValue.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+
+    @Override
+    protected void applyDefault() {
+        value = defaultValue;
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.davidholiday.camel.harness.helpers;
+
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * a Duration property that resolves to the first of an ordered list of archaius properties with a value that parses as
+ * a duration - either ISO-8601 (PT30S) or a plain number of milliseconds. if none of them has one the default value is
+ * used. see AbstractChainedDynamicProperty for how the chain is followed.
+ *
+ * the duration is also kept in milliseconds so timeouts can be read without touching the Duration.
+ */
+public class ChainedDynamicDurationProperty extends AbstractChainedDynamicProperty {
+
+    private final Duration defaultValue;
+
+    // replaced as a whole so get() and getMillis() always agree
+    private volatile ParsedDuration value;
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a usable value
+     * @param propertyNames tried in order. at least one is required
+     */
+    public ChainedDynamicDurationProperty(Duration defaultValue, String... propertyNames) {
+        this(defaultValue, Arrays.asList(propertyNames));
+    }
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a usable value
+     * @param propertyNameList tried in order. at least one is required
+     */
+    public ChainedDynamicDurationProperty(Duration defaultValue, List<String> propertyNameList) {
+        super(propertyNameList);
+        this.defaultValue = defaultValue;
+        start();
+    }
+
+
+    /**
+     * @return the parsed value of the first property in the chain that has a usable one, otherwise the default value
+     */
+    public Duration get() { return value.duration; }
+
+
+    /**
+     * @return get() in milliseconds
+     */
+    public long getMillis() { return value.millis; }
+
+
+    @Override
+    protected boolean applyValue(String rawValue) {
+        Duration duration = parseDuration(rawValue);
+
+        if (duration == null) {
+            return false;
+        }
+
+        value = new ParsedDuration(duration);
+        return true;
+    }
+
+
+    /**
+     *
+     * @param rawValue an ISO-8601 duration or a plain number of milliseconds
+     * @return null if the value is neither
+     */
+    static Duration parseDuration(String rawValue) {
+        String trimmedValue = rawValue.trim();
+
+        if (trimmedValue.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return Character.isDigit(trimmedValue.charAt(0))
+                    ? Duration.ofMillis(Long.parseLong(trimmedValue))
+                    : Duration.parse(trimmedValue);
+        } catch (NumberFormatException | DateTimeParseException | ArithmeticException e) {
+            return null;
+        }
+    }
+
+
+    @Override
+    protected void applyDefault() {
+        value = new ParsedDuration(defaultValue);
+    }
+
+
+    private static final class ParsedDuration {
+
+        private final Duration duration;
+        private final long millis;
+
+        private ParsedDuration(Duration duration) {
+            this.duration = duration;
+            this.millis = duration == null ? 0 : duration.toMillis();
+        }
+    }
+
+}
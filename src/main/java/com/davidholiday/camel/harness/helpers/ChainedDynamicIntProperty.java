@@ -0,0 +1,64 @@
+package com.davidholiday.camel.harness.helpers;
+
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * an int property that resolves to the first of an ordered list of archaius properties with a value that parses
+ * as an int. if none of them has one the default value is used. see AbstractChainedDynamicProperty for how the chain is
+ * followed.
+ */
+public class ChainedDynamicIntProperty extends AbstractChainedDynamicProperty {
+
+    private final int defaultValue;
+
+    private volatile int value;
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a usable value
+     * @param propertyNames tried in order. at least one is required
+     */
+    public ChainedDynamicIntProperty(int defaultValue, String... propertyNames) {
+        this(defaultValue, Arrays.asList(propertyNames));
+    }
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a usable value
+     * @param propertyNameList tried in order. at least one is required
+     */
+    public ChainedDynamicIntProperty(int defaultValue, List<String> propertyNameList) {
+        super(propertyNameList);
+        this.defaultValue = defaultValue;
+        start();
+    }
+
+
+    /**
+     * @return the parsed value of the first property in the chain that has a usable one, otherwise the default value
+     */
+    public int get() { return value; }
+
+
+    @Override
+    protected boolean applyValue(String rawValue) {
+        try {
+            value = Integer.parseInt(rawValue.trim());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+
+    @Override
+    protected void applyDefault() {
+        value = defaultValue;
+    }
+
+}
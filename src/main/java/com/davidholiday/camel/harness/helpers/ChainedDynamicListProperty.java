@@ -0,0 +1,78 @@
+package com.davidholiday.camel.harness.helpers;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * a list property that resolves to the first of an ordered list of archaius properties with a non-empty value, split
+ * on commas. items are trimmed and empty items dropped, so a value of only commas and whitespace counts as missing. if
+ * none of them has a usable value the default value is used. see AbstractChainedDynamicProperty for how the chain is
+ * followed.
+ *
+ * the lists handed out are unmodifiable and shared, so reading one doesn't copy anything.
+ */
+public class ChainedDynamicListProperty extends AbstractChainedDynamicProperty {
+
+    private final List<String> defaultValue;
+
+    private volatile List<String> value;
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a usable value
+     * @param propertyNames tried in order. at least one is required
+     */
+    public ChainedDynamicListProperty(List<String> defaultValue, String... propertyNames) {
+        this(defaultValue, Arrays.asList(propertyNames));
+    }
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a usable value
+     * @param propertyNameList tried in order. at least one is required
+     */
+    public ChainedDynamicListProperty(List<String> defaultValue, List<String> propertyNameList) {
+        super(propertyNameList);
+        this.defaultValue = Collections.unmodifiableList(new ArrayList<>(defaultValue));
+        start();
+    }
+
+
+    /**
+     * @return the split value of the first property in the chain that has a usable one, otherwise the default value
+     */
+    public List<String> get() { return value; }
+
+
+    @Override
+    protected boolean applyValue(String rawValue) {
+        List<String> itemList = new ArrayList<>();
+
+        for (String item : rawValue.split(",")) {
+            String trimmedItem = item.trim();
+            if (trimmedItem.isEmpty() == false) {
+                itemList.add(trimmedItem);
+            }
+        }
+
+        if (itemList.isEmpty()) {
+            return false;
+        }
+
+        value = Collections.unmodifiableList(itemList);
+        return true;
+    }
+
+
+    @Override
+    protected void applyDefault() {
+        value = defaultValue;
+    }
+
+}
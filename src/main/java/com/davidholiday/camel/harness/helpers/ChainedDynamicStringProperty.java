@@ -0,0 +1,59 @@
+package com.davidholiday.camel.harness.helpers;
+
+
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * a string property that resolves to the first of an ordered list of archaius properties that has a non-empty value.
+ * if none of them has one the default value is used. see AbstractChainedDynamicProperty for how the chain is followed.
+ */
+public class ChainedDynamicStringProperty extends AbstractChainedDynamicProperty {
+
+    private final String defaultValue;
+
+    private volatile String value;
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a value
+     * @param propertyNames tried in order. at least one is required
+     */
+    public ChainedDynamicStringProperty(String defaultValue, String... propertyNames) {
+        this(defaultValue, Arrays.asList(propertyNames));
+    }
+
+
+    /**
+     *
+     * @param defaultValue used when none of the properties has a value
+     * @param propertyNameList tried in order. at least one is required
+     */
+    public ChainedDynamicStringProperty(String defaultValue, List<String> propertyNameList) {
+        super(propertyNameList);
+        this.defaultValue = defaultValue;
+        start();
+    }
+
+
+    /**
+     * @return the value of the first property in the chain that has one, otherwise the default value
+     */
+    public String get() { return value; }
+
+
+    @Override
+    protected boolean applyValue(String rawValue) {
+        value = rawValue;
+        return true;
+    }
+
+
+    @Override
+    protected void applyDefault() {
+        value = defaultValue;
+    }
+
+}
@@ -0,0 +1,156 @@
+package com.davidholiday.camel.harness.helpers;
+
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * immutable copy of the values of a set of archaius properties taken at one point in time. a processor that needs
+ * several properties to agree with each other should grab one snapshot per exchange and read all of them from it -
+ * the values can't change underneath it and reading them doesn't touch archaius.
+ *
+ * values are kept as strings. the typed getters parse on every call, so for a single value read on a hot path a typed
+ * chained property is cheaper.
+ */
+public class ConfigurationSnapshot {
+
+    private final long version;
+
+    private final Map<String, String> valueMap;
+
+
+    /**
+     *
+     * @param version
+     * @param valueMap property name -> value. properties without a value are left out
+     */
+    public ConfigurationSnapshot(long version, Map<String, String> valueMap) {
+        this.version = version;
+        this.valueMap = Collections.unmodifiableMap(new HashMap<>(valueMap));
+    }
+
+
+    /**
+     * @return goes up by one every time a new snapshot of the same set of properties is published
+     */
+    public long getVersion() { return version; }
+
+
+    /**
+     * @return property name -> value for every property in the snapshot that has one
+     */
+    public Map<String, String> getValueMap() { return valueMap; }
+
+
+    /**
+     *
+     * @param propertyName
+     * @return null if the property has no value
+     */
+    public String getString(String propertyName) { return valueMap.get(propertyName); }
+
+
+    /**
+     *
+     * @param propertyName
+     * @param defaultValue
+     * @return
+     */
+    public String getString(String propertyName, String defaultValue) {
+        return valueMap.getOrDefault(propertyName, defaultValue);
+    }
+
+
+    /**
+     *
+     * @param propertyName
+     * @param defaultValue returned if the property has no value or it doesn't parse
+     * @return
+     */
+    public int getInt(String propertyName, int defaultValue) {
+        String value = valueMap.get(propertyName);
+
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+
+    /**
+     *
+     * @param propertyName
+     * @param defaultValue returned if the property has no value or it doesn't parse
+     * @return
+     */
+    public long getLong(String propertyName, long defaultValue) {
+        String value = valueMap.get(propertyName);
+
+        try {
+            return value == null ? defaultValue : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+
+    /**
+     *
+     * @param propertyName
+     * @param defaultValue returned if the property has no value or it doesn't parse
+     * @return
+     */
+    public double getDouble(String propertyName, double defaultValue) {
+        String value = valueMap.get(propertyName);
+
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+
+    /**
+     *
+     * @param propertyName
+     * @param defaultValue returned if the property's value is anything other than true or false
+     * @return
+     */
+    public boolean getBoolean(String propertyName, boolean defaultValue) {
+        String value = valueMap.get(propertyName);
+
+        if (value != null && value.trim().equalsIgnoreCase("true")) {
+            return true;
+        } else if (value != null && value.trim().equalsIgnoreCase("false")) {
+            return false;
+        }
+
+        return defaultValue;
+    }
+
+
+    /**
+     *
+     * @param propertyName
+     * @param defaultValue returned if the property has no value or it isn't an ISO-8601 duration or milliseconds
+     * @return
+     */
+    public Duration getDuration(String propertyName, Duration defaultValue) {
+        String value = valueMap.get(propertyName);
+        Duration duration = value == null ? null : ChainedDynamicDurationProperty.parseDuration(value);
+
+        return duration == null ? defaultValue : duration;
+    }
+
+
+    @Override
+    public String toString() {
+        return "ConfigurationSnapshot{version=" + version + ", " + valueMap + "}";
+    }
+
+}
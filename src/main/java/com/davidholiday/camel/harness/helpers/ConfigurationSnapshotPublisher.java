@@ -0,0 +1,124 @@
+package com.davidholiday.camel.harness.helpers;
+
+
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.DynamicStringProperty;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * publishes ConfigurationSnapshots of a declared set of archaius properties. each refresh builds a new snapshot and
+ * swaps it in with a single volatile write, so get() always returns a complete snapshot and never takes a lock.
+ *
+ * hand the publisher to ConfigurationChangeListener.addSnapshotPublisher() and it's refreshed once per burst of
+ * changes to its properties, alongside the route reloads the same burst triggers. that way a processor never sees
+ * half of a properties file push.
+ */
+public class ConfigurationSnapshotPublisher implements Runnable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigurationSnapshotPublisher.class);
+
+    private final String name;
+
+    private final List<DynamicStringProperty> propertyList;
+
+    private volatile ConfigurationSnapshot snapshot;
+
+
+    /**
+     *
+     * @param name shows up in logs and as the publisher's reload dispatch key
+     * @param propertyNames
+     */
+    public ConfigurationSnapshotPublisher(String name, String... propertyNames) {
+        this(name, Arrays.asList(propertyNames));
+    }
+
+
+    /**
+     *
+     * @param name shows up in logs and as the publisher's reload dispatch key
+     * @param propertyNameList
+     */
+    public ConfigurationSnapshotPublisher(String name, List<String> propertyNameList) {
+        this.name = name;
+
+        List<DynamicStringProperty> propertyList = new ArrayList<>(propertyNameList.size());
+        for (String propertyName : propertyNameList) {
+            propertyList.add(DynamicPropertyFactory.getInstance().getStringProperty(propertyName, null));
+        }
+
+        this.propertyList = Collections.unmodifiableList(propertyList);
+        this.snapshot = buildSnapshot(1);
+    }
+
+
+    /**
+     * @return the most recently published snapshot
+     */
+    public ConfigurationSnapshot get() { return snapshot; }
+
+
+    /**
+     * @return the names of the properties in each snapshot
+     */
+    public List<String> getPropertyNameList() {
+        List<String> propertyNameList = new ArrayList<>(propertyList.size());
+        for (DynamicStringProperty property : propertyList) {
+            propertyNameList.add(property.getName());
+        }
+
+        return propertyNameList;
+    }
+
+
+    /**
+     * publishes a new snapshot of the current property values. synchronized so versions are handed out in order
+     */
+    public synchronized void refresh() {
+        snapshot = buildSnapshot(snapshot.getVersion() + 1);
+        LOGGER.info("published {}", snapshot);
+    }
+
+
+    /**
+     * same as refresh() - this is what the ConfigurationChangeListener dispatches
+     */
+    @Override
+    public void run() { refresh(); }
+
+
+    @Override
+    public String toString() {
+        return ConfigurationSnapshotPublisher.class.getSimpleName() + "-" + name;
+    }
+
+
+    /**
+     *
+     * @param version
+     * @return
+     */
+    private ConfigurationSnapshot buildSnapshot(long version) {
+        Map<String, String> valueMap = new HashMap<>();
+
+        for (DynamicStringProperty property : propertyList) {
+            String value = property.get();
+            if (value != null) {
+                valueMap.put(property.getName(), value);
+            }
+        }
+
+        return new ConfigurationSnapshot(version, valueMap);
+    }
+
+}
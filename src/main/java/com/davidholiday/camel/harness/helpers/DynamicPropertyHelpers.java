@@ -4,25 +4,125 @@ package com.davidholiday.camel.harness.helpers;
 import com.netflix.config.DynamicPropertyFactory;
 import com.netflix.config.DynamicStringProperty;
 
+import java.time.Duration;
+import java.util.List;
+
 
 /**
  * wraps calls to archaius DynamicPropertyFactory in something that allows for an ordered list or property keys to be
  * tried before returning a default value
  *
- * TODO implement wrappers for more than just DynamicStringProperties?
- * TODO   supporting only strings might cover everything and create fewer headaches later than if we try to type
- * TODO   config vars read from a file
+ * the typed properties parse their value once per change rather than once per read, so processors that read timeouts,
+ * batch sizes or feature toggles per exchange should hold on to one of those rather than parsing a string property.
  */
 public class DynamicPropertyHelpers {
 
+    /**
+     * will try to resolve each property in turn and return the value of the first one that exists. default value if
+     * none is found is "". the chain keeps following changes to any of the properties, so hold on to what's returned
+     * rather than calling this again per exchange.
+     *
+     * @param propertyNames
+     * @return
+     */
+    public static ChainedDynamicStringProperty getChainedDynamicStringProperty(String... propertyNames) {
+        return new ChainedDynamicStringProperty("", propertyNames);
+    }
+
+
+    /**
+     * int version of getChainedDynamicStringProperty(). values that don't parse as an int are skipped
+     *
+     * @param defaultValue
+     * @param propertyNames
+     * @return
+     */
+    public static ChainedDynamicIntProperty getChainedDynamicIntProperty(int defaultValue, String... propertyNames) {
+        return new ChainedDynamicIntProperty(defaultValue, propertyNames);
+    }
+
+
+    /**
+     * long version of getChainedDynamicStringProperty(). values that don't parse as a long are skipped
+     *
+     * @param defaultValue
+     * @param propertyNames
+     * @return
+     */
+    public static ChainedDynamicLongProperty getChainedDynamicLongProperty(long defaultValue, String... propertyNames) {
+        return new ChainedDynamicLongProperty(defaultValue, propertyNames);
+    }
+
+
+    /**
+     * boolean version of getChainedDynamicStringProperty(). values other than true or false are skipped
+     *
+     * @param defaultValue
+     * @param propertyNames
+     * @return
+     */
+    public static ChainedDynamicBooleanProperty getChainedDynamicBooleanProperty(boolean defaultValue,
+                                                                                 String... propertyNames) {
+
+        return new ChainedDynamicBooleanProperty(defaultValue, propertyNames);
+    }
+
+
+    /**
+     * double version of getChainedDynamicStringProperty(). values that don't parse as a double are skipped
+     *
+     * @param defaultValue
+     * @param propertyNames
+     * @return
+     */
+    public static ChainedDynamicDoubleProperty getChainedDynamicDoubleProperty(double defaultValue,
+                                                                               String... propertyNames) {
+
+        return new ChainedDynamicDoubleProperty(defaultValue, propertyNames);
+    }
+
+
+    /**
+     * Duration version of getChainedDynamicStringProperty(). values are ISO-8601 durations or plain milliseconds,
+     * anything else is skipped
+     *
+     * @param defaultValue
+     * @param propertyNames
+     * @return
+     */
+    public static ChainedDynamicDurationProperty getChainedDynamicDurationProperty(Duration defaultValue,
+                                                                                   String... propertyNames) {
+
+        return new ChainedDynamicDurationProperty(defaultValue, propertyNames);
+    }
+
+
+    /**
+     * comma separated list version of getChainedDynamicStringProperty()
+     *
+     * @param defaultValue
+     * @param propertyNames
+     * @return
+     */
+    public static ChainedDynamicListProperty getChainedDynamicListProperty(List<String> defaultValue,
+                                                                           String... propertyNames) {
+
+        return new ChainedDynamicListProperty(defaultValue, propertyNames);
+    }
+
+
     /**
      * will try to resolve property one. if it doesn't exist, will then try to resolve property two. default value
      * if neither is found is "".
      *
+     * @deprecated which property is followed is decided once, when this is called - if property one is set or cleared
+     * later the returned property keeps following the wrong one. use getChainedDynamicStringProperty()
+     *
      * @param propertyNameOne
      * @param propertyNameTwo
      * @return
      */
+    @Deprecated
     public static DynamicStringProperty getOrGetDynamicStringProperty(String propertyNameOne, String propertyNameTwo) {
 
         DynamicStringProperty dynamicStringProperty =
@@ -0,0 +1,152 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+
+/**
+ * one object per routebuilder base id, each published with the platform MBeanServer under
+ * JmxReloadMetricsRecorder.JMX_DOMAIN:type=[mBeanType],name=[base id] from the moment it's created until it's
+ * removed. everything the harness keeps per base id and publishes over JMX is kept in one of these.
+ *
+ * JMX is only there to look at what's going on, so failing to register or unregister is logged rather than thrown.
+ *
+ * @param <T> an MXBean implementation
+ */
+public class BaseIdMBeanRegistry<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BaseIdMBeanRegistry.class);
+
+    private final String mBeanType;
+
+    private final Function<String, T> factory;
+
+    // base id -> its object
+    private final ConcurrentMap<String, T> baseIdMap = new ConcurrentHashMap<>();
+
+
+    /**
+     *
+     * @param mBeanType the type key of the object names
+     * @param factory makes the object for a base id
+     */
+    public BaseIdMBeanRegistry(String mBeanType, Function<String, T> factory) {
+        this.mBeanType = mBeanType;
+        this.factory = factory;
+    }
+
+
+    /**
+     * makes and registers the base id's object if it hasn't got one
+     *
+     * @param baseId
+     * @return
+     */
+    public T get(String baseId) {
+        T mBean = baseIdMap.get(baseId);
+
+        if (mBean == null) {
+            mBean = baseIdMap.computeIfAbsent(baseId, key -> {
+                T newMBean = factory.apply(key);
+                register(key, newMBean);
+                return newMBean;
+            });
+        }
+
+        return mBean;
+    }
+
+
+    /**
+     *
+     * @param baseId
+     * @return null if the base id hasn't got an object
+     */
+    public T getIfPresent(String baseId) { return baseIdMap.get(baseId); }
+
+
+    /**
+     * drops the base id's object and unregisters it. asking for the base id afterwards makes a new one
+     *
+     * @param baseId
+     * @return the object that was dropped, null if there wasn't one
+     */
+    public T remove(String baseId) {
+        T mBean = baseIdMap.remove(baseId);
+
+        if (mBean != null) {
+            unregister(baseId);
+        }
+
+        return mBean;
+    }
+
+
+    /**
+     * @return base id -> its object
+     */
+    public Map<String, T> asMap() { return Collections.unmodifiableMap(baseIdMap); }
+
+
+    /**
+     *
+     * @param baseId
+     * @return
+     * @throws Exception
+     */
+    private ObjectName getObjectName(String baseId) throws Exception {
+        return new ObjectName(
+                JmxReloadMetricsRecorder.JMX_DOMAIN + ":type=" + mBeanType + ",name=" + ObjectName.quote(baseId)
+        );
+    }
+
+
+    /**
+     *
+     * @param baseId
+     * @param mBean
+     */
+    private void register(String baseId, T mBean) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(baseId);
+
+            if (mBeanServer.isRegistered(objectName) == false) {
+                mBeanServer.registerMBean(mBean, objectName);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("couldn't register {} for {} with JMX", mBeanType, baseId, e);
+        }
+    }
+
+
+    /**
+     *
+     * @param baseId
+     */
+    private void unregister(String baseId) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = getObjectName(baseId);
+
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (Exception e) {
+            LOGGER.warn("couldn't unregister {} for {} from JMX", mBeanType, baseId, e);
+        }
+    }
+
+}
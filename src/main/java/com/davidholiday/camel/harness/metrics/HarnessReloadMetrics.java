@@ -0,0 +1,89 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * histogram per reload phase plus success and failure counts for one harnessed routebuilder
+ */
+public class HarnessReloadMetrics implements HarnessReloadMetricsMXBean {
+
+    private final String baseId;
+
+    private final Map<ReloadPhase, LatencyHistogram> phaseHistogramMap = new EnumMap<>(ReloadPhase.class);
+
+    private final LongAdder successCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+
+
+    /**
+     *
+     * @param baseId
+     */
+    public HarnessReloadMetrics(String baseId) {
+        this.baseId = baseId;
+
+        for (ReloadPhase reloadPhase : ReloadPhase.values()) {
+            phaseHistogramMap.put(reloadPhase, new LatencyHistogram());
+        }
+    }
+
+
+    void recordPhase(ReloadPhase reloadPhase, long durationNanos) {
+        phaseHistogramMap.get(reloadPhase).record(durationNanos);
+    }
+
+
+    void recordReload(boolean succeeded) {
+        if (succeeded) {
+            successCount.increment();
+        } else {
+            failureCount.increment();
+        }
+    }
+
+
+    @Override
+    public String getBaseId() { return baseId; }
+
+    @Override
+    public long getSuccessCount() { return successCount.sum(); }
+
+    @Override
+    public long getFailureCount() { return failureCount.sum(); }
+
+
+    @Override
+    public Map<String, LatencySnapshot> getPhaseLatencies() {
+        Map<String, LatencySnapshot> phaseLatencyMap = new LinkedHashMap<>();
+
+        for (Map.Entry<ReloadPhase, LatencyHistogram> entry : phaseHistogramMap.entrySet()) {
+            phaseLatencyMap.put(entry.getKey().name(), entry.getValue().snapshot());
+        }
+
+        return phaseLatencyMap;
+    }
+
+
+    /**
+     *
+     * @param reloadPhase
+     * @return
+     */
+    public LatencySnapshot getPhaseLatency(ReloadPhase reloadPhase) {
+        return phaseHistogramMap.get(reloadPhase).snapshot();
+    }
+
+
+    @Override
+    public void reset() {
+        phaseHistogramMap.values().forEach(LatencyHistogram::reset);
+        successCount.reset();
+        failureCount.reset();
+    }
+
+}
@@ -0,0 +1,25 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+import java.util.Map;
+
+
+/**
+ * reload metrics for one harnessed routebuilder as published over JMX
+ */
+public interface HarnessReloadMetricsMXBean {
+
+    String getBaseId();
+
+    long getSuccessCount();
+
+    long getFailureCount();
+
+    /**
+     * @return ReloadPhase name -> latency summary for that phase
+     */
+    Map<String, LatencySnapshot> getPhaseLatencies();
+
+    void reset();
+
+}
@@ -0,0 +1,128 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * histogram and error count per harnessed route for one harnessed routebuilder. the histogram's count doubles as the
+ * exchange count, so recording an exchange is one histogram record plus, for a failed exchange, one increment
+ */
+public class HarnessRouteMetrics implements HarnessRouteMetricsMXBean {
+
+    private final String baseId;
+
+    private final Map<HarnessedRoute, LatencyHistogram> routeHistogramMap = new EnumMap<>(HarnessedRoute.class);
+
+    private final Map<HarnessedRoute, LongAdder> errorCountMap = new EnumMap<>(HarnessedRoute.class);
+
+
+    /**
+     *
+     * @param baseId
+     */
+    public HarnessRouteMetrics(String baseId) {
+        this.baseId = baseId;
+
+        for (HarnessedRoute harnessedRoute : HarnessedRoute.values()) {
+            routeHistogramMap.put(harnessedRoute, new LatencyHistogram());
+            errorCountMap.put(harnessedRoute, new LongAdder());
+        }
+    }
+
+
+    /**
+     *
+     * @param harnessedRoute
+     * @param durationNanos time from the exchange entering the route to it leaving
+     * @param failed
+     */
+    public void recordExchange(HarnessedRoute harnessedRoute, long durationNanos, boolean failed) {
+        routeHistogramMap.get(harnessedRoute).record(durationNanos);
+
+        if (failed) {
+            errorCountMap.get(harnessedRoute).increment();
+        }
+    }
+
+
+    @Override
+    public String getBaseId() { return baseId; }
+
+
+    @Override
+    public Map<String, LatencySnapshot> getRouteLatencies() {
+        Map<String, LatencySnapshot> routeLatencyMap = new LinkedHashMap<>();
+
+        for (Map.Entry<HarnessedRoute, LatencyHistogram> entry : routeHistogramMap.entrySet()) {
+            routeLatencyMap.put(entry.getKey().name(), entry.getValue().snapshot());
+        }
+
+        return routeLatencyMap;
+    }
+
+
+    @Override
+    public Map<String, Long> getExchangeCounts() {
+        Map<String, Long> exchangeCountMap = new LinkedHashMap<>();
+
+        for (Map.Entry<HarnessedRoute, LatencyHistogram> entry : routeHistogramMap.entrySet()) {
+            exchangeCountMap.put(entry.getKey().name(), entry.getValue().getCount());
+        }
+
+        return exchangeCountMap;
+    }
+
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> errorCounts = new LinkedHashMap<>();
+
+        for (Map.Entry<HarnessedRoute, LongAdder> entry : errorCountMap.entrySet()) {
+            errorCounts.put(entry.getKey().name(), entry.getValue().sum());
+        }
+
+        return errorCounts;
+    }
+
+
+    /**
+     *
+     * @param harnessedRoute
+     * @return
+     */
+    public LatencySnapshot getRouteLatency(HarnessedRoute harnessedRoute) {
+        return routeHistogramMap.get(harnessedRoute).snapshot();
+    }
+
+
+    /**
+     *
+     * @param harnessedRoute
+     * @return
+     */
+    public long getExchangeCount(HarnessedRoute harnessedRoute) {
+        return routeHistogramMap.get(harnessedRoute).getCount();
+    }
+
+
+    /**
+     *
+     * @param harnessedRoute
+     * @return
+     */
+    public long getErrorCount(HarnessedRoute harnessedRoute) {
+        return errorCountMap.get(harnessedRoute).sum();
+    }
+
+
+    @Override
+    public void reset() {
+        routeHistogramMap.values().forEach(LatencyHistogram::reset);
+        errorCountMap.values().forEach(LongAdder::reset);
+    }
+
+}
@@ -0,0 +1,31 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+import java.util.Map;
+
+
+/**
+ * per route exchange metrics for one harnessed routebuilder as published over JMX
+ */
+public interface HarnessRouteMetricsMXBean {
+
+    String getBaseId();
+
+    /**
+     * @return HarnessedRoute name -> latency summary for exchanges through that route
+     */
+    Map<String, LatencySnapshot> getRouteLatencies();
+
+    /**
+     * @return HarnessedRoute name -> how many exchanges have been through that route
+     */
+    Map<String, Long> getExchangeCounts();
+
+    /**
+     * @return HarnessedRoute name -> how many exchanges came out of that route failed, or with a failure handled
+     */
+    Map<String, Long> getErrorCounts();
+
+    void reset();
+
+}
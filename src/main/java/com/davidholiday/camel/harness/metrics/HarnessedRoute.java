@@ -0,0 +1,18 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+/**
+ * the routes every harnessed routebuilder defines. see RouteBuilderHarness
+ */
+public enum HarnessedRoute {
+
+    // FROM_ROUTE_ID - takes messages from the outside world and hands them to the business logic route
+    FROM,
+
+    // BUSINESS_LOGIC_ROUTE_ID
+    BUSINESS_LOGIC,
+
+    // TO_ROUTE_ID - only there for routebuilders that hand the business logic route's output on
+    TO
+
+}
@@ -0,0 +1,55 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+import java.util.Map;
+
+
+/**
+ * keeps a HarnessReloadMetrics per routebuilder base id and registers each one with the platform MBeanServer the
+ * first time the base id is seen, under JMX_DOMAIN:type=ReloadMetrics,name=[base id]. it's unregistered when the
+ * base id is removed - see ShutDownAndRecreateRoutesRunnable.shutdown()
+ */
+public class JmxReloadMetricsRecorder implements ReloadMetricsRecorder {
+
+    public static final String JMX_DOMAIN = "com.davidholiday.camel.harness";
+
+    private final BaseIdMBeanRegistry<HarnessReloadMetrics> harnessReloadMetricsRegistry =
+            new BaseIdMBeanRegistry<>("ReloadMetrics", HarnessReloadMetrics::new);
+
+
+    @Override
+    public void recordPhase(String baseId, ReloadPhase reloadPhase, long durationNanos) {
+        getHarnessReloadMetrics(baseId).recordPhase(reloadPhase, durationNanos);
+    }
+
+
+    @Override
+    public void recordReload(String baseId, boolean succeeded) {
+        getHarnessReloadMetrics(baseId).recordReload(succeeded);
+    }
+
+
+    @Override
+    public void remove(String baseId) {
+        harnessReloadMetricsRegistry.remove(baseId);
+    }
+
+
+    /**
+     * @return base id -> reload metrics for every base id recorded so far
+     */
+    public Map<String, HarnessReloadMetrics> getHarnessReloadMetricsMap() {
+        return harnessReloadMetricsRegistry.asMap();
+    }
+
+
+    /**
+     *
+     * @param baseId
+     * @return
+     */
+    public HarnessReloadMetrics getHarnessReloadMetrics(String baseId) {
+        return harnessReloadMetricsRegistry.get(baseId);
+    }
+
+}
@@ -0,0 +1,140 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * lock-free latency histogram with log-linear buckets, in the spirit of HdrHistogram. every power of two is split into
+ * SUB_BUCKET_COUNT equal-width buckets, so any recorded value lands in a bucket no wider than 1/SUB_BUCKET_COUNT of
+ * its magnitude (~6% relative error) and the whole positive long range fits in under a thousand buckets.
+ *
+ * recording is a handful of bit operations and an atomic increment, cheap enough for the exchange path. reading is
+ * not atomic with respect to concurrent recording - a snapshot taken under load can be off by whatever was recorded
+ * while it was being taken.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+
+    // values below SUB_BUCKET_COUNT get a bucket each, every power of two from there up to 2^62 gets SUB_BUCKET_COUNT
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+
+    /**
+     * @param nanos negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+
+        bucketCounts.incrementAndGet(bucketIndex(value));
+        count.increment();
+        totalNanos.add(value);
+
+        long currentMaxNanos = maxNanos.get();
+        while (value > currentMaxNanos && maxNanos.compareAndSet(currentMaxNanos, value) == false) {
+            currentMaxNanos = maxNanos.get();
+        }
+    }
+
+
+    public long getCount() { return count.sum(); }
+
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket the percentile falls in, 0 if nothing has been recorded
+     */
+    public long getPercentileNanos(double percentile) {
+        long totalCount = count.sum();
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long)Math.ceil(totalCount * percentile / 100.0));
+        long seenCount = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seenCount += bucketCounts.get(i);
+            if (seenCount >= rank) {
+                return Math.min(bucketUpperBound(i), maxNanos.get());
+            }
+        }
+
+        return maxNanos.get();
+    }
+
+
+    /**
+     * @return
+     */
+    public LatencySnapshot snapshot() {
+        long totalCount = count.sum();
+        long meanNanos = totalCount == 0 ? 0 : totalNanos.sum() / totalCount;
+
+        return new LatencySnapshot(
+                totalCount,
+                meanNanos,
+                getPercentileNanos(50),
+                getPercentileNanos(90),
+                getPercentileNanos(99),
+                maxNanos.get()
+        );
+    }
+
+
+    /**
+     * forgets everything recorded so far
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts.set(i, 0);
+        }
+
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+
+
+    /**
+     *
+     * @param value
+     * @return
+     */
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int)value;
+        }
+
+        int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+        int subBucket = (int)(value >>> shift) & SUB_BUCKET_MASK;
+        return ((shift + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+
+    /**
+     *
+     * @param bucketIndex
+     * @return
+     */
+    private static long bucketUpperBound(int bucketIndex) {
+        if (bucketIndex < SUB_BUCKET_COUNT) {
+            return bucketIndex;
+        }
+
+        int shift = (bucketIndex >>> SUB_BUCKET_BITS) - 1;
+        long subBucket = bucketIndex & SUB_BUCKET_MASK;
+        return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+
+}
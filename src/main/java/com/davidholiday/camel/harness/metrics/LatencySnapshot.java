@@ -0,0 +1,85 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+import java.beans.ConstructorProperties;
+
+
+/**
+ * point-in-time summary of a LatencyHistogram. the getters report milliseconds so the values read naturally over JMX,
+ * where this is published as composite data.
+ */
+public class LatencySnapshot {
+
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    private final long count;
+    private final long meanNanos;
+    private final long p50Nanos;
+    private final long p90Nanos;
+    private final long p99Nanos;
+    private final long maxNanos;
+
+
+    /**
+     *
+     * @param count
+     * @param meanNanos
+     * @param p50Nanos
+     * @param p90Nanos
+     * @param p99Nanos
+     * @param maxNanos
+     */
+    public LatencySnapshot(long count, long meanNanos, long p50Nanos, long p90Nanos, long p99Nanos, long maxNanos) {
+        this.count = count;
+        this.meanNanos = meanNanos;
+        this.p50Nanos = p50Nanos;
+        this.p90Nanos = p90Nanos;
+        this.p99Nanos = p99Nanos;
+        this.maxNanos = maxNanos;
+    }
+
+
+    /**
+     * used by JMX to rebuild a snapshot from composite data
+     */
+    @ConstructorProperties({"count", "meanMillis", "p50Millis", "p90Millis", "p99Millis", "maxMillis"})
+    public LatencySnapshot(long count,
+                           double meanMillis,
+                           double p50Millis,
+                           double p90Millis,
+                           double p99Millis,
+                           double maxMillis) {
+
+        this(
+                count,
+                (long)(meanMillis * NANOS_PER_MILLI),
+                (long)(p50Millis * NANOS_PER_MILLI),
+                (long)(p90Millis * NANOS_PER_MILLI),
+                (long)(p99Millis * NANOS_PER_MILLI),
+                (long)(maxMillis * NANOS_PER_MILLI)
+        );
+    }
+
+
+    public long getCount() { return count; }
+
+    public double getMeanMillis() { return meanNanos / NANOS_PER_MILLI; }
+
+    public double getP50Millis() { return p50Nanos / NANOS_PER_MILLI; }
+
+    public double getP90Millis() { return p90Nanos / NANOS_PER_MILLI; }
+
+    public double getP99Millis() { return p99Nanos / NANOS_PER_MILLI; }
+
+    public double getMaxMillis() { return maxNanos / NANOS_PER_MILLI; }
+
+
+    @Override
+    public String toString() {
+        return String.format(
+                "count=%d, mean=%.3fms, p50=%.3fms, p90=%.3fms, p99=%.3fms, max=%.3fms",
+                count, getMeanMillis(), getP50Millis(), getP90Millis(), getP99Millis(), getMaxMillis()
+        );
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * where the reload path reports its timings. hands each measurement to every registered ReloadMetricsRecorder. the
+ * JmxReloadMetricsRecorder is always registered, anything listed with ServiceLoader is registered the first time this
+ * class is used.
+ */
+public class ReloadMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReloadMetrics.class);
+
+    private static final JmxReloadMetricsRecorder JMX_RELOAD_METRICS_RECORDER = new JmxReloadMetricsRecorder();
+
+    private static final List<ReloadMetricsRecorder> RELOAD_METRICS_RECORDER_LIST = new CopyOnWriteArrayList<>();
+
+    static {
+        RELOAD_METRICS_RECORDER_LIST.add(JMX_RELOAD_METRICS_RECORDER);
+
+        for (ReloadMetricsRecorder reloadMetricsRecorder : ServiceLoader.load(ReloadMetricsRecorder.class)) {
+            LOGGER.info("registering reload metrics recorder {}", reloadMetricsRecorder.getClass().getName());
+            RELOAD_METRICS_RECORDER_LIST.add(reloadMetricsRecorder);
+        }
+    }
+
+
+    /**
+     *
+     * @param reloadMetricsRecorder
+     */
+    public static void addRecorder(ReloadMetricsRecorder reloadMetricsRecorder) {
+        RELOAD_METRICS_RECORDER_LIST.add(reloadMetricsRecorder);
+    }
+
+
+    /**
+     *
+     * @param reloadMetricsRecorder
+     */
+    public static void removeRecorder(ReloadMetricsRecorder reloadMetricsRecorder) {
+        RELOAD_METRICS_RECORDER_LIST.remove(reloadMetricsRecorder);
+    }
+
+
+    /**
+     * @return the built in recorder that publishes reload metrics over JMX
+     */
+    public static JmxReloadMetricsRecorder getJmxRecorder() { return JMX_RELOAD_METRICS_RECORDER; }
+
+
+    /**
+     *
+     * @param baseId
+     * @param reloadPhase
+     * @param durationNanos
+     */
+    public static void recordPhase(String baseId, ReloadPhase reloadPhase, long durationNanos) {
+        for (ReloadMetricsRecorder reloadMetricsRecorder : RELOAD_METRICS_RECORDER_LIST) {
+            try {
+                reloadMetricsRecorder.recordPhase(baseId, reloadPhase, durationNanos);
+            } catch (RuntimeException e) {
+                LOGGER.warn("reload metrics recorder {} failed to record phase", reloadMetricsRecorder, e);
+            }
+        }
+    }
+
+
+    /**
+     *
+     * @param baseId
+     * @param succeeded
+     */
+    public static void recordReload(String baseId, boolean succeeded) {
+        for (ReloadMetricsRecorder reloadMetricsRecorder : RELOAD_METRICS_RECORDER_LIST) {
+            try {
+                reloadMetricsRecorder.recordReload(baseId, succeeded);
+            } catch (RuntimeException e) {
+                LOGGER.warn("reload metrics recorder {} failed to record reload", reloadMetricsRecorder, e);
+            }
+        }
+    }
+
+
+    /**
+     * tells every recorder the routebuilder is gone
+     *
+     * @param baseId
+     */
+    public static void remove(String baseId) {
+        for (ReloadMetricsRecorder reloadMetricsRecorder : RELOAD_METRICS_RECORDER_LIST) {
+            try {
+                reloadMetricsRecorder.remove(baseId);
+            } catch (RuntimeException e) {
+                LOGGER.warn("reload metrics recorder {} failed to remove {}", reloadMetricsRecorder, baseId, e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+/**
+ * SPI for shipping reload metrics somewhere. implementations are handed every measurement ReloadMetrics receives and
+ * must be thread safe and cheap - they're called inline on the reload path.
+ *
+ * implementations can be added with ReloadMetrics.addRecorder() or picked up automatically by listing them in
+ * META-INF/services/com.davidholiday.camel.harness.metrics.ReloadMetricsRecorder
+ */
+public interface ReloadMetricsRecorder {
+
+    /**
+     *
+     * @param baseId base id of the routebuilder being reloaded
+     * @param reloadPhase
+     * @param durationNanos
+     */
+    void recordPhase(String baseId, ReloadPhase reloadPhase, long durationNanos);
+
+
+    /**
+     *
+     * @param baseId base id of the routebuilder being reloaded
+     * @param succeeded whether the reload as a whole succeeded
+     */
+    void recordReload(String baseId, boolean succeeded);
+
+
+    /**
+     * called when the routebuilder is gone for good, so whatever was kept for it can be let go
+     *
+     * @param baseId
+     */
+    default void remove(String baseId) {}
+
+}
@@ -0,0 +1,31 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+/**
+ * the timed phases of a config driven reload of a harnessed routebuilder's routes
+ */
+public enum ReloadPhase {
+
+    // first property change event of a burst to the reload runnable being handed to the ReloadDispatcher
+    EVENT_TO_DISPATCH,
+
+    // creating the new RouteBuilderHarness instance
+    BUILDER_CONSTRUCTION,
+
+    // waiting on in-flight exchanges when the reload runnable is in drain mode
+    DRAIN,
+
+    // stopping one route
+    ROUTE_STOP,
+
+    // removing one stopped route
+    ROUTE_REMOVE,
+
+    // adding the new routebuilder's routes to the camel context
+    ADD_ROUTES,
+
+    // the first exchange through a lazily started routebuilder's from-route starting its other routes. see
+    // RouteBuilderHarness.isLazyStart()
+    LAZY_START
+
+}
@@ -0,0 +1,49 @@
+package com.davidholiday.camel.harness.metrics;
+
+
+import java.util.Map;
+
+
+/**
+ * where harnessed routes report their exchanges. RouteBuilderHarness instruments the from, business logic and to
+ * routes of every routebuilder, so nothing has to be wired up by hand. keeps a HarnessRouteMetrics per routebuilder
+ * base id, published under JMX_DOMAIN:type=RouteMetrics,name=[base id] from the first exchange until the
+ * routebuilder's routes are removed for good
+ *
+ * metrics are kept by base id and HarnessedRoute rather than route id, so they carry on across route reloads and
+ * swaps.
+ */
+public class RouteMetrics {
+
+    private static final BaseIdMBeanRegistry<HarnessRouteMetrics> HARNESS_ROUTE_METRICS_REGISTRY =
+            new BaseIdMBeanRegistry<>("RouteMetrics", HarnessRouteMetrics::new);
+
+
+    /**
+     * @return base id -> route metrics for every base id recorded so far
+     */
+    public static Map<String, HarnessRouteMetrics> getHarnessRouteMetricsMap() {
+        return HARNESS_ROUTE_METRICS_REGISTRY.asMap();
+    }
+
+
+    /**
+     *
+     * @param baseId
+     * @return
+     */
+    public static HarnessRouteMetrics getHarnessRouteMetrics(String baseId) {
+        return HARNESS_ROUTE_METRICS_REGISTRY.get(baseId);
+    }
+
+
+    /**
+     * drops the base id's route metrics and takes them off JMX
+     *
+     * @param baseId
+     */
+    public static void remove(String baseId) {
+        HARNESS_ROUTE_METRICS_REGISTRY.remove(baseId);
+    }
+
+}
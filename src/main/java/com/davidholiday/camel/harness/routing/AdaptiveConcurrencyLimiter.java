@@ -0,0 +1,247 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import com.davidholiday.camel.harness.metrics.BaseIdMBeanRegistry;
+import com.davidholiday.camel.harness.metrics.LatencyHistogram;
+import com.davidholiday.camel.harness.metrics.LatencySnapshot;
+
+import com.netflix.config.DynamicDoubleProperty;
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicLongProperty;
+import com.netflix.config.DynamicPropertyFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * caps how many exchanges a harnessed routebuilder's business logic route has in flight, and moves the cap with the
+ * latency and failures it sees - additive increase, multiplicative decrease. an exchange that fails, or takes longer
+ * than the latency threshold, cuts the limit by the backoff ratio - a backend that's erroring fast is as overloaded as
+ * one that's answering slowly. one that doesn't raises it by one, but only while at least half the limit is in use, so
+ * a quiet route doesn't grow a limit it's never tested. exchanges over the limit are turned away
+ * straight away with a ConcurrencyLimitExceededException rather than queued.
+ *
+ * read from archaius:
+ *
+ *   [baseId].concurrencyLimit.initialLimit - only read when the limiter is created
+ *   [baseId].concurrencyLimit.minLimit
+ *   [baseId].concurrencyLimit.maxLimit
+ *   [baseId].concurrencyLimit.latencyThresholdMillis
+ *   [baseId].concurrencyLimit.backoffRatio
+ *
+ * there's one limiter per base id and it outlives the routebuilder instances that use it, so the limit it has learned
+ * survives the routes being recreated. it goes when the routebuilder's routes are removed for good - see
+ * ShutDownAndRecreateRoutesRunnable.removeRoutes(). each one is published over JMX under
+ * JMX_DOMAIN:type=ConcurrencyLimiter,name=[base id] while it's around
+ */
+public class AdaptiveConcurrencyLimiter implements AdaptiveConcurrencyLimiterMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    public static final String PROPERTY_PREFIX = ".concurrencyLimit.";
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MIN_LIMIT = 1;
+    public static final int DEFAULT_MAX_LIMIT = 1000;
+    public static final long DEFAULT_LATENCY_THRESHOLD_MILLIS = 1000;
+    public static final double DEFAULT_BACKOFF_RATIO = 0.9;
+
+    // base id -> its limiter
+    private static final BaseIdMBeanRegistry<AdaptiveConcurrencyLimiter> LIMITER_REGISTRY =
+            new BaseIdMBeanRegistry<>("ConcurrencyLimiter", AdaptiveConcurrencyLimiter::new);
+
+    private final String baseId;
+
+    private final DynamicIntProperty minLimitProperty;
+    private final DynamicIntProperty maxLimitProperty;
+    private final DynamicLongProperty latencyThresholdMillisProperty;
+    private final DynamicDoubleProperty backoffRatioProperty;
+
+    // the limit as a double so repeated small increases and decreases add up. held as its bits so it can be CASed
+    private final AtomicLong limitBits;
+
+    private final AtomicInteger inflightCount = new AtomicInteger();
+
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder limitChangeCount = new LongAdder();
+
+    private final LatencyHistogram queueingDelayHistogram = new LatencyHistogram();
+    private final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+
+    /**
+     *
+     * @param baseId
+     */
+    private AdaptiveConcurrencyLimiter(String baseId) {
+        this.baseId = baseId;
+
+        DynamicPropertyFactory dynamicPropertyFactory = DynamicPropertyFactory.getInstance();
+        String propertyPrefix = baseId + PROPERTY_PREFIX;
+
+        minLimitProperty = dynamicPropertyFactory.getIntProperty(propertyPrefix + "minLimit", DEFAULT_MIN_LIMIT);
+        maxLimitProperty = dynamicPropertyFactory.getIntProperty(propertyPrefix + "maxLimit", DEFAULT_MAX_LIMIT);
+
+        latencyThresholdMillisProperty = dynamicPropertyFactory.getLongProperty(
+                propertyPrefix + "latencyThresholdMillis", DEFAULT_LATENCY_THRESHOLD_MILLIS
+        );
+
+        backoffRatioProperty =
+                dynamicPropertyFactory.getDoubleProperty(propertyPrefix + "backoffRatio", DEFAULT_BACKOFF_RATIO);
+
+        int initialLimit =
+                dynamicPropertyFactory.getIntProperty(propertyPrefix + "initialLimit", DEFAULT_INITIAL_LIMIT).get();
+
+        limitBits = new AtomicLong(Double.doubleToLongBits(clamp(initialLimit)));
+    }
+
+
+    /**
+     *
+     * @param baseId
+     * @return the base id's limiter, starting from the initial limit if it hasn't got one yet
+     */
+    public static AdaptiveConcurrencyLimiter getAdaptiveConcurrencyLimiter(String baseId) {
+        return LIMITER_REGISTRY.get(baseId);
+    }
+
+
+    /**
+     * forgets the limit the base id has learned and takes its limiter off JMX. exchanges still holding the old limiter
+     * release against it as normal
+     *
+     * @param baseId
+     */
+    public static void remove(String baseId) {
+        LIMITER_REGISTRY.remove(baseId);
+    }
+
+
+    /**
+     * lets an exchange in if there's room under the limit. every exchange let in has to be released
+     *
+     * @return false if the exchange should be turned away
+     */
+    public boolean tryAcquire() {
+        int limit = getLimit();
+
+        while (true) {
+            int currentInflightCount = inflightCount.get();
+
+            if (currentInflightCount >= limit) {
+                rejectedCount.increment();
+                return false;
+            }
+
+            if (inflightCount.compareAndSet(currentInflightCount, currentInflightCount + 1)) {
+                return true;
+            }
+        }
+    }
+
+
+    /**
+     * tells the limiter an exchange it let in is done and adjusts the limit from how long it took and whether it failed
+     *
+     * @param latencyNanos time since the exchange was let in
+     * @param failed whether the exchange came back with an exception
+     */
+    public void release(long latencyNanos, boolean failed) {
+        int inflightCountBeforeRelease = inflightCount.getAndDecrement();
+        latencyHistogram.record(latencyNanos);
+
+        long latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillisProperty.get());
+
+        while (true) {
+            long currentLimitBits = limitBits.get();
+            double currentLimit = clamp(Double.longBitsToDouble(currentLimitBits));
+
+            double newLimit;
+            if (failed || latencyNanos > latencyThresholdNanos) {
+                newLimit = clamp(currentLimit * backoffRatioProperty.get());
+            } else if (inflightCountBeforeRelease * 2 >= currentLimit) {
+                newLimit = clamp(currentLimit + 1);
+            } else {
+                return;
+            }
+
+            if (newLimit == currentLimit) {
+                return;
+            }
+
+            if (limitBits.compareAndSet(currentLimitBits, Double.doubleToLongBits(newLimit))) {
+                if ((int)newLimit != (int)currentLimit) {
+                    limitChangeCount.increment();
+                    LOGGER.debug("{} concurrency limit {} -> {}", baseId, (int)currentLimit, (int)newLimit);
+                }
+
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * @param queueingDelayNanos time between the exchange being let in and the business logic starting on it
+     */
+    public void recordQueueingDelay(long queueingDelayNanos) {
+        queueingDelayHistogram.record(queueingDelayNanos);
+    }
+
+
+    @Override
+    public String getBaseId() { return baseId; }
+
+    /**
+     * @return the limit, kept within the current min and max limit so changes to those apply straight away
+     */
+    @Override
+    public int getLimit() { return (int)clamp(Double.longBitsToDouble(limitBits.get())); }
+
+    @Override
+    public int getInflightCount() { return inflightCount.get(); }
+
+    @Override
+    public long getRejectedCount() { return rejectedCount.sum(); }
+
+    @Override
+    public long getLimitChangeCount() { return limitChangeCount.sum(); }
+
+    @Override
+    public LatencySnapshot getQueueingDelay() { return queueingDelayHistogram.snapshot(); }
+
+    @Override
+    public LatencySnapshot getLatency() { return latencyHistogram.snapshot(); }
+
+
+    /**
+     * clears the counts and histograms. the limit and what's in flight are left alone
+     */
+    @Override
+    public void reset() {
+        rejectedCount.reset();
+        limitChangeCount.reset();
+        queueingDelayHistogram.reset();
+        latencyHistogram.reset();
+    }
+
+
+    /**
+     *
+     * @param limit
+     * @return the limit kept within the min and max limit. never less than 1
+     */
+    private double clamp(double limit) {
+        int minLimit = Math.max(1, minLimitProperty.get());
+        int maxLimit = Math.max(minLimit, maxLimitProperty.get());
+
+        return Math.min(maxLimit, Math.max(minLimit, limit));
+    }
+
+}
@@ -0,0 +1,34 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import com.davidholiday.camel.harness.metrics.LatencySnapshot;
+
+
+/**
+ * concurrency limiter state for one harnessed routebuilder as published over JMX
+ */
+public interface AdaptiveConcurrencyLimiterMXBean {
+
+    String getBaseId();
+
+    int getLimit();
+
+    int getInflightCount();
+
+    long getRejectedCount();
+
+    long getLimitChangeCount();
+
+    /**
+     * @return time from the limiter letting an exchange in to the business logic route starting on it
+     */
+    LatencySnapshot getQueueingDelay();
+
+    /**
+     * @return time from the limiter letting an exchange in to the exchange being done
+     */
+    LatencySnapshot getLatency();
+
+    void reset();
+
+}
@@ -0,0 +1,59 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import org.apache.camel.Processor;
+import org.apache.camel.model.OutputDefinition;
+import org.apache.camel.spi.RouteContext;
+
+import java.util.concurrent.ExecutorService;
+
+
+/**
+ * model for a BatchingProcessor - runs the processors it wraps once per batch rather than once per exchange. only
+ * ever built by RouteBuilderHarness, which wraps the business logic route in one
+ */
+class BatchingDefinition extends OutputDefinition<BatchingDefinition> {
+
+    private final String baseId;
+
+    private final ExecutorService routeExecutorService;
+    private final String threadPoolProfileId;
+
+
+    /**
+     *
+     * @param baseId what the batch size and timeout properties are keyed by
+     * @param routeExecutorService what timed out batches run on. null to make a pool from threadPoolProfileId
+     * @param threadPoolProfileId the camel thread pool profile to make that pool from. null for the context's default
+     */
+    BatchingDefinition(String baseId, ExecutorService routeExecutorService, String threadPoolProfileId) {
+        this.baseId = baseId;
+        this.routeExecutorService = routeExecutorService;
+        this.threadPoolProfileId = threadPoolProfileId;
+    }
+
+
+    @Override
+    public Processor createProcessor(RouteContext routeContext) throws Exception {
+        return new BatchingProcessor(
+                routeContext.getCamelContext(),
+                baseId,
+                createChildProcessor(routeContext, true),
+                routeExecutorService,
+                threadPoolProfileId
+        );
+    }
+
+
+    @Override
+    public String getShortName() { return "batching"; }
+
+
+    @Override
+    public String getLabel() { return "batching[" + baseId + "]"; }
+
+
+    @Override
+    public String toString() { return "Batching[" + getOutputs() + "]"; }
+
+}
@@ -0,0 +1,361 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicLongProperty;
+import com.netflix.config.DynamicPropertyFactory;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.spi.ExecutorServiceManager;
+import org.apache.camel.spi.UnitOfWork;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.AsyncProcessorConverterHelper;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.apache.camel.util.ExchangeHelper;
+import org.apache.camel.util.ServiceHelper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * collects the exchanges passing through a harnessed routebuilder's business logic route into batches and runs each
+ * batch through the route's processors as one exchange whose body is the list of the collected bodies. a batch is
+ * flushed when it reaches the batch size or when the timeout has passed since its first exchange arrived, whichever
+ * comes first. both are read from archaius for every batch, so changes apply to the next one:
+ *
+ *   [baseId].batchingStage.batchSize
+ *   [baseId].batchingStage.timeoutMillis
+ *
+ * the processors have to leave a list with one reply per body, in the same order, in the batch exchange's body -
+ * leaving the list of bodies alone counts. each exchange in the batch gets its own reply back as its body. if the batch
+ * fails, or what comes back isn't a list of the right size, every exchange in it fails with the same exception.
+ *
+ * a full batch runs on the thread that filled it. a batch that times out is handed to the route's executor - the
+ * concurrency stage's pool when the routebuilder has one - so the timer thread is only ever scheduling flushes, never
+ * running them. the batch exchange is a correlated copy of the batch's first exchange with a unit of work of its own,
+ * so on-completions and the like registered while it's processed run once the batch is done.
+ *
+ * exchanges only share a batch if they arrive while the batch is open, so a route fed by a single consumer thread
+ * that waits on each reply will flush every batch on the timeout with one exchange in it. give the routebuilder a
+ * concurrency stage or a consumer with several threads.
+ */
+public class BatchingProcessor extends ServiceSupport implements AsyncProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingProcessor.class);
+
+    public static final String BATCH_SIZE_PROPERTY_SUFFIX = ".batchingStage.batchSize";
+    public static final String TIMEOUT_MILLIS_PROPERTY_SUFFIX = ".batchingStage.timeoutMillis";
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 100;
+
+    // set on the batch exchange
+    public static final String BATCH_SIZE_PROPERTY = "HarnessBatchSize";
+
+    private final CamelContext camelContext;
+
+    private final String baseId;
+
+    private final AsyncProcessor batchProcessor;
+
+    private final DynamicIntProperty batchSizeProperty;
+    private final DynamicLongProperty timeoutMillisProperty;
+
+    // the route's executor, if it has one of its own. otherwise flushExecutorService is made from threadPoolProfileId
+    private final ExecutorService routeExecutorService;
+    private final String threadPoolProfileId;
+
+    // the exchanges collected so far and the flush that's scheduled for them. guarded by this
+    private List<PendingExchange> pendingExchangeList = new ArrayList<>();
+    private ScheduledFuture<?> timeoutFuture;
+
+    // schedules flushes for batches that time out, and what runs them. both created on start so stopped routes don't
+    // hold on to threads. timeoutExecutorService is guarded by this and null whenever the processor isn't started
+    private ScheduledExecutorService timeoutExecutorService;
+    private ExecutorService flushExecutorService;
+
+
+    /**
+     *
+     * @param camelContext
+     * @param baseId what the batch size and timeout properties are keyed by
+     * @param batchProcessor runs each batch
+     * @param routeExecutorService what timed out batches run on. null to make a pool from threadPoolProfileId
+     * @param threadPoolProfileId the camel thread pool profile to make that pool from. null for the context's default
+     */
+    BatchingProcessor(CamelContext camelContext,
+                      String baseId,
+                      Processor batchProcessor,
+                      ExecutorService routeExecutorService,
+                      String threadPoolProfileId) {
+
+        this.camelContext = camelContext;
+        this.baseId = baseId;
+        this.batchProcessor = AsyncProcessorConverterHelper.convert(batchProcessor);
+        this.routeExecutorService = routeExecutorService;
+        this.threadPoolProfileId = threadPoolProfileId;
+
+        DynamicPropertyFactory dynamicPropertyFactory = DynamicPropertyFactory.getInstance();
+        batchSizeProperty =
+                dynamicPropertyFactory.getIntProperty(baseId + BATCH_SIZE_PROPERTY_SUFFIX, DEFAULT_BATCH_SIZE);
+        timeoutMillisProperty =
+                dynamicPropertyFactory.getLongProperty(baseId + TIMEOUT_MILLIS_PROPERTY_SUFFIX, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+
+    /**
+     * adds the exchange to the open batch. the callback is called once the batch the exchange ended up in is done. an
+     * exchange that arrives while the processor isn't started is failed straight away
+     *
+     * @param exchange
+     * @param callback
+     * @return
+     */
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        List<PendingExchange> batch = null;
+
+        synchronized (this) {
+            if (timeoutExecutorService == null) {
+                exchange.setException(new RejectedExecutionException(this + " isn't started"));
+                callback.done(true);
+                return true;
+            }
+
+            pendingExchangeList.add(new PendingExchange(exchange, callback));
+
+            if (pendingExchangeList.size() >= Math.max(1, batchSizeProperty.get())) {
+                batch = takeBatch();
+            } else if (pendingExchangeList.size() == 1) {
+                timeoutFuture = timeoutExecutorService.schedule(
+                        this::handOffFlush, Math.max(0, timeoutMillisProperty.get()), TimeUnit.MILLISECONDS
+                );
+            }
+        }
+
+        if (batch != null) {
+            runBatch(batch);
+        }
+
+        return false;
+    }
+
+
+    @Override
+    protected void doStart() throws Exception {
+        ServiceHelper.startService(batchProcessor);
+
+        ExecutorServiceManager executorServiceManager = camelContext.getExecutorServiceManager();
+        flushExecutorService = routeExecutorService != null
+                ? routeExecutorService
+                : executorServiceManager.newThreadPool(
+                        this,
+                        baseId + "BatchFlush",
+                        threadPoolProfileId == null
+                                ? executorServiceManager.getDefaultThreadPoolProfile().getId()
+                                : threadPoolProfileId
+                  );
+
+        synchronized (this) {
+            timeoutExecutorService =
+                    executorServiceManager.newSingleThreadScheduledExecutor(this, baseId + "BatchTimeout");
+        }
+    }
+
+
+    /**
+     * runs whatever's been collected before stopping, so no caller is left waiting on a batch that'll never flush
+     *
+     * @throws Exception
+     */
+    @Override
+    protected void doStop() throws Exception {
+        List<PendingExchange> batch;
+        ScheduledExecutorService stoppedTimeoutExecutorService;
+
+        synchronized (this) {
+            batch = takeBatch();
+            stoppedTimeoutExecutorService = timeoutExecutorService;
+            timeoutExecutorService = null;
+        }
+
+        if (batch.isEmpty() == false) {
+            runBatch(batch);
+        }
+
+        ExecutorServiceManager executorServiceManager = camelContext.getExecutorServiceManager();
+        if (stoppedTimeoutExecutorService != null) {
+            executorServiceManager.shutdown(stoppedTimeoutExecutorService);
+        }
+
+        // the route's own executor belongs to the route
+        if (flushExecutorService != null && flushExecutorService != routeExecutorService) {
+            executorServiceManager.shutdown(flushExecutorService);
+        }
+
+        flushExecutorService = null;
+        ServiceHelper.stopService(batchProcessor);
+    }
+
+
+    @Override
+    public String toString() { return "BatchingProcessor[" + baseId + "]"; }
+
+
+    /**
+     * takes the open batch, if there is one, and runs it on flushExecutorService. runs on the timer thread
+     */
+    private void handOffFlush() {
+        List<PendingExchange> batch;
+        synchronized (this) {
+            batch = takeBatch();
+        }
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            flushExecutorService.execute(() -> runBatch(batch));
+        } catch (RejectedExecutionException e) {
+            // the callers are waiting on this batch whatever happens, so it's run here rather than dropped
+            LOGGER.warn("{} couldn't hand a timed out batch of {} off - running it on the timer thread",
+                        baseId, batch.size());
+
+            runBatch(batch);
+        }
+    }
+
+
+    /**
+     * guarded by this
+     *
+     * @return the open batch. a new one is opened in its place
+     */
+    private List<PendingExchange> takeBatch() {
+        if (timeoutFuture != null) {
+            timeoutFuture.cancel(false);
+            timeoutFuture = null;
+        }
+
+        List<PendingExchange> batch = pendingExchangeList;
+        pendingExchangeList = new ArrayList<>();
+        return batch;
+    }
+
+
+    /**
+     *
+     * @param batch
+     */
+    private void runBatch(List<PendingExchange> batch) {
+        List<Object> bodyList = new ArrayList<>(batch.size());
+        for (PendingExchange pendingExchange : batch) {
+            bodyList.add(pendingExchange.exchange.getIn().getBody());
+        }
+
+        // the copy has no unit of work and none of the first exchange's on-completions, so it gets a unit of work of
+        // its own that's done when the batch is
+        Exchange batchExchange = ExchangeHelper.createCorrelatedCopy(batch.get(0).exchange, false);
+        batchExchange.getIn().setBody(bodyList);
+        batchExchange.setProperty(BATCH_SIZE_PROPERTY, batch.size());
+
+        LOGGER.debug("{} running a batch of {}", baseId, batch.size());
+
+        try {
+            UnitOfWork unitOfWork = camelContext.getUnitOfWorkFactory().createUnitOfWork(batchExchange);
+            batchExchange.setUnitOfWork(unitOfWork);
+            unitOfWork.start();
+
+            batchProcessor.process(batchExchange, doneSync -> completeBatch(batch, batchExchange));
+        } catch (Throwable t) {
+            batchExchange.setException(t);
+            completeBatch(batch, batchExchange);
+        }
+    }
+
+
+    /**
+     * finishes the batch exchange's unit of work, then hands each exchange in the batch its reply, or the batch's
+     * exception
+     *
+     * @param batch
+     * @param batchExchange
+     */
+    private static void completeBatch(List<PendingExchange> batch, Exchange batchExchange) {
+        UnitOfWork unitOfWork = batchExchange.getUnitOfWork();
+        if (unitOfWork != null) {
+            try {
+                unitOfWork.done(batchExchange);
+                unitOfWork.stop();
+            } catch (Exception e) {
+                LOGGER.warn("couldn't finish the unit of work of batch exchange {}", batchExchange.getExchangeId(), e);
+            }
+
+            batchExchange.setUnitOfWork(null);
+        }
+
+        Exception exception = batchExchange.getException();
+
+        Message resultMessage = batchExchange.hasOut() ? batchExchange.getOut() : batchExchange.getIn();
+        Object resultBody = resultMessage.getBody();
+
+        if (exception == null
+                && (resultBody instanceof List == false || ((List<?>)resultBody).size() != batch.size())) {
+
+            exception = new IllegalStateException(
+                    "a batch of " + batch.size() + " needs a list of " + batch.size() + " replies back, got "
+                            + (resultBody == null ? "null" : resultBody.getClass().getName())
+            );
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            PendingExchange pendingExchange = batch.get(i);
+
+            if (exception == null) {
+                pendingExchange.exchange.getIn().setBody(((List<?>)resultBody).get(i));
+            } else {
+                pendingExchange.exchange.setException(exception);
+            }
+
+            pendingExchange.callback.done(false);
+        }
+    }
+
+
+    /**
+     * an exchange waiting on its batch, and how to tell its caller the batch is done
+     */
+    private static final class PendingExchange {
+
+        private final Exchange exchange;
+        private final AsyncCallback callback;
+
+        private PendingExchange(Exchange exchange, AsyncCallback callback) {
+            this.exchange = exchange;
+            this.callback = callback;
+        }
+
+    }
+
+}
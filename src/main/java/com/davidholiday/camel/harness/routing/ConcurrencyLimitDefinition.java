@@ -0,0 +1,48 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import org.apache.camel.Processor;
+import org.apache.camel.model.OutputDefinition;
+import org.apache.camel.spi.RouteContext;
+
+
+/**
+ * model for a ConcurrencyLimitProcessor - only lets as many exchanges into the processors it wraps at once as the
+ * base id's AdaptiveConcurrencyLimiter allows. only ever built by RouteBuilderHarness, which wraps the business logic
+ * route in one
+ */
+class ConcurrencyLimitDefinition extends OutputDefinition<ConcurrencyLimitDefinition> {
+
+    private final String baseId;
+
+
+    /**
+     *
+     * @param baseId which limiter to use
+     */
+    ConcurrencyLimitDefinition(String baseId) {
+        this.baseId = baseId;
+    }
+
+
+    @Override
+    public Processor createProcessor(RouteContext routeContext) throws Exception {
+        return new ConcurrencyLimitProcessor(
+                AdaptiveConcurrencyLimiter.getAdaptiveConcurrencyLimiter(baseId),
+                createChildProcessor(routeContext, true)
+        );
+    }
+
+
+    @Override
+    public String getShortName() { return "concurrencyLimit"; }
+
+
+    @Override
+    public String getLabel() { return "concurrencyLimit[" + baseId + "]"; }
+
+
+    @Override
+    public String toString() { return "ConcurrencyLimit[" + getOutputs() + "]"; }
+
+}
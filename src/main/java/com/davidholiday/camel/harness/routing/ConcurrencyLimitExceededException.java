@@ -0,0 +1,36 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import java.util.concurrent.RejectedExecutionException;
+
+
+/**
+ * set on an exchange an AdaptiveConcurrencyLimiter turned away because its routebuilder already had as many exchanges
+ * in flight as its limit allows. nothing was done with the exchange, so it's safe to retry somewhere else or later
+ */
+public class ConcurrencyLimitExceededException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String baseId;
+
+    private final int limit;
+
+
+    /**
+     *
+     * @param baseId
+     * @param limit the limit at the time the exchange was turned away
+     */
+    public ConcurrencyLimitExceededException(String baseId, int limit) {
+        super(baseId + " already has " + limit + " exchange(s) in flight");
+        this.baseId = baseId;
+        this.limit = limit;
+    }
+
+
+    public String getBaseId() { return baseId; }
+
+    public int getLimit() { return limit; }
+
+}
@@ -0,0 +1,106 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.AsyncProcessorConverterHelper;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.apache.camel.util.ServiceHelper;
+
+
+/**
+ * runs the processors it wraps for the exchanges its AdaptiveConcurrencyLimiter lets in and fails the rest with a
+ * ConcurrencyLimitExceededException without running anything. the limiter is told how long each exchange it let in
+ * took and whether it failed
+ */
+class ConcurrencyLimitProcessor extends ServiceSupport implements AsyncProcessor {
+
+    // when the limiter let the exchange in, in System.nanoTime() terms
+    static final String ADMITTED_NANOS_PROPERTY = "HarnessConcurrencyLimitAdmittedNanos";
+
+    private final AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter;
+
+    private final AsyncProcessor limitedProcessor;
+
+
+    /**
+     *
+     * @param adaptiveConcurrencyLimiter
+     * @param limitedProcessor
+     */
+    ConcurrencyLimitProcessor(AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter, Processor limitedProcessor) {
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+        this.limitedProcessor = AsyncProcessorConverterHelper.convert(limitedProcessor);
+    }
+
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        if (adaptiveConcurrencyLimiter.tryAcquire() == false) {
+            exchange.setException(new ConcurrencyLimitExceededException(
+                    adaptiveConcurrencyLimiter.getBaseId(), adaptiveConcurrencyLimiter.getLimit()
+            ));
+
+            callback.done(true);
+            return true;
+        }
+
+        long admittedNanos = System.nanoTime();
+        exchange.setProperty(ADMITTED_NANOS_PROPERTY, admittedNanos);
+
+        try {
+            return limitedProcessor.process(exchange, doneSync -> {
+                adaptiveConcurrencyLimiter.release(System.nanoTime() - admittedNanos, exchange.isFailed());
+                callback.done(doneSync);
+            });
+        } catch (Throwable t) {
+            adaptiveConcurrencyLimiter.release(System.nanoTime() - admittedNanos, true);
+            exchange.setException(t);
+            callback.done(true);
+            return true;
+        }
+    }
+
+
+    /**
+     * goes where the business logic starts, past any hand-off to another thread, to record how long exchanges wait
+     * between being let in and being worked on
+     *
+     * @param adaptiveConcurrencyLimiter
+     * @return
+     */
+    static Processor newQueueingDelayRecorder(AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter) {
+        return exchange -> {
+            Long admittedNanos = exchange.getProperty(ADMITTED_NANOS_PROPERTY, Long.class);
+            if (admittedNanos != null) {
+                adaptiveConcurrencyLimiter.recordQueueingDelay(System.nanoTime() - admittedNanos);
+            }
+        };
+    }
+
+
+    @Override
+    protected void doStart() throws Exception {
+        ServiceHelper.startService(limitedProcessor);
+    }
+
+
+    @Override
+    protected void doStop() throws Exception {
+        ServiceHelper.stopService(limitedProcessor);
+    }
+
+
+    @Override
+    public String toString() { return "ConcurrencyLimitProcessor[" + adaptiveConcurrencyLimiter.getBaseId() + "]"; }
+
+}
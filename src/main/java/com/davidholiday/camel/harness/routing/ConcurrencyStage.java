@@ -0,0 +1,191 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicPropertyFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * bounded thread pool that sits between a harnessed routebuilder's from-route and its business logic route, so the
+ * business logic doesn't run on the thread that consumed the message. pool and queue size are read from archaius:
+ *
+ *   [baseId].concurrencyStage.poolSize
+ *   [baseId].concurrencyStage.queueSize
+ *
+ * and applied to the running pool when they change - the routes don't need cycling. there's one stage per base id
+ * and it outlives the routebuilder instances that use it, so recreating routes doesn't leak pools.
+ *
+ * when the pool and queue are both full the exchange runs on the thread that delivered it, which slows the from-route
+ * down rather than failing the exchange.
+ */
+public class ConcurrencyStage {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConcurrencyStage.class);
+
+    public static final String POOL_SIZE_PROPERTY_SUFFIX = ".concurrencyStage.poolSize";
+    public static final String QUEUE_SIZE_PROPERTY_SUFFIX = ".concurrencyStage.queueSize";
+
+    public static final int DEFAULT_POOL_SIZE = 10;
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    // base id -> its stage
+    private static final ConcurrentMap<String, ConcurrencyStage> CONCURRENCY_STAGE_MAP = new ConcurrentHashMap<>();
+
+    private final String baseId;
+
+    private final DynamicIntProperty poolSizeProperty;
+    private final DynamicIntProperty queueSizeProperty;
+
+    private final ResizableBlockingQueue workQueue = new ResizableBlockingQueue();
+
+    private final ThreadPoolExecutor threadPoolExecutor;
+
+
+    /**
+     *
+     * @param baseId
+     */
+    private ConcurrencyStage(String baseId) {
+        this.baseId = baseId;
+
+        DynamicPropertyFactory dynamicPropertyFactory = DynamicPropertyFactory.getInstance();
+        poolSizeProperty =
+                dynamicPropertyFactory.getIntProperty(baseId + POOL_SIZE_PROPERTY_SUFFIX, DEFAULT_POOL_SIZE);
+        queueSizeProperty =
+                dynamicPropertyFactory.getIntProperty(baseId + QUEUE_SIZE_PROPERTY_SUFFIX, DEFAULT_QUEUE_SIZE);
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        threadPoolExecutor = new ThreadPoolExecutor(
+                1,
+                1,
+                60,
+                TimeUnit.SECONDS,
+                workQueue,
+                runnable -> {
+                    Thread thread = new Thread(
+                            runnable, baseId + "-concurrencyStage-" + threadCounter.incrementAndGet()
+                    );
+
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // camel won't take a rejected policy alongside an executor it didn't create, so the pool has its own
+                (runnable, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("concurrency stage for " + baseId + " is shut down");
+                    }
+
+                    runnable.run();
+                }
+        );
+
+        resize();
+        poolSizeProperty.addCallback(this::resize);
+        queueSizeProperty.addCallback(this::resize);
+    }
+
+
+    /**
+     * creates the stage for the base id the first time it's asked for
+     *
+     * @param baseId
+     * @return
+     */
+    public static ConcurrencyStage getConcurrencyStage(String baseId) {
+        return CONCURRENCY_STAGE_MAP.computeIfAbsent(baseId, ConcurrencyStage::new);
+    }
+
+
+    /**
+     * stops the base id's stage, if it has one, once the exchanges already handed to it are done. a routebuilder that
+     * asks for the stage afterwards gets a new one
+     *
+     * @param baseId
+     */
+    public static void shutdown(String baseId) {
+        ConcurrencyStage concurrencyStage = CONCURRENCY_STAGE_MAP.remove(baseId);
+        if (concurrencyStage != null) {
+            concurrencyStage.poolSizeProperty.removeAllCallbacks();
+            concurrencyStage.queueSizeProperty.removeAllCallbacks();
+            concurrencyStage.threadPoolExecutor.shutdown();
+        }
+    }
+
+
+    /**
+     * @return what the business logic route runs on
+     */
+    public ExecutorService getExecutorService() { return threadPoolExecutor; }
+
+
+    public int getPoolSize() { return threadPoolExecutor.getMaximumPoolSize(); }
+
+    public int getQueueSize() { return workQueue.capacity; }
+
+    public int getQueueDepth() { return workQueue.size(); }
+
+    public int getActiveCount() { return threadPoolExecutor.getActiveCount(); }
+
+
+    /**
+     * applies the current property values to the pool. sizes below the minimum are clamped rather than rejected so a
+     * typo can't take the stage down
+     */
+    private synchronized void resize() {
+        int poolSize = Math.max(1, poolSizeProperty.get());
+        int queueSize = Math.max(0, queueSizeProperty.get());
+
+        // the core size can't go above the max size or the max size below the core size, even for a moment
+        if (poolSize > threadPoolExecutor.getMaximumPoolSize()) {
+            threadPoolExecutor.setMaximumPoolSize(poolSize);
+            threadPoolExecutor.setCorePoolSize(poolSize);
+        } else {
+            threadPoolExecutor.setCorePoolSize(poolSize);
+            threadPoolExecutor.setMaximumPoolSize(poolSize);
+        }
+
+        workQueue.capacity = queueSize;
+
+        LOGGER.info("concurrency stage for {} sized to {} thread(s) and {} queued exchange(s)",
+                    baseId, poolSize, queueSize);
+    }
+
+
+    /**
+     * work queue whose bound can be changed while it's in use. the pool only ever offers to it, so that's the only
+     * place the bound is enforced. lowering the bound doesn't drop anything that's already queued
+     */
+    private static final class ResizableBlockingQueue extends LinkedBlockingQueue<Runnable> {
+
+        private static final long serialVersionUID = 1L;
+
+        private volatile int capacity;
+
+
+        /**
+         * the check and the offer aren't atomic, so the queue can overshoot its bound by however many threads offer
+         * at the same moment. close enough for a bound that's there to apply backpressure
+         *
+         * @param runnable
+         * @return
+         */
+        @Override
+        public boolean offer(Runnable runnable) {
+            return size() < capacity && super.offer(runnable);
+        }
+
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * pool of direct buffers for spooling stream caches to disk. direct buffers are expensive to allocate and only
+ * released by GC, so they're handed back rather than dropped. buffers of a size other than the one asked for - left
+ * over from before the buffer size property changed - are dropped instead of reused.
+ */
+class DirectBufferPool {
+
+    // the most idle buffers kept around
+    static final int MAX_POOLED_BUFFER_COUNT = 32;
+
+    private final Queue<ByteBuffer> bufferQueue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pooledBufferCount = new AtomicInteger();
+
+
+    /**
+     *
+     * @param bufferSize
+     * @return a cleared direct buffer of the given capacity
+     */
+    ByteBuffer acquire(int bufferSize) {
+        ByteBuffer byteBuffer;
+        while ((byteBuffer = bufferQueue.poll()) != null) {
+            pooledBufferCount.decrementAndGet();
+
+            if (byteBuffer.capacity() == bufferSize) {
+                byteBuffer.clear();
+                return byteBuffer;
+            }
+        }
+
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+
+    /**
+     *
+     * @param byteBuffer
+     */
+    void release(ByteBuffer byteBuffer) {
+        if (pooledBufferCount.incrementAndGet() > MAX_POOLED_BUFFER_COUNT) {
+            pooledBufferCount.decrementAndGet();
+            return;
+        }
+
+        bufferQueue.offer(byteBuffer);
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import org.apache.camel.Processor;
+import org.apache.camel.model.NoOutputDefinition;
+import org.apache.camel.spi.RouteContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * model for a LazyStartProcessor. only ever built by RouteBuilderHarness, which puts one at the start of the from-route
+ * of a lazily started routebuilder
+ */
+class LazyStartDefinition extends NoOutputDefinition<LazyStartDefinition> {
+
+    private final String baseId;
+
+    private final String fromRouteId;
+
+    private final List<String> deferredRouteIdList;
+
+
+    /**
+     *
+     * @param baseId
+     * @param fromRouteId the harness id of the route this goes in
+     * @param deferredRouteIdList the harness ids of the routes to start, in the order to start them
+     */
+    LazyStartDefinition(String baseId, String fromRouteId, List<String> deferredRouteIdList) {
+        this.baseId = baseId;
+        this.fromRouteId = fromRouteId;
+        this.deferredRouteIdList = deferredRouteIdList;
+    }
+
+
+    /**
+     * the route ids may have been suffixed since the routebuilder was configured - ShutDownAndRecreateRoutesRunnable
+     * does that in swap mode - so whatever suffix the from-route ended up with is applied to the deferred routes too
+     *
+     * @param routeContext
+     * @return
+     * @throws Exception
+     */
+    @Override
+    public Processor createProcessor(RouteContext routeContext) throws Exception {
+        String routeId = routeContext.getRoute().getId();
+        String suffix = routeId != null && routeId.startsWith(fromRouteId)
+                ? routeId.substring(fromRouteId.length())
+                : "";
+
+        List<String> suffixedRouteIdList = new ArrayList<>();
+        for (String deferredRouteId : deferredRouteIdList) {
+            suffixedRouteIdList.add(deferredRouteId + suffix);
+        }
+
+        return new LazyStartProcessor(routeContext.getCamelContext(), baseId, suffixedRouteIdList);
+    }
+
+
+    @Override
+    public String getShortName() { return "lazyStart"; }
+
+
+    @Override
+    public String getLabel() { return "lazyStart" + deferredRouteIdList; }
+
+
+    @Override
+    public String toString() { return "LazyStart" + deferredRouteIdList; }
+
+}
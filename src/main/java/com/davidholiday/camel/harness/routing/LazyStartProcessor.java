@@ -0,0 +1,86 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import com.davidholiday.camel.harness.metrics.ReloadMetrics;
+import com.davidholiday.camel.harness.metrics.ReloadPhase;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.apache.camel.ServiceStatus;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * starts a lazily started routebuilder's deferred routes when the first exchange reaches its from-route. exchanges
+ * that arrive while that's happening wait for it, everything after that goes straight through on a volatile read.
+ * how long starting the routes took is recorded as ReloadPhase.LAZY_START.
+ */
+class LazyStartProcessor implements Processor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LazyStartProcessor.class);
+
+    private final CamelContext camelContext;
+
+    private final String baseId;
+
+    private final List<String> deferredRouteIdList;
+
+    // set once every deferred route has been started
+    private volatile boolean ready;
+
+
+    /**
+     *
+     * @param camelContext
+     * @param baseId
+     * @param deferredRouteIdList in the order to start them - downstream routes first
+     */
+    LazyStartProcessor(CamelContext camelContext, String baseId, List<String> deferredRouteIdList) {
+        this.camelContext = camelContext;
+        this.baseId = baseId;
+        this.deferredRouteIdList = deferredRouteIdList;
+    }
+
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        if (ready) {
+            return;
+        }
+
+        synchronized (this) {
+            if (ready) {
+                return;
+            }
+
+            long startNanos = System.nanoTime();
+
+            // a route that's already running - one a reload restarted, say - is left alone
+            for (String deferredRouteId : deferredRouteIdList) {
+                ServiceStatus serviceStatus = camelContext.getRouteStatus(deferredRouteId);
+                if (serviceStatus != null && serviceStatus.isStarted() == false) {
+                    camelContext.startRoute(deferredRouteId);
+                }
+            }
+
+            ready = true;
+
+            long durationNanos = System.nanoTime() - startNanos;
+            ReloadMetrics.recordPhase(baseId, ReloadPhase.LAZY_START, durationNanos);
+
+            LOGGER.info("{} routes {} started for their first exchange in {}ms",
+                        baseId, deferredRouteIdList, TimeUnit.NANOSECONDS.toMillis(durationNanos));
+        }
+    }
+
+
+    @Override
+    public String toString() { return "LazyStartProcessor" + deferredRouteIdList; }
+
+}
@@ -0,0 +1,320 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import com.davidholiday.camel.harness.metrics.BaseIdMBeanRegistry;
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicLongProperty;
+import com.netflix.config.DynamicPropertyFactory;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * bounded in-process cache of the messages a harnessed routebuilder's business logic route answered with, keyed on
+ * whatever the routebuilder's result cache key expression evaluated to. least recently used entries are evicted once
+ * the cache is full and entries older than the ttl are evicted when they're next looked up. read from archaius:
+ *
+ *   [baseId].resultCache.maxSize
+ *   [baseId].resultCache.ttlMillis
+ *
+ * there's one cache per base id and it outlives the routebuilder instances that use it.
+ * ShutDownAndRecreateRoutesRunnable clears it whenever it recreates the routes, since the new routes may not answer
+ * the way the old ones did, and drops it when it removes them for good. each one is published over JMX under
+ * JMX_DOMAIN:type=ResultCache,name=[base id]
+ *
+ * @implNote the cache is a LinkedHashMap in access order behind a lock. lookups are cheap next to the business logic
+ * they save, so it hasn't been worth anything cleverer.
+ */
+public class ResultCache implements ResultCacheMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResultCache.class);
+
+    public static final String PROPERTY_PREFIX = ".resultCache.";
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final long DEFAULT_TTL_MILLIS = 60000;
+
+    // base id -> its cache
+    private static final BaseIdMBeanRegistry<ResultCache> RESULT_CACHE_REGISTRY =
+            new BaseIdMBeanRegistry<>("ResultCache", ResultCache::new);
+
+    private final String baseId;
+
+    private final DynamicIntProperty maxSizeProperty;
+    private final DynamicLongProperty ttlMillisProperty;
+
+    // key -> the message the business logic route answered with. in access order. guarded by itself
+    private final LinkedHashMap<Object, CachedResult> cachedResultMap = new LinkedHashMap<>(16, 0.75f, true);
+
+    // key -> the miss currently running the business logic for it
+    private final ConcurrentMap<Object, InflightLookup> inflightLookupMap = new ConcurrentHashMap<>();
+
+    // bumped by clear(). a miss that started before the cache was cleared doesn't get to store its result
+    private volatile long generation;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder collapsedCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+
+    /**
+     *
+     * @param baseId
+     */
+    private ResultCache(String baseId) {
+        this.baseId = baseId;
+
+        DynamicPropertyFactory dynamicPropertyFactory = DynamicPropertyFactory.getInstance();
+        String propertyPrefix = baseId + PROPERTY_PREFIX;
+
+        maxSizeProperty = dynamicPropertyFactory.getIntProperty(propertyPrefix + "maxSize", DEFAULT_MAX_SIZE);
+        ttlMillisProperty = dynamicPropertyFactory.getLongProperty(propertyPrefix + "ttlMillis", DEFAULT_TTL_MILLIS);
+    }
+
+
+    /**
+     *
+     * @param baseId
+     * @return the base id's cache. an empty one if it hasn't got one yet
+     */
+    public static ResultCache getResultCache(String baseId) {
+        return RESULT_CACHE_REGISTRY.get(baseId);
+    }
+
+
+    /**
+     * clears the base id's cache, if it has one
+     *
+     * @param baseId
+     */
+    public static void clear(String baseId) {
+        ResultCache resultCache = RESULT_CACHE_REGISTRY.getIfPresent(baseId);
+        if (resultCache != null) {
+            resultCache.clear();
+        }
+    }
+
+
+    /**
+     * clears the base id's cache and takes it off JMX
+     *
+     * @param baseId
+     */
+    public static void remove(String baseId) {
+        ResultCache resultCache = RESULT_CACHE_REGISTRY.remove(baseId);
+        if (resultCache != null) {
+            resultCache.clear();
+        }
+    }
+
+
+    /**
+     *
+     * @param key
+     * @return the cached message for the key, null if there isn't one or it's outlived the ttl
+     */
+    Message get(Object key) {
+        long ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillisProperty.get());
+
+        synchronized (cachedResultMap) {
+            CachedResult cachedResult = cachedResultMap.get(key);
+            if (cachedResult == null) {
+                return null;
+            }
+
+            if (System.nanoTime() - cachedResult.storedNanos > ttlNanos) {
+                cachedResultMap.remove(key);
+                evictionCount.increment();
+                return null;
+            }
+
+            hitCount.increment();
+            return cachedResult.message;
+        }
+    }
+
+
+    /**
+     * either joins the miss already running for the key or starts one
+     *
+     * @param key
+     * @param inflightLookup what to start if there's no miss running for the key
+     * @return the miss that was already running, null if inflightLookup was started
+     */
+    InflightLookup startOrJoin(Object key, InflightLookup inflightLookup) {
+        InflightLookup existingInflightLookup = inflightLookupMap.putIfAbsent(key, inflightLookup);
+
+        if (existingInflightLookup == null) {
+            missCount.increment();
+        }
+
+        return existingInflightLookup;
+    }
+
+
+    /**
+     * stores the result of a miss, unless the cache was cleared while it ran, and lets the next lookup for the key
+     * start a miss of its own
+     *
+     * @param key
+     * @param inflightLookup
+     * @param message null if the result shouldn't be stored
+     */
+    void finish(Object key, InflightLookup inflightLookup, Message message) {
+        if (message != null && inflightLookup.generation == generation) {
+            int maxSize = Math.max(0, maxSizeProperty.get());
+
+            synchronized (cachedResultMap) {
+                cachedResultMap.put(key, new CachedResult(message));
+
+                Iterator<Object> keyIterator = cachedResultMap.keySet().iterator();
+                while (cachedResultMap.size() > maxSize && keyIterator.hasNext()) {
+                    keyIterator.next();
+                    keyIterator.remove();
+                    evictionCount.increment();
+                }
+            }
+        }
+
+        inflightLookupMap.remove(key, inflightLookup);
+    }
+
+
+    void recordCollapsed() { collapsedCount.increment(); }
+
+
+    /**
+     * @return a miss for this cache's current generation
+     */
+    InflightLookup newInflightLookup() { return new InflightLookup(generation); }
+
+
+    @Override
+    public String getBaseId() { return baseId; }
+
+    @Override
+    public int getSize() {
+        synchronized (cachedResultMap) {
+            return cachedResultMap.size();
+        }
+    }
+
+    @Override
+    public int getMaxSize() { return maxSizeProperty.get(); }
+
+    @Override
+    public long getHitCount() { return hitCount.sum(); }
+
+    @Override
+    public long getMissCount() { return missCount.sum(); }
+
+    @Override
+    public long getCollapsedCount() { return collapsedCount.sum(); }
+
+    @Override
+    public long getEvictionCount() { return evictionCount.sum(); }
+
+
+    /**
+     * drops every entry. misses already running still answer the exchanges waiting on them but don't store what they
+     * get, and lookups from here on don't wait on them
+     */
+    @Override
+    public void clear() {
+        synchronized (cachedResultMap) {
+            generation++;
+            cachedResultMap.clear();
+            inflightLookupMap.clear();
+        }
+
+        LOGGER.info("result cache for {} cleared", baseId);
+    }
+
+
+    /**
+     * clears the counts. the entries are left alone
+     */
+    @Override
+    public void reset() {
+        hitCount.reset();
+        missCount.reset();
+        collapsedCount.reset();
+        evictionCount.reset();
+    }
+
+
+    /**
+     * a cached message and when it was stored, in System.nanoTime() terms
+     */
+    private static final class CachedResult {
+
+        private final Message message;
+
+        private final long storedNanos = System.nanoTime();
+
+
+        private CachedResult(Message message) { this.message = message; }
+
+    }
+
+
+    /**
+     * a miss running the business logic for a key, and the exchanges waiting on it for the same key
+     */
+    static final class InflightLookup {
+
+        // the cache generation the miss started in
+        private final long generation;
+
+        // exchange -> the callback to call once it's been answered. null once the miss is done. guarded by this
+        private Map<Exchange, AsyncCallback> waiterMap = new LinkedHashMap<>();
+
+
+        private InflightLookup(long generation) { this.generation = generation; }
+
+
+        /**
+         *
+         * @param exchange
+         * @param callback
+         * @return false if the miss is already done, in which case the exchange has to look the key up again
+         */
+        synchronized boolean addWaiter(Exchange exchange, AsyncCallback callback) {
+            if (waiterMap == null) {
+                return false;
+            }
+
+            waiterMap.put(exchange, callback);
+            return true;
+        }
+
+
+        /**
+         * @return the exchanges that waited on the miss. nothing can wait on it after this
+         */
+        synchronized Map<Exchange, AsyncCallback> complete() {
+            Map<Exchange, AsyncCallback> completedWaiterMap = waiterMap;
+            waiterMap = null;
+
+            return completedWaiterMap == null ? Collections.emptyMap() : completedWaiterMap;
+        }
+
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import org.apache.camel.Expression;
+import org.apache.camel.Processor;
+import org.apache.camel.model.OutputDefinition;
+import org.apache.camel.spi.RouteContext;
+
+
+/**
+ * model for a ResultCacheProcessor - answers exchanges from the base id's ResultCache before they reach the processors
+ * it wraps. only ever built by RouteBuilderHarness, which wraps the business logic route in one
+ */
+class ResultCacheDefinition extends OutputDefinition<ResultCacheDefinition> {
+
+    private final String baseId;
+
+    private final Expression keyExpression;
+
+
+    /**
+     *
+     * @param baseId which cache to use
+     * @param keyExpression what exchanges are cached under
+     */
+    ResultCacheDefinition(String baseId, Expression keyExpression) {
+        this.baseId = baseId;
+        this.keyExpression = keyExpression;
+    }
+
+
+    @Override
+    public Processor createProcessor(RouteContext routeContext) throws Exception {
+        return new ResultCacheProcessor(
+                ResultCache.getResultCache(baseId), keyExpression, createChildProcessor(routeContext, true)
+        );
+    }
+
+
+    @Override
+    public String getShortName() { return "resultCache"; }
+
+
+    @Override
+    public String getLabel() { return "resultCache[" + keyExpression + "]"; }
+
+
+    @Override
+    public String toString() { return "ResultCache[" + keyExpression + " -> " + getOutputs() + "]"; }
+
+}
@@ -0,0 +1,33 @@
+package com.davidholiday.camel.harness.routing;
+
+
+/**
+ * result cache state for one harnessed routebuilder as published over JMX
+ */
+public interface ResultCacheMXBean {
+
+    String getBaseId();
+
+    int getSize();
+
+    int getMaxSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    /**
+     * @return lookups that waited on another exchange's miss for the same key rather than running the business logic
+     */
+    long getCollapsedCount();
+
+    /**
+     * @return entries dropped for being the least recently used or for outliving their ttl
+     */
+    long getEvictionCount();
+
+    void clear();
+
+    void reset();
+
+}
@@ -0,0 +1,187 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.Expression;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.StreamCache;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.AsyncProcessorConverterHelper;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.apache.camel.util.ServiceHelper;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Map;
+
+
+/**
+ * answers exchanges from the base id's ResultCache where it can and runs the processors it wraps where it can't. an
+ * exchange whose key misses while another exchange is already running the processors for the same key waits for that
+ * one's answer instead of running them again.
+ *
+ * only answers that finished without an exception and whose body can be read more than once are stored. the exchanges
+ * a cached message is handed to share its body, so bodies should be treated as immutable.
+ */
+class ResultCacheProcessor extends ServiceSupport implements AsyncProcessor {
+
+    private final ResultCache resultCache;
+
+    private final Expression keyExpression;
+
+    private final AsyncProcessor cachedProcessor;
+
+
+    /**
+     *
+     * @param resultCache
+     * @param keyExpression exchanges it evaluates to null for bypass the cache
+     * @param cachedProcessor
+     */
+    ResultCacheProcessor(ResultCache resultCache, Expression keyExpression, Processor cachedProcessor) {
+        this.resultCache = resultCache;
+        this.keyExpression = keyExpression;
+        this.cachedProcessor = AsyncProcessorConverterHelper.convert(cachedProcessor);
+    }
+
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        Object key;
+        try {
+            key = keyExpression.evaluate(exchange, Object.class);
+        } catch (Throwable t) {
+            exchange.setException(t);
+            callback.done(true);
+            return true;
+        }
+
+        if (key == null) {
+            return cachedProcessor.process(exchange, callback);
+        }
+
+        // a miss can finish between this exchange finding it and asking to wait on it, so look again when it does
+        while (true) {
+            Message cachedMessage = resultCache.get(key);
+            if (cachedMessage != null) {
+                exchange.setIn(cachedMessage.copy());
+                callback.done(true);
+                return true;
+            }
+
+            ResultCache.InflightLookup inflightLookup = resultCache.newInflightLookup();
+            ResultCache.InflightLookup existingInflightLookup = resultCache.startOrJoin(key, inflightLookup);
+
+            if (existingInflightLookup == null) {
+                return runMiss(key, inflightLookup, exchange, callback);
+            }
+
+            if (existingInflightLookup.addWaiter(exchange, callback)) {
+                resultCache.recordCollapsed();
+                return false;
+            }
+        }
+    }
+
+
+    /**
+     *
+     * @param key
+     * @param inflightLookup
+     * @param exchange
+     * @param callback
+     * @return
+     */
+    private boolean runMiss(Object key,
+                            ResultCache.InflightLookup inflightLookup,
+                            Exchange exchange,
+                            AsyncCallback callback) {
+
+        try {
+            return cachedProcessor.process(exchange, doneSync -> {
+                finishMiss(key, inflightLookup, exchange);
+                callback.done(doneSync);
+            });
+        } catch (Throwable t) {
+            exchange.setException(t);
+            finishMiss(key, inflightLookup, exchange);
+            callback.done(true);
+            return true;
+        }
+    }
+
+
+    /**
+     * stores what the miss answered with if it can be, then hands the answer, or the exception, to the exchanges that
+     * waited on it
+     *
+     * @param key
+     * @param inflightLookup
+     * @param exchange
+     */
+    private void finishMiss(Object key, ResultCache.InflightLookup inflightLookup, Exchange exchange) {
+        Exception exception = exchange.getException();
+        Message message = exchange.hasOut() ? exchange.getOut() : exchange.getIn();
+
+        boolean isCacheable = exception == null && isReusable(message.getBody());
+        resultCache.finish(key, inflightLookup, isCacheable ? message.copy() : null);
+
+        for (Map.Entry<Exchange, AsyncCallback> entry : inflightLookup.complete().entrySet()) {
+            Exchange waitingExchange = entry.getKey();
+
+            if (exception != null) {
+                waitingExchange.setException(exception);
+            } else if (isCacheable) {
+                waitingExchange.setIn(message.copy());
+            } else {
+                // a body that can only be read once can't be shared, so the waiting exchange has to run the miss too
+                try {
+                    cachedProcessor.process(waitingExchange, entry.getValue());
+                } catch (Throwable t) {
+                    waitingExchange.setException(t);
+                    entry.getValue().done(false);
+                }
+
+                continue;
+            }
+
+            entry.getValue().done(false);
+        }
+    }
+
+
+    /**
+     *
+     * @param body
+     * @return false for bodies that can't safely be handed to more than one exchange
+     */
+    private static boolean isReusable(Object body) {
+        return (body instanceof InputStream || body instanceof Reader || body instanceof StreamCache) == false;
+    }
+
+
+    @Override
+    protected void doStart() throws Exception {
+        ServiceHelper.startService(cachedProcessor);
+    }
+
+
+    @Override
+    protected void doStop() throws Exception {
+        ServiceHelper.stopService(cachedProcessor);
+    }
+
+
+    @Override
+    public String toString() { return "ResultCacheProcessor[" + resultCache.getBaseId() + "]"; }
+
+}
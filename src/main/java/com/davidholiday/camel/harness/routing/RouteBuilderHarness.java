@@ -1,9 +1,26 @@
 package com.davidholiday.camel.harness.routing;
 
 
-import org.apache.camel.builder.RouteBuilder;
+import com.davidholiday.camel.harness.metrics.HarnessedRoute;
+import com.davidholiday.camel.harness.metrics.RouteMetrics;
 
+import org.apache.camel.Expression;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.model.OutputDefinition;
+import org.apache.camel.model.ProcessDefinition;
+import org.apache.camel.model.ProcessorDefinition;
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.model.ThreadsDefinition;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
 
 
 /**
@@ -33,9 +50,39 @@ import java.util.Optional;
  * knows what the names of the entry and exit points are of that route because the implementor of this
  * has those names as either static or get-able values.
  *
+ * by default the business logic route runs on whatever thread delivered the message to the from-route. a routebuilder
+ * that overrides hasConcurrencyStage() to return true runs it on its ConcurrencyStage instead - the harness moves the
+ * processors of the route with id BUSINESS_LOGIC_ROUTE_ID into a threads block once configure() has run, so
+ * implementors don't need to change anything. overriding getThreadPoolProfileId() as well runs it on a pool made from
+ * a camel thread pool profile instead, VirtualThreadPoolFactory.PROFILE_ID for instance.
+ *
+ * a routebuilder that overrides isBatching() to return true has its business logic route's processors run once per
+ * batch of exchanges rather than once per exchange - see BatchingProcessor for what they get and have to hand back.
+ * with both stages the exchange is handed to the concurrency stage first and batched there.
+ *
+ * a routebuilder that overrides isConcurrencyLimited() to return true turns exchanges away once its
+ * AdaptiveConcurrencyLimiter's limit is in flight, before they're handed to any other stage.
+ *
+ * overriding getResultCacheKeyExpression() answers exchanges from a ResultCache ahead of every other stage, so an
+ * exchange that hits doesn't count against the concurrency limit or take up room in the concurrency stage.
+ *
+ * a routebuilder that overrides isLazyStart() to return true only starts its from-route with the camel context. the
+ * business logic and to-routes are started by the first exchange to arrive, so their producers, connection pools and
+ * the like aren't set up for routes that haven't seen any traffic yet.
+ *
+ * a routebuilder that overrides isStreamCaching() to return true has InputStream bodies turned into stream caches as
+ * they reach each of its routes, held on the heap or spooled to disk as its StreamCachingStage is configured, and
+ * reset as they move between routes - camel's route-level stream caching, with settings per routebuilder rather than
+ * per camel context.
+ *
+ * whatever the stages, the from, business logic and to routes are each timed as a whole and the results published
+ * through RouteMetrics.
+ *
  */
 public abstract class RouteBuilderHarness extends RouteBuilder {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(RouteBuilderHarness.class);
+
     // resolves to the name of the RouteBuilder class instance injected into the common constructor
     protected final String BASE_ID;
 
@@ -50,6 +97,9 @@ public abstract class RouteBuilderHarness extends RouteBuilder {
     // if present, the name of the exit point out of the business logic route
     protected final Optional<String> BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL;
 
+    // configure() only runs once per instance, so neither should wrapping the routes in their stages
+    private boolean stagesApplied;
+
     // used by the TestHarness class to create a standard entrypoint into route and processor test routes
     public static final String TEST_ROUTE_ENTRY_NAME = "direct:testRouteIn";
 
@@ -89,6 +139,39 @@ public abstract class RouteBuilderHarness extends RouteBuilder {
                 : (Optional.empty());
     }
 
+    /**
+     * lets configure() run as normal, then wraps the business logic route in whichever stages the routebuilder has
+     * and every route in its stream caching, if it asks for it, and its metrics
+     *
+     * @throws Exception
+     */
+    @Override
+    protected void checkInitialized() throws Exception {
+        super.checkInitialized();
+
+        if (stagesApplied) {
+            return;
+        }
+
+        stagesApplied = true;
+
+        Expression resultCacheKeyExpression = getResultCacheKeyExpression();
+        if (hasConcurrencyStage() || isBatching() || isConcurrencyLimited() || resultCacheKeyExpression != null) {
+            applyStages(resultCacheKeyExpression);
+        }
+
+        if (isLazyStart()) {
+            applyLazyStart();
+        }
+
+        if (isStreamCaching()) {
+            applyStreamCaching();
+        }
+
+        applyRouteMetrics();
+    }
+
+
     /**
      *
      * @return
@@ -96,6 +179,87 @@ public abstract class RouteBuilderHarness extends RouteBuilder {
     public String getBusinessLogicRouteId() { return BUSINESS_LOGIC_ROUTE_ID; }
 
 
+    /**
+     * whether the business logic route runs on a thread pool sized by archaius properties rather than on the thread
+     * that delivered the message. false, the default, leaves it where it is. see ConcurrencyStage
+     *
+     * @return
+     */
+    protected boolean hasConcurrencyStage() { return false; }
+
+
+    /**
+     * whether the business logic route's processors get a list of bodies per batch rather than one exchange at a
+     * time. false, the default, hands them one exchange at a time. see BatchingProcessor
+     *
+     * @return
+     */
+    protected boolean isBatching() { return false; }
+
+
+    /**
+     * whether exchanges past the limit the business logic route has learned from its latency are turned away. false,
+     * the default, lets every exchange in. see AdaptiveConcurrencyLimiter
+     *
+     * @return
+     */
+    protected boolean isConcurrencyLimited() { return false; }
+
+
+    /**
+     * the camel thread pool profile the concurrency stage makes its pool from. null, the default, means the business
+     * logic route runs on the live-resizable ConcurrencyStage for BASE_ID. a pool made from a profile is sized by the
+     * profile and is recreated along with the routes
+     *
+     * @return
+     */
+    protected String getThreadPoolProfileId() { return null; }
+
+
+    /**
+     * what the business logic route's answers are cached under - header("accountId") for instance. null, the default,
+     * means nothing is cached. exchanges the expression evaluates to null for aren't cached either. see ResultCache
+     *
+     * @return
+     */
+    protected Expression getResultCacheKeyExpression() { return null; }
+
+
+    /**
+     * whether the business logic and to-routes wait for the first exchange through the from-route to be started.
+     * false, the default, starts every route with the camel context
+     *
+     * @return
+     */
+    protected boolean isLazyStart() { return false; }
+
+
+    /**
+     * whether InputStream bodies are cached so the routes can read them more than once, with the spool threshold and
+     * the like read from archaius for BASE_ID. false, the default, leaves bodies as they are. see StreamCachingStage
+     *
+     * @return
+     */
+    protected boolean isStreamCaching() { return false; }
+
+
+    /**
+     * lets go of what the stages and route metrics keep per base id rather than per routebuilder instance - the
+     * concurrency stage's threads, the concurrency limiter, the result cache, the stream caching stage and the route
+     * metrics. only for once the routebuilder's routes are gone for good - a routebuilder created for the base id
+     * afterwards starts from scratch
+     *
+     * @param baseId
+     */
+    public static void releaseStages(String baseId) {
+        ConcurrencyStage.shutdown(baseId);
+        AdaptiveConcurrencyLimiter.remove(baseId);
+        ResultCache.remove(baseId);
+        StreamCachingStage.remove(baseId);
+        RouteMetrics.remove(baseId);
+    }
+
+
     /**
      *
      * @return
@@ -117,6 +281,25 @@ public abstract class RouteBuilderHarness extends RouteBuilder {
     public String getBaseId() { return BASE_ID; }
 
 
+    /**
+     * the ids of every route the harness expects this builder to define, in the order traffic flows through them -
+     * the from-route, the business logic route and, if present, the to-route.
+     *
+     * @return
+     */
+    public List<String> getRouteIdList() {
+        List<String> routeIdList = new ArrayList<>();
+        routeIdList.add(FROM_ROUTE_ID);
+        routeIdList.add(BUSINESS_LOGIC_ROUTE_ID);
+
+        if (BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL.isPresent()) {
+            routeIdList.add(TO_ROUTE_ID);
+        }
+
+        return routeIdList;
+    }
+
+
     /**
      *
      * @implNote here to make it easier for the test harness to grab the populated variable from an implementor instance
@@ -143,4 +326,182 @@ public abstract class RouteBuilderHarness extends RouteBuilder {
         return Optional.ofNullable(optionalContents);
     }
 
-}
\ No newline at end of file
+
+    /**
+     * wraps the business logic route's processors in the batching stage, then the concurrency stage, then the
+     * concurrency limit, then the result cache
+     *
+     * @param resultCacheKeyExpression null if there's no result cache
+     */
+    private void applyStages(Expression resultCacheKeyExpression) {
+        for (RouteDefinition routeDefinition : getRouteCollection().getRoutes()) {
+            if (BUSINESS_LOGIC_ROUTE_ID.equals(routeDefinition.getId()) == false) {
+                continue;
+            }
+
+            if (isBatching()) {
+                // batches that time out are run on whatever the concurrency stage runs the route on
+                String threadPoolProfileId = hasConcurrencyStage() ? getThreadPoolProfileId() : null;
+                ExecutorService routeExecutorService = hasConcurrencyStage() && threadPoolProfileId == null
+                        ? ConcurrencyStage.getConcurrencyStage(BASE_ID).getExecutorService()
+                        : null;
+
+                wrapOutputs(
+                        routeDefinition,
+                        new BatchingDefinition(BASE_ID, routeExecutorService, threadPoolProfileId)
+                );
+            }
+
+            if (isConcurrencyLimited()) {
+                AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter =
+                        AdaptiveConcurrencyLimiter.getAdaptiveConcurrencyLimiter(BASE_ID);
+
+                insertFirstOutput(routeDefinition, new ProcessDefinition(
+                        ConcurrencyLimitProcessor.newQueueingDelayRecorder(adaptiveConcurrencyLimiter)
+                ));
+            }
+
+            if (hasConcurrencyStage()) {
+                String threadPoolProfileId = getThreadPoolProfileId();
+                ThreadsDefinition threadsDefinition = threadPoolProfileId == null
+                        ? new ThreadsDefinition().executorService(
+                                ConcurrencyStage.getConcurrencyStage(BASE_ID).getExecutorService()
+                          )
+                        : new ThreadsDefinition().executorServiceRef(threadPoolProfileId);
+
+                wrapOutputs(routeDefinition, threadsDefinition);
+            }
+
+            if (isConcurrencyLimited()) {
+                wrapOutputs(routeDefinition, new ConcurrencyLimitDefinition(BASE_ID));
+            }
+
+            if (resultCacheKeyExpression != null) {
+                wrapOutputs(routeDefinition, new ResultCacheDefinition(BASE_ID, resultCacheKeyExpression));
+            }
+
+            return;
+        }
+
+        LOGGER.warn("{} has stages to wrap its business logic route in but no route with id {} for them",
+                    BASE_ID, BUSINESS_LOGIC_ROUTE_ID);
+    }
+
+
+    /**
+     * stops the business logic and to-routes from starting with the camel context and has the from-route start them
+     * for its first exchange, to-route first so the business logic route always has somewhere to send to
+     */
+    private void applyLazyStart() {
+        List<String> deferredRouteIdList = getRouteIdList();
+        deferredRouteIdList.remove(FROM_ROUTE_ID);
+        Collections.reverse(deferredRouteIdList);
+
+        RouteDefinition fromRouteDefinition = null;
+        for (RouteDefinition routeDefinition : getRouteCollection().getRoutes()) {
+            if (FROM_ROUTE_ID.equals(routeDefinition.getId())) {
+                fromRouteDefinition = routeDefinition;
+            }
+        }
+
+        if (fromRouteDefinition == null) {
+            LOGGER.warn("{} is lazily started but has no route with id {} to start its other routes - starting them "
+                                + "with the camel context", BASE_ID, FROM_ROUTE_ID);
+            return;
+        }
+
+        for (RouteDefinition routeDefinition : getRouteCollection().getRoutes()) {
+            if (deferredRouteIdList.contains(routeDefinition.getId())) {
+                routeDefinition.setAutoStartup("false");
+            }
+        }
+
+        insertFirstOutput(fromRouteDefinition, new LazyStartDefinition(BASE_ID, FROM_ROUTE_ID, deferredRouteIdList));
+    }
+
+
+    /**
+     * wraps each of the harness' routes in its RouteMetrics timing, outside any stages so the time exchanges spend in
+     * them is counted
+     */
+    private void applyRouteMetrics() {
+        for (RouteDefinition routeDefinition : getRouteCollection().getRoutes()) {
+            HarnessedRoute harnessedRoute = getHarnessedRoute(routeDefinition.getId());
+            if (harnessedRoute != null) {
+                wrapOutputs(routeDefinition, new RouteMetricsDefinition(BASE_ID, harnessedRoute));
+            }
+        }
+    }
+
+
+    /**
+     * wraps each of the harness' routes in stream caching, outside any other stages so a result cache key expression
+     * can read the body and still leave it for the business logic
+     */
+    private void applyStreamCaching() {
+        for (RouteDefinition routeDefinition : getRouteCollection().getRoutes()) {
+            HarnessedRoute harnessedRoute = getHarnessedRoute(routeDefinition.getId());
+            if (harnessedRoute != null) {
+                wrapOutputs(routeDefinition, new StreamCachingDefinition(BASE_ID, harnessedRoute));
+            }
+        }
+    }
+
+
+    /**
+     *
+     * @param routeId
+     * @return null if the route isn't one of the harness' routes
+     */
+    private HarnessedRoute getHarnessedRoute(String routeId) {
+        if (FROM_ROUTE_ID.equals(routeId)) {
+            return HarnessedRoute.FROM;
+        } else if (BUSINESS_LOGIC_ROUTE_ID.equals(routeId)) {
+            return HarnessedRoute.BUSINESS_LOGIC;
+        } else if (BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL.isPresent() && TO_ROUTE_ID.equals(routeId)) {
+            return HarnessedRoute.TO;
+        }
+
+        return null;
+    }
+
+
+    /**
+     * moves the route's processors into the wrapper. route-scoped onException, onCompletion and the like stay where
+     * they are so they still apply to the whole route
+     *
+     * @param routeDefinition
+     * @param wrapperDefinition
+     */
+    private static void wrapOutputs(RouteDefinition routeDefinition, OutputDefinition<?> wrapperDefinition) {
+        Iterator<ProcessorDefinition<?>> outputIterator = routeDefinition.getOutputs().iterator();
+        while (outputIterator.hasNext()) {
+            ProcessorDefinition<?> output = outputIterator.next();
+            if (output.isAbstract() == false) {
+                wrapperDefinition.addOutput(output);
+                outputIterator.remove();
+            }
+        }
+
+        routeDefinition.getOutputs().add(wrapperDefinition);
+    }
+
+
+    /**
+     * adds the processor ahead of the route's other processors, after route-scoped onException and the like
+     *
+     * @param routeDefinition
+     * @param processorDefinition
+     */
+    private static void insertFirstOutput(RouteDefinition routeDefinition, ProcessorDefinition<?> processorDefinition) {
+        List<ProcessorDefinition<?>> outputList = routeDefinition.getOutputs();
+
+        int index = 0;
+        while (index < outputList.size() && outputList.get(index).isAbstract()) {
+            index++;
+        }
+
+        outputList.add(index, processorDefinition);
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import com.davidholiday.camel.harness.metrics.HarnessedRoute;
+import com.davidholiday.camel.harness.metrics.RouteMetrics;
+
+import org.apache.camel.Processor;
+import org.apache.camel.model.OutputDefinition;
+import org.apache.camel.spi.RouteContext;
+
+
+/**
+ * model for a RouteMetricsProcessor - times every exchange through the processors it wraps. only ever built by
+ * RouteBuilderHarness, which wraps each of its routes in one
+ */
+class RouteMetricsDefinition extends OutputDefinition<RouteMetricsDefinition> {
+
+    private final String baseId;
+
+    private final HarnessedRoute harnessedRoute;
+
+
+    /**
+     *
+     * @param baseId
+     * @param harnessedRoute which of the routebuilder's routes this wraps
+     */
+    RouteMetricsDefinition(String baseId, HarnessedRoute harnessedRoute) {
+        this.baseId = baseId;
+        this.harnessedRoute = harnessedRoute;
+    }
+
+
+    @Override
+    public Processor createProcessor(RouteContext routeContext) throws Exception {
+        return new RouteMetricsProcessor(
+                RouteMetrics.getHarnessRouteMetrics(baseId), harnessedRoute, createChildProcessor(routeContext, true)
+        );
+    }
+
+
+    @Override
+    public String getShortName() { return "routeMetrics"; }
+
+
+    @Override
+    public String getLabel() { return "routeMetrics[" + baseId + " " + harnessedRoute + "]"; }
+
+
+    @Override
+    public String toString() { return "RouteMetrics[" + getOutputs() + "]"; }
+
+}
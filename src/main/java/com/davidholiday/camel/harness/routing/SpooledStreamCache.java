@@ -0,0 +1,376 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import org.apache.camel.Exchange;
+import org.apache.camel.StreamCache;
+import org.apache.camel.support.SynchronizationAdapter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * re-readable body a StreamCachingStage turns an InputStream body into - held in a heap array if it fit under the
+ * spool threshold, otherwise in a spool file read back through a FileChannel and a pooled direct buffer.
+ *
+ * closing the stream only hands its read buffer back, since camel's type converters close the streams they read and
+ * the body has to survive that to be read again after a reset. what backs it - the heap array or the spool file - is
+ * released once the exchange that cached it, and every exchange it was copied to, has completed.
+ */
+final class SpooledStreamCache extends InputStream implements StreamCache {
+
+    private final Backing backing;
+
+    private final DirectBufferPool directBufferPool;
+
+    private final int bufferSize;
+
+    // how far into the content the next read starts
+    private long position;
+
+    // read() hands its byte back through this rather than allocating
+    private final byte[] singleByte = new byte[1];
+
+    // spooled content from the file that's been read but not handed out yet. null until the first read
+    private ByteBuffer readBuffer;
+
+
+    /**
+     *
+     * @param backing
+     * @param directBufferPool
+     * @param bufferSize
+     */
+    private SpooledStreamCache(Backing backing, DirectBufferPool directBufferPool, int bufferSize) {
+        this.backing = backing;
+        this.directBufferPool = directBufferPool;
+        this.bufferSize = bufferSize;
+    }
+
+
+    /**
+     *
+     * @param exchange the cache's backing is released when it completes
+     * @param bytes
+     * @param length how much of the array is content
+     * @param onRelease
+     * @return
+     */
+    static SpooledStreamCache inMemory(Exchange exchange, byte[] bytes, int length, Runnable onRelease) {
+        return register(exchange, new SpooledStreamCache(new HeapBacking(bytes, length, onRelease), null, 0));
+    }
+
+
+    /**
+     *
+     * @param exchange the cache's backing is released when it completes
+     * @param fileChannel open for reading on a spool file that's deleted when the channel is closed
+     * @param length
+     * @param directBufferPool
+     * @param bufferSize
+     * @param onRelease
+     * @return
+     */
+    static SpooledStreamCache spooled(Exchange exchange,
+                                      FileChannel fileChannel,
+                                      long length,
+                                      DirectBufferPool directBufferPool,
+                                      int bufferSize,
+                                      Runnable onRelease) {
+
+        Backing backing = new FileBacking(fileChannel, length, onRelease);
+        return register(exchange, new SpooledStreamCache(backing, directBufferPool, bufferSize));
+    }
+
+
+    /**
+     *
+     * @param exchange
+     * @param spooledStreamCache
+     * @return
+     */
+    private static SpooledStreamCache register(Exchange exchange, SpooledStreamCache spooledStreamCache) {
+        exchange.addOnCompletion(new SynchronizationAdapter() {
+            @Override
+            public void onDone(Exchange completedExchange) {
+                spooledStreamCache.closeQuietly();
+                spooledStreamCache.backing.release();
+            }
+        });
+
+        return spooledStreamCache;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        return read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xff;
+    }
+
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+
+        if (backing instanceof HeapBacking) {
+            HeapBacking heapBacking = (HeapBacking)backing;
+            int readLength = (int)Math.min(length, backing.length - position);
+            if (readLength <= 0) {
+                return -1;
+            }
+
+            System.arraycopy(heapBacking.bytes, (int)position, bytes, offset, readLength);
+            position += readLength;
+            return readLength;
+        }
+
+        if (readBuffer == null || readBuffer.hasRemaining() == false) {
+            if (fillReadBuffer() == false) {
+                return -1;
+            }
+        }
+
+        int readLength = Math.min(length, readBuffer.remaining());
+        readBuffer.get(bytes, offset, readLength);
+        position += readLength;
+        return readLength;
+    }
+
+
+    @Override
+    public long skip(long count) {
+        long skipCount = Math.max(0, Math.min(count, backing.length - position));
+        position += skipCount;
+
+        if (readBuffer != null) {
+            readBuffer.clear().limit(0);
+        }
+
+        return skipCount;
+    }
+
+
+    @Override
+    public int available() { return (int)Math.min(Integer.MAX_VALUE, backing.length - position); }
+
+
+    /**
+     * hands the read buffer back to the pool. the stream can still be reset and read again
+     */
+    @Override
+    public void close() {
+        closeQuietly();
+    }
+
+
+    /**
+     * starts the stream over from the beginning of the content
+     */
+    @Override
+    public void reset() {
+        position = 0;
+
+        if (readBuffer != null) {
+            readBuffer.clear().limit(0);
+        }
+    }
+
+
+    /**
+     * writes the whole of the content, wherever the stream has been read up to. spooled content is transferred
+     * straight from the file channel
+     *
+     * @param outputStream
+     * @throws IOException
+     */
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        if (backing instanceof HeapBacking) {
+            HeapBacking heapBacking = (HeapBacking)backing;
+            outputStream.write(heapBacking.bytes, 0, (int)backing.length);
+            return;
+        }
+
+        FileChannel fileChannel = ((FileBacking)backing).fileChannel;
+        WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+
+        long transferredLength = 0;
+        while (transferredLength < backing.length) {
+            transferredLength +=
+                    fileChannel.transferTo(transferredLength, backing.length - transferredLength, outputChannel);
+        }
+    }
+
+
+    /**
+     * the copy reads the same heap array or spool file from the beginning. whatever backs them is released once both
+     * exchanges have completed
+     *
+     * @param exchange
+     * @return
+     */
+    @Override
+    public StreamCache copy(Exchange exchange) {
+        backing.retain();
+        return register(exchange, new SpooledStreamCache(backing, directBufferPool, bufferSize));
+    }
+
+
+    @Override
+    public boolean inMemory() { return backing instanceof HeapBacking; }
+
+
+    @Override
+    public long length() { return backing.length; }
+
+
+    /**
+     * reads the spool file from the current position into the read buffer. positional reads don't move the channel's
+     * own position, so copies of the cache can share the channel
+     *
+     * @return false at the end of the content
+     * @throws IOException
+     */
+    private boolean fillReadBuffer() throws IOException {
+        if (position >= backing.length) {
+            return false;
+        }
+
+        if (readBuffer == null) {
+            readBuffer = directBufferPool.acquire(bufferSize);
+        }
+
+        FileChannel fileChannel = ((FileBacking)backing).fileChannel;
+
+        readBuffer.clear();
+        int readLength;
+        do {
+            readLength = fileChannel.read(readBuffer, position);
+        } while (readLength == 0);
+
+        readBuffer.flip();
+        return readLength > 0;
+    }
+
+
+    /**
+     *
+     */
+    private void closeQuietly() {
+        if (readBuffer != null) {
+            directBufferPool.release(readBuffer);
+            readBuffer = null;
+        }
+    }
+
+
+    /**
+     * what a cache and its copies read from. released once every one of them has been
+     */
+    private abstract static class Backing {
+
+        private final AtomicInteger referenceCount = new AtomicInteger(1);
+
+        final long length;
+
+        private final Runnable onRelease;
+
+
+        /**
+         *
+         * @param length
+         * @param onRelease
+         */
+        Backing(long length, Runnable onRelease) {
+            this.length = length;
+            this.onRelease = onRelease;
+        }
+
+
+        void retain() { referenceCount.incrementAndGet(); }
+
+
+        void release() {
+            if (referenceCount.decrementAndGet() == 0) {
+                try {
+                    dispose();
+                } finally {
+                    onRelease.run();
+                }
+            }
+        }
+
+
+        abstract void dispose();
+
+    }
+
+
+    /**
+     * content held on the heap
+     */
+    private static final class HeapBacking extends Backing {
+
+        private final byte[] bytes;
+
+
+        /**
+         *
+         * @param bytes
+         * @param length
+         * @param onRelease
+         */
+        HeapBacking(byte[] bytes, int length, Runnable onRelease) {
+            super(length, onRelease);
+            this.bytes = bytes;
+        }
+
+
+        @Override
+        void dispose() {}
+
+    }
+
+
+    /**
+     * content spooled to a file. closing the channel deletes the file - on unix the jvm unlinks it as soon as it's
+     * opened, so it doesn't outlive the process even if the channel is never closed
+     */
+    private static final class FileBacking extends Backing {
+
+        private final FileChannel fileChannel;
+
+
+        /**
+         *
+         * @param fileChannel
+         * @param length
+         * @param onRelease
+         */
+        FileBacking(FileChannel fileChannel, long length, Runnable onRelease) {
+            super(length, onRelease);
+            this.fileChannel = fileChannel;
+        }
+
+
+        @Override
+        void dispose() {
+            try {
+                fileChannel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("couldn't close a spool file", e);
+            }
+        }
+
+    }
+
+}
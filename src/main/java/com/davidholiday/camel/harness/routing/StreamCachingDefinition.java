@@ -0,0 +1,54 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import com.davidholiday.camel.harness.metrics.HarnessedRoute;
+
+import org.apache.camel.Processor;
+import org.apache.camel.model.OutputDefinition;
+import org.apache.camel.spi.RouteContext;
+
+
+/**
+ * model for a StreamCachingProcessor - caches InputStream bodies ahead of the processors it wraps. only ever built by
+ * RouteBuilderHarness, which wraps each of its routes in one for routebuilders that stream cache
+ */
+class StreamCachingDefinition extends OutputDefinition<StreamCachingDefinition> {
+
+    private final String baseId;
+
+    private final HarnessedRoute harnessedRoute;
+
+
+    /**
+     *
+     * @param baseId
+     * @param harnessedRoute which of the routebuilder's routes this wraps
+     */
+    StreamCachingDefinition(String baseId, HarnessedRoute harnessedRoute) {
+        this.baseId = baseId;
+        this.harnessedRoute = harnessedRoute;
+    }
+
+
+    @Override
+    public Processor createProcessor(RouteContext routeContext) throws Exception {
+        return new StreamCachingProcessor(
+                StreamCachingStage.getStreamCachingStage(baseId),
+                harnessedRoute,
+                createChildProcessor(routeContext, true)
+        );
+    }
+
+
+    @Override
+    public String getShortName() { return "streamCaching"; }
+
+
+    @Override
+    public String getLabel() { return "streamCaching[" + baseId + " " + harnessedRoute + "]"; }
+
+
+    @Override
+    public String toString() { return "StreamCaching[" + getOutputs() + "]"; }
+
+}
@@ -0,0 +1,114 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import com.davidholiday.camel.harness.metrics.HarnessedRoute;
+
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.Processor;
+import org.apache.camel.StreamCache;
+import org.apache.camel.support.ServiceSupport;
+import org.apache.camel.util.AsyncProcessorConverterHelper;
+import org.apache.camel.util.AsyncProcessorHelper;
+import org.apache.camel.util.ServiceHelper;
+
+import java.io.InputStream;
+
+
+/**
+ * does for the processors it wraps what camel's route-level stream caching does for a route, with the routebuilder's
+ * own StreamCachingStage settings rather than the camel context's. an InputStream body is cached on the way in and a
+ * body that's already a StreamCache is reset, so whatever route handed it over may have read it. whatever body comes
+ * out is reset on the way out for the route it goes back to.
+ */
+class StreamCachingProcessor extends ServiceSupport implements AsyncProcessor {
+
+    private final StreamCachingStage streamCachingStage;
+
+    private final HarnessedRoute harnessedRoute;
+
+    private final AsyncProcessor cachingProcessor;
+
+
+    /**
+     *
+     * @param streamCachingStage
+     * @param harnessedRoute
+     * @param cachingProcessor
+     */
+    StreamCachingProcessor(StreamCachingStage streamCachingStage,
+                           HarnessedRoute harnessedRoute,
+                           Processor cachingProcessor) {
+
+        this.streamCachingStage = streamCachingStage;
+        this.harnessedRoute = harnessedRoute;
+        this.cachingProcessor = AsyncProcessorConverterHelper.convert(cachingProcessor);
+    }
+
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        AsyncProcessorHelper.process(this, exchange);
+    }
+
+
+    @Override
+    public boolean process(Exchange exchange, AsyncCallback callback) {
+        try {
+            Message message = exchange.getIn();
+            Object body = message.getBody();
+
+            if (body instanceof StreamCache) {
+                ((StreamCache)body).reset();
+            } else if (body instanceof InputStream) {
+                message.setBody(streamCachingStage.cache(exchange, (InputStream)body, harnessedRoute));
+            }
+
+            return cachingProcessor.process(exchange, doneSync -> {
+                reset(exchange);
+                callback.done(doneSync);
+            });
+        } catch (Throwable t) {
+            exchange.setException(t);
+            callback.done(true);
+            return true;
+        }
+    }
+
+
+    /**
+     * a body that can't be reset fails the exchange rather than the callback
+     *
+     * @param exchange
+     */
+    private static void reset(Exchange exchange) {
+        Object body = exchange.hasOut() ? exchange.getOut().getBody() : exchange.getIn().getBody();
+
+        if (body instanceof StreamCache) {
+            try {
+                ((StreamCache)body).reset();
+            } catch (RuntimeException e) {
+                exchange.setException(e);
+            }
+        }
+    }
+
+
+    @Override
+    protected void doStart() throws Exception {
+        ServiceHelper.startService(cachingProcessor);
+    }
+
+
+    @Override
+    protected void doStop() throws Exception {
+        ServiceHelper.stopService(cachingProcessor);
+    }
+
+
+    @Override
+    public String toString() { return "StreamCachingProcessor[" + harnessedRoute + "]"; }
+
+}
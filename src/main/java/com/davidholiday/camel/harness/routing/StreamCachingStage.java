@@ -0,0 +1,332 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import com.davidholiday.camel.harness.metrics.BaseIdMBeanRegistry;
+import com.davidholiday.camel.harness.metrics.HarnessedRoute;
+
+import com.netflix.config.DynamicIntProperty;
+import com.netflix.config.DynamicLongProperty;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.DynamicStringProperty;
+
+import org.apache.camel.Exchange;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * turns the InputStream bodies that reach a harnessed routebuilder's routes into SpooledStreamCaches, so they can be
+ * read more than once. a body up to the spool threshold is kept on the heap, anything bigger is spooled to a file in
+ * the spool directory. read from archaius:
+ *
+ *   [baseId].streamCache.spoolThresholdBytes
+ *   [baseId].streamCache.spoolDirectory
+ *   [baseId].streamCache.bufferSize
+ *
+ * and applied to the next body cached - the routes don't need cycling. the buffer size is what spool files are
+ * written and read through, in direct buffers the stage pools rather than allocating per body.
+ *
+ * there's one stage per base id and it outlives the routebuilder instances that use it, up until the routebuilder's
+ * routes are removed for good. each one is published over JMX under JMX_DOMAIN:type=StreamCache,name=[base id], with
+ * the heap its caches hold counted against the route that cached them.
+ */
+public class StreamCachingStage implements StreamCachingStageMXBean {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StreamCachingStage.class);
+
+    public static final String PROPERTY_PREFIX = ".streamCache.";
+
+    public static final long DEFAULT_SPOOL_THRESHOLD_BYTES = 128 * 1024;
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // what the heap array is sized to before it's grown towards the spool threshold
+    private static final int INITIAL_HEAP_CAPACITY = 8 * 1024;
+
+    // smallest buffer size the stage will use, whatever the property says
+    private static final int MIN_BUFFER_SIZE = 1024;
+
+    // base id -> its stage
+    private static final BaseIdMBeanRegistry<StreamCachingStage> STREAM_CACHING_STAGE_REGISTRY =
+            new BaseIdMBeanRegistry<>("StreamCache", StreamCachingStage::new);
+
+    private final String baseId;
+
+    private final DynamicLongProperty spoolThresholdBytesProperty;
+    private final DynamicStringProperty spoolDirectoryProperty;
+    private final DynamicIntProperty bufferSizeProperty;
+
+    private final DirectBufferPool directBufferPool = new DirectBufferPool();
+
+    private final Map<HarnessedRoute, LongAdder> heapBytesMap = new EnumMap<>(HarnessedRoute.class);
+    private final Map<HarnessedRoute, LongAdder> spooledBytesMap = new EnumMap<>(HarnessedRoute.class);
+
+    private final LongAdder inMemoryCount = new LongAdder();
+    private final LongAdder spooledCount = new LongAdder();
+    private final LongAdder cachedCount = new LongAdder();
+
+
+    /**
+     *
+     * @param baseId
+     */
+    private StreamCachingStage(String baseId) {
+        this.baseId = baseId;
+
+        DynamicPropertyFactory dynamicPropertyFactory = DynamicPropertyFactory.getInstance();
+        String propertyPrefix = baseId + PROPERTY_PREFIX;
+
+        spoolThresholdBytesProperty = dynamicPropertyFactory.getLongProperty(
+                propertyPrefix + "spoolThresholdBytes", DEFAULT_SPOOL_THRESHOLD_BYTES
+        );
+
+        spoolDirectoryProperty = dynamicPropertyFactory.getStringProperty(
+                propertyPrefix + "spoolDirectory",
+                System.getProperty("java.io.tmpdir") + File.separator + "camel-harness" + File.separator + baseId
+        );
+
+        bufferSizeProperty = dynamicPropertyFactory.getIntProperty(propertyPrefix + "bufferSize", DEFAULT_BUFFER_SIZE);
+
+        for (HarnessedRoute harnessedRoute : HarnessedRoute.values()) {
+            heapBytesMap.put(harnessedRoute, new LongAdder());
+            spooledBytesMap.put(harnessedRoute, new LongAdder());
+        }
+    }
+
+
+    /**
+     *
+     * @param baseId
+     * @return the base id's stage, set up from archaius if it hasn't got one yet
+     */
+    public static StreamCachingStage getStreamCachingStage(String baseId) {
+        return STREAM_CACHING_STAGE_REGISTRY.get(baseId);
+    }
+
+
+    /**
+     * drops the base id's stage, along with the direct buffers it has pooled, and takes it off JMX. caches it has
+     * already handed out still work - spool files are deleted when their cache is closed, as ever
+     *
+     * @param baseId
+     */
+    public static void remove(String baseId) {
+        STREAM_CACHING_STAGE_REGISTRY.remove(baseId);
+    }
+
+
+    /**
+     * reads the stream to the end and closes it
+     *
+     * @param exchange the cache is released when it completes
+     * @param inputStream
+     * @param harnessedRoute which route the cache is counted against
+     * @return
+     * @throws IOException
+     */
+    SpooledStreamCache cache(Exchange exchange, InputStream inputStream, HarnessedRoute harnessedRoute)
+            throws IOException {
+
+        long spoolThresholdBytes = Math.max(0, getSpoolThresholdBytes());
+        int heapLimit = (int)Math.min(Integer.MAX_VALUE - 8, spoolThresholdBytes + 1);
+
+        try (InputStream sourceInputStream = inputStream) {
+            // one byte more than the threshold, so a body that fills the array is known to be over it
+            byte[] bytes = new byte[Math.min(INITIAL_HEAP_CAPACITY, heapLimit)];
+            int length = 0;
+
+            while (length < heapLimit) {
+                if (length == bytes.length) {
+                    bytes = Arrays.copyOf(bytes, (int)Math.min(heapLimit, bytes.length * 2L));
+                }
+
+                int readLength = sourceInputStream.read(bytes, length, bytes.length - length);
+                if (readLength == -1) {
+                    cachedCount.increment();
+                    return cacheInMemory(exchange, bytes, length, harnessedRoute);
+                }
+
+                length += readLength;
+            }
+
+            cachedCount.increment();
+            return spool(exchange, bytes, length, sourceInputStream, harnessedRoute);
+        }
+    }
+
+
+    /**
+     *
+     * @param exchange
+     * @param bytes
+     * @param length
+     * @param harnessedRoute
+     * @return
+     */
+    private SpooledStreamCache cacheInMemory(Exchange exchange,
+                                             byte[] bytes,
+                                             int length,
+                                             HarnessedRoute harnessedRoute) {
+
+        LongAdder heapBytes = heapBytesMap.get(harnessedRoute);
+        heapBytes.add(bytes.length);
+        inMemoryCount.increment();
+
+        return SpooledStreamCache.inMemory(exchange, bytes, length, () -> {
+            heapBytes.add(-bytes.length);
+            inMemoryCount.decrement();
+        });
+    }
+
+
+    /**
+     * writes what's been read so far, then the rest of the stream, to a new spool file through a pooled direct buffer
+     *
+     * @param exchange
+     * @param bytes what's been read so far
+     * @param length
+     * @param sourceInputStream
+     * @param harnessedRoute
+     * @return
+     * @throws IOException
+     */
+    private SpooledStreamCache spool(Exchange exchange,
+                                     byte[] bytes,
+                                     int length,
+                                     InputStream sourceInputStream,
+                                     HarnessedRoute harnessedRoute) throws IOException {
+
+        int bufferSize = getBufferSize();
+
+        Path spoolDirectoryPath = Paths.get(getSpoolDirectory());
+        Files.createDirectories(spoolDirectoryPath);
+        Path spoolFilePath = Files.createTempFile(spoolDirectoryPath, baseId + "-", ".spool");
+
+        FileChannel fileChannel = FileChannel.open(
+                spoolFilePath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE
+        );
+
+        ByteBuffer writeBuffer = directBufferPool.acquire(bufferSize);
+        long spooledLength = 0;
+
+        try {
+            for (int offset = 0; offset < length; offset += writeBuffer.capacity()) {
+                writeBuffer.clear();
+                writeBuffer.put(bytes, offset, Math.min(writeBuffer.capacity(), length - offset));
+                spooledLength += write(fileChannel, writeBuffer);
+            }
+
+            ReadableByteChannel sourceChannel = Channels.newChannel(sourceInputStream);
+            while (true) {
+                writeBuffer.clear();
+                if (sourceChannel.read(writeBuffer) == -1) {
+                    break;
+                }
+
+                spooledLength += write(fileChannel, writeBuffer);
+            }
+        } catch (IOException | RuntimeException e) {
+            fileChannel.close();
+            throw e;
+        } finally {
+            directBufferPool.release(writeBuffer);
+        }
+
+        spooledBytesMap.get(harnessedRoute).add(spooledLength);
+        spooledCount.increment();
+
+        LOGGER.debug("{} spooled {} bytes to {}", baseId, spooledLength, spoolFilePath);
+        return SpooledStreamCache.spooled(
+                exchange, fileChannel, spooledLength, directBufferPool, bufferSize, spooledCount::decrement
+        );
+    }
+
+
+    /**
+     *
+     * @param fileChannel
+     * @param writeBuffer filled, not yet flipped
+     * @return how many bytes were written
+     * @throws IOException
+     */
+    private static int write(FileChannel fileChannel, ByteBuffer writeBuffer) throws IOException {
+        writeBuffer.flip();
+        int writeLength = writeBuffer.remaining();
+
+        while (writeBuffer.hasRemaining()) {
+            fileChannel.write(writeBuffer);
+        }
+
+        return writeLength;
+    }
+
+
+    @Override
+    public String getBaseId() { return baseId; }
+
+    @Override
+    public long getSpoolThresholdBytes() { return spoolThresholdBytesProperty.get(); }
+
+    @Override
+    public String getSpoolDirectory() { return spoolDirectoryProperty.get(); }
+
+    /**
+     * sizes below the minimum are clamped rather than rejected so a typo can't take the stage down
+     *
+     * @return
+     */
+    @Override
+    public int getBufferSize() { return Math.max(MIN_BUFFER_SIZE, bufferSizeProperty.get()); }
+
+    @Override
+    public Map<String, Long> getHeapBytes() { return toRouteNameMap(heapBytesMap); }
+
+    @Override
+    public Map<String, Long> getSpooledBytes() { return toRouteNameMap(spooledBytesMap); }
+
+    @Override
+    public long getInMemoryCount() { return inMemoryCount.sum(); }
+
+    @Override
+    public long getSpooledCount() { return spooledCount.sum(); }
+
+    @Override
+    public long getCachedCount() { return cachedCount.sum(); }
+
+
+    @Override
+    public void reset() {
+        spooledBytesMap.values().forEach(LongAdder::reset);
+        cachedCount.reset();
+    }
+
+
+    /**
+     *
+     * @param routeMap
+     * @return
+     */
+    private static Map<String, Long> toRouteNameMap(Map<HarnessedRoute, LongAdder> routeMap) {
+        Map<String, Long> routeNameMap = new LinkedHashMap<>();
+        routeMap.forEach((harnessedRoute, longAdder) -> routeNameMap.put(harnessedRoute.name(), longAdder.sum()));
+        return routeNameMap;
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.davidholiday.camel.harness.routing;
+
+
+import java.util.Map;
+
+
+/**
+ * stream caching state for one harnessed routebuilder as published over JMX. keyed by HarnessedRoute name, each body
+ * counted against the route that cached it
+ */
+public interface StreamCachingStageMXBean {
+
+    String getBaseId();
+
+    long getSpoolThresholdBytes();
+
+    String getSpoolDirectory();
+
+    int getBufferSize();
+
+    /**
+     * @return heap held right now by the stream caches kept in memory
+     */
+    Map<String, Long> getHeapBytes();
+
+    /**
+     * @return bytes spooled to disk since the last reset
+     */
+    Map<String, Long> getSpooledBytes();
+
+    /**
+     * @return stream caches kept in memory that are still in use
+     */
+    long getInMemoryCount();
+
+    /**
+     * @return stream caches spooled to disk that are still in use
+     */
+    long getSpooledCount();
+
+    /**
+     * @return bodies cached since the last reset
+     */
+    long getCachedCount();
+
+    /**
+     * clears the totals. what's in use right now is left alone
+     */
+    void reset();
+
+}
@@ -90,6 +90,10 @@ public abstract class HarnessedRouteBuilderTestHarness extends TestHarness {
         RouteBuilder testRouteBuilder =
                 getTestRouteBuilder(businessLogicRouteEntryName, businessLogicRouteToNameOptional);
 
+        // a lazily started routebuilder leaves its business logic route for its from-route to start, and the
+        // from-route isn't here
+        businessLogicRouteDefinition.setAutoStartup("true");
+
         context.addRoutes(testRouteBuilder);
         context.addRouteDefinition(businessLogicRouteDefinition);
 
@@ -0,0 +1,130 @@
+package com.davidholiday.camel.harness.threading;
+
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.ThreadPoolProfileBuilder;
+import org.apache.camel.spi.ExecutorServiceManager;
+import org.apache.camel.spi.ThreadPoolFactory;
+import org.apache.camel.spi.ThreadPoolProfile;
+import org.apache.camel.util.concurrent.CamelThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * camel thread pool factory that backs the PROFILE_ID thread pool profile with virtual threads and hands every other
+ * request to the factory it replaced. install it on a context with
+ *
+ *   VirtualThreadPoolFactory.install(camelContext);
+ *
+ * then point a threads block, a RouteBuilderHarness concurrency stage or a ShutDownAndRecreateRoutesRunnable at
+ * PROFILE_ID. on runtimes without virtual threads the profile is a copy of the context's default profile, so the same
+ * routes run on platform threads on java 8.
+ *
+ * scheduled pools are always platform threads - virtual threads don't help with timers.
+ */
+public class VirtualThreadPoolFactory implements ThreadPoolFactory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadPoolFactory.class);
+
+    public static final String PROFILE_ID = "harnessVirtualThreadProfile";
+
+    private final ThreadPoolFactory delegateThreadPoolFactory;
+
+
+    /**
+     *
+     * @param delegateThreadPoolFactory makes everything that isn't a PROFILE_ID pool
+     */
+    public VirtualThreadPoolFactory(ThreadPoolFactory delegateThreadPoolFactory) {
+        this.delegateThreadPoolFactory = delegateThreadPoolFactory;
+    }
+
+
+    /**
+     * registers the PROFILE_ID profile with the context and, if the runtime has virtual threads, puts this factory in
+     * front of the context's own. safe to call more than once
+     *
+     * @param camelContext
+     * @return whether PROFILE_ID pools are backed by virtual threads
+     */
+    public static synchronized boolean install(CamelContext camelContext) {
+        ExecutorServiceManager executorServiceManager = camelContext.getExecutorServiceManager();
+
+        if (executorServiceManager.getThreadPoolProfile(PROFILE_ID) == null) {
+            // copied field by field - ThreadPoolProfile.clone() copies the max pool size into the pool size
+            ThreadPoolProfile defaultProfile = executorServiceManager.getDefaultThreadPoolProfile();
+            ThreadPoolProfile threadPoolProfile =
+                    new ThreadPoolProfileBuilder(PROFILE_ID).poolSize(defaultProfile.getPoolSize())
+                                                            .maxPoolSize(defaultProfile.getMaxPoolSize())
+                                                            .keepAliveTime(defaultProfile.getKeepAliveTime(),
+                                                                           defaultProfile.getTimeUnit())
+                                                            .maxQueueSize(defaultProfile.getMaxQueueSize())
+                                                            .allowCoreThreadTimeOut(
+                                                                    defaultProfile.getAllowCoreThreadTimeOut()
+                                                            )
+                                                            .rejectedPolicy(defaultProfile.getRejectedPolicy())
+                                                            .defaultProfile(false)
+                                                            .build();
+
+            executorServiceManager.registerThreadPoolProfile(threadPoolProfile);
+        }
+
+        if (VirtualThreads.isAvailable() == false) {
+            LOGGER.info("virtual threads aren't available - {} pools will use platform threads", PROFILE_ID);
+            return false;
+        }
+
+        ThreadPoolFactory threadPoolFactory = executorServiceManager.getThreadPoolFactory();
+        if (threadPoolFactory instanceof VirtualThreadPoolFactory == false) {
+            executorServiceManager.setThreadPoolFactory(new VirtualThreadPoolFactory(threadPoolFactory));
+        }
+
+        return true;
+    }
+
+
+    @Override
+    public ExecutorService newCachedThreadPool(ThreadFactory threadFactory) {
+        return delegateThreadPoolFactory.newCachedThreadPool(threadFactory);
+    }
+
+
+    @Override
+    public ExecutorService newThreadPool(ThreadPoolProfile threadPoolProfile, ThreadFactory threadFactory) {
+        if (PROFILE_ID.equals(threadPoolProfile.getId())) {
+            return VirtualThreads.newVirtualThreadPerTaskExecutor(getThreadNamePrefix(threadFactory));
+        }
+
+        return delegateThreadPoolFactory.newThreadPool(threadPoolProfile, threadFactory);
+    }
+
+
+    @Override
+    public ScheduledExecutorService newScheduledThreadPool(ThreadPoolProfile threadPoolProfile,
+                                                           ThreadFactory threadFactory) {
+
+        return delegateThreadPoolFactory.newScheduledThreadPool(threadPoolProfile, threadFactory);
+    }
+
+
+    /**
+     * camel names the pool's threads through the thread factory it passes in, which virtual threads don't use
+     *
+     * @param threadFactory
+     * @return
+     */
+    private static String getThreadNamePrefix(ThreadFactory threadFactory) {
+        String name = threadFactory instanceof CamelThreadFactory
+                ? ((CamelThreadFactory)threadFactory).getName()
+                : PROFILE_ID;
+
+        return name + "-virtual-";
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.davidholiday.camel.harness.threading;
+
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+
+/**
+ * finds the virtual thread api by reflection so the harness can use virtual threads on runtimes that have them while
+ * still building and running on java 8. the lookups are done once, when the class loads.
+ */
+public class VirtualThreads {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+    // Thread.ofVirtual()
+    private static final Method OF_VIRTUAL_METHOD;
+
+    // Thread.Builder.name(String, long)
+    private static final Method BUILDER_NAME_METHOD;
+
+    // Thread.Builder.factory()
+    private static final Method BUILDER_FACTORY_METHOD;
+
+    // Executors.newThreadPerTaskExecutor(ThreadFactory)
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR_METHOD;
+
+    // Thread.isVirtual()
+    private static final Method IS_VIRTUAL_METHOD;
+
+    static {
+        Method ofVirtualMethod = null;
+        Method builderNameMethod = null;
+        Method builderFactoryMethod = null;
+        Method newThreadPerTaskExecutorMethod = null;
+        Method isVirtualMethod = null;
+
+        try {
+            Class<?> builderClazz = Class.forName("java.lang.Thread$Builder");
+
+            ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+            builderNameMethod = builderClazz.getMethod("name", String.class, long.class);
+            builderFactoryMethod = builderClazz.getMethod("factory");
+            newThreadPerTaskExecutorMethod =
+                    java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            isVirtualMethod = Thread.class.getMethod("isVirtual");
+
+            // preview builds have the api but throw when it's used without --enable-preview
+            ofVirtualMethod.invoke(null);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            LOGGER.debug("virtual threads aren't available on this runtime", e);
+            ofVirtualMethod = null;
+        }
+
+        OF_VIRTUAL_METHOD = ofVirtualMethod;
+        BUILDER_NAME_METHOD = builderNameMethod;
+        BUILDER_FACTORY_METHOD = builderFactoryMethod;
+        NEW_THREAD_PER_TASK_EXECUTOR_METHOD = newThreadPerTaskExecutorMethod;
+        IS_VIRTUAL_METHOD = isVirtualMethod;
+    }
+
+
+    /**
+     * @return whether the runtime can create virtual threads
+     */
+    public static boolean isAvailable() { return OF_VIRTUAL_METHOD != null; }
+
+
+    /**
+     *
+     * @param thread
+     * @return false on runtimes without virtual threads
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (isAvailable() == false) {
+            return false;
+        }
+
+        try {
+            return (Boolean)IS_VIRTUAL_METHOD.invoke(thread);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("couldn't ask " + thread + " whether it's virtual", e);
+        }
+    }
+
+
+    /**
+     * an executor that starts a new virtual thread for every task. nothing is pooled or queued, so there's nothing to
+     * size - what bounds the work is whatever the tasks block on.
+     *
+     * @param threadNamePrefix threads are named the prefix followed by a counter
+     * @return
+     * @throws UnsupportedOperationException if the runtime doesn't have virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String threadNamePrefix) {
+        if (isAvailable() == false) {
+            throw new UnsupportedOperationException("virtual threads need java 21 or later");
+        }
+
+        try {
+            Object builder = BUILDER_NAME_METHOD.invoke(OF_VIRTUAL_METHOD.invoke(null), threadNamePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory)BUILDER_FACTORY_METHOD.invoke(builder);
+            return (ExecutorService)NEW_THREAD_PER_TASK_EXECUTOR_METHOD.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("couldn't create a virtual thread executor", e);
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.davidholiday.camel.harness.test.config;
+
+
+import com.davidholiday.camel.harness.config.ArchaiusPropertiesComponent;
+
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.properties.PropertiesLocation;
+import org.apache.camel.component.properties.PropertiesResolver;
+import org.apache.camel.impl.JndiRegistry;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Properties;
+
+
+/**
+ * ensures placeholders resolve from archaius at route creation and at runtime, and that a cached resolution is
+ * dropped when one of its properties changes.
+ */
+public class ArchaiusPropertiesComponentTest extends CamelTestSupport {
+
+    private static final String ENDPOINT_PROPERTY = "archaius.test.endpoint";
+    private static final String GREETING_PROPERTY = "archaius.test.greeting";
+    private static final String FALLBACK_PROPERTY = "archaius.test.fallback";
+    private static final String LOCATION_PROPERTY = "archaius.test.location";
+
+    private static final AbstractConfiguration CONFIGURATION = ConfigurationManager.getConfigInstance();
+
+    private ArchaiusPropertiesComponent archaiusPropertiesComponent;
+
+
+    @BeforeClass
+    public static void setUpProperties() {
+        CONFIGURATION.setProperty(ENDPOINT_PROPERTY, "archaiusIn");
+        CONFIGURATION.setProperty(GREETING_PROPERTY, "hello");
+        CONFIGURATION.setProperty(FALLBACK_PROPERTY, "before");
+    }
+
+    @AfterClass
+    public static void clearProperties() {
+        CONFIGURATION.clearProperty(ENDPOINT_PROPERTY);
+        CONFIGURATION.clearProperty(GREETING_PROPERTY);
+        CONFIGURATION.clearProperty(FALLBACK_PROPERTY);
+        CONFIGURATION.clearProperty(LOCATION_PROPERTY);
+    }
+
+
+    protected JndiRegistry createRegistry() throws Exception {
+        Properties locationProperties = new Properties();
+        locationProperties.setProperty(LOCATION_PROPERTY, "from location");
+
+        JndiRegistry jndiRegistry = super.createRegistry();
+        jndiRegistry.bind("locationProperties", locationProperties);
+        return jndiRegistry;
+    }
+
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext camelContext = super.createCamelContext();
+
+        archaiusPropertiesComponent = new ArchaiusPropertiesComponent();
+        archaiusPropertiesComponent.setLocation("ref:locationProperties");
+        camelContext.addComponent("properties", archaiusPropertiesComponent);
+
+        return camelContext;
+    }
+
+    protected RouteBuilder createRouteBuilder() {
+        return new RouteBuilder() {
+            public void configure() {
+                from("direct:{{" + ENDPOINT_PROPERTY + "}}")
+                        .setBody(simple(
+                                "${properties:" + GREETING_PROPERTY + "} ${properties:archaius.test.name:world}"
+                        ));
+            }
+        };
+    }
+
+
+    @Test
+    public void placeholdersFollowArchaius() throws Exception {
+        Assert.assertEquals("hello world", template.requestBody("direct:archaiusIn", "", String.class));
+
+        CONFIGURATION.setProperty(GREETING_PROPERTY, "goodbye");
+        Assert.assertEquals("goodbye world", template.requestBody("direct:archaiusIn", "", String.class));
+
+        Assert.assertEquals(
+                "goodbye and hello",
+                context.resolvePropertyPlaceholders("{{" + GREETING_PROPERTY + "}} and {{archaius.test.other:hello}}")
+        );
+
+        Assert.assertTrue(archaiusPropertiesComponent.getPlaceholderTemplateCount() > 0);
+    }
+
+    @Test
+    public void locationsAreLookedInBeforeTheDefault() throws Exception {
+        String uri = "{{" + LOCATION_PROPERTY + ":default}}";
+        Assert.assertEquals("from location", context.resolvePropertyPlaceholders(uri));
+        Assert.assertEquals("default", context.resolvePropertyPlaceholders("{{archaius.test.nowhere:default}}"));
+
+        CONFIGURATION.setProperty(LOCATION_PROPERTY, "from archaius");
+        Assert.assertEquals("from archaius", context.resolvePropertyPlaceholders(uri));
+    }
+
+    @Test
+    public void fallbackResolutionIsKeptUntilArchaiusChanges() throws Exception {
+        String uri = "{{env:ARCHAIUS_TEST_UNSET:unset}} {{" + FALLBACK_PROPERTY + "}}";
+        Assert.assertEquals("unset before", context.resolvePropertyPlaceholders(uri));
+
+        PropertiesResolver propertiesResolver = archaiusPropertiesComponent.getPropertiesResolver();
+        List<PropertiesLocation> locationList = archaiusPropertiesComponent.getLocations();
+        Properties resolvedProperties = propertiesResolver.resolveProperties(context, false, locationList);
+        Assert.assertSame(resolvedProperties, propertiesResolver.resolveProperties(context, false, locationList));
+
+        CONFIGURATION.setProperty(FALLBACK_PROPERTY, "after");
+        Assert.assertNotSame(resolvedProperties, propertiesResolver.resolveProperties(context, false, locationList));
+        Assert.assertEquals("unset after", context.resolvePropertyPlaceholders(uri));
+    }
+
+}
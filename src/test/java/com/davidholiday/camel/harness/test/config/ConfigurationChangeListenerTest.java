@@ -0,0 +1,273 @@
+package com.davidholiday.camel.harness.test.config;
+
+
+import com.davidholiday.camel.harness.config.ConfigurationChangeListener;
+import com.davidholiday.camel.harness.config.HarnessedRouteBuilderRunnable;
+import com.davidholiday.camel.harness.metrics.ReloadMetrics;
+
+import com.netflix.config.ConcurrentCompositeConfiguration;
+import com.netflix.config.ConcurrentMapConfiguration;
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+import org.apache.commons.configuration.event.ConfigurationEvent;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * feeds archaius-style before/after property change events to the listener and checks which runnables run, and how
+ * many times.
+ *
+ * runnables are dispatched on a single thread, so they run in the order a burst dispatches them. a sentinel property
+ * changed last in a burst is dispatched after everything else the burst dispatches - once its runnable has run, so
+ * has everything ahead of it, and a runnable that hasn't run by then isn't going to.
+ */
+public class ConfigurationChangeListenerTest {
+
+    private static final long QUIET_WINDOW_MILLIS = 50;
+
+    private static final long AWAIT_TIMEOUT_MILLIS = 5000;
+
+    private static final String SENTINEL_PROPERTY_NAME = "sentinel.one";
+
+    private final AtomicInteger fooRunCount = new AtomicInteger();
+    private final AtomicInteger barRunCount = new AtomicInteger();
+    private final AtomicInteger sentinelRunCount = new AtomicInteger();
+
+    // what the sentinel property is set to next. a new value every time so every change counts
+    private int sentinelValue;
+
+    private final Map<List<String>, Runnable> propertiesNamesToRunnableMap = new HashMap<List<String>, Runnable>() {{
+        put(Arrays.asList("foo.one", "foo.two", "foo.three"), fooRunCount::incrementAndGet);
+        put(Collections.singletonList("bar.one"), barRunCount::incrementAndGet);
+        put(Collections.singletonList(SENTINEL_PROPERTY_NAME), sentinelRunCount::incrementAndGet);
+    }};
+
+    private final ConfigurationChangeListener listener =
+            new ConfigurationChangeListener(propertiesNamesToRunnableMap, QUIET_WINDOW_MILLIS, 1);
+
+
+    @After
+    public void tearDown() { listener.shutdown(); }
+
+
+    @Test
+    public void burstOfChangesRunsRunnableOnce() throws InterruptedException {
+        changeProperty("foo.one", "b");
+        changeProperty("foo.two", "b");
+        changeProperty("foo.three", "b");
+        awaitDispatched();
+
+        Assert.assertEquals("three changes in one burst should run the runnable once", 1, fooRunCount.get());
+        Assert.assertEquals("unrelated runnable shouldn't run", 0, barRunCount.get());
+    }
+
+    @Test
+    public void unchangedValueDoesNotRunRunnable() throws InterruptedException {
+        changeProperty("foo.one", "a");
+        awaitDispatched();
+
+        changeProperty("foo.one", "a");
+        changeProperty("unwatched.property", "b");
+        awaitDispatched();
+
+        Assert.assertEquals("a property set to its current value shouldn't run anything", 1, fooRunCount.get());
+    }
+
+    @Test
+    public void separateBurstsRunRunnableOncePerBurst() throws InterruptedException {
+        changeProperty("foo.one", "b");
+        changeProperty("bar.one", "b");
+        awaitDispatched();
+
+        changeProperty("foo.two", "b");
+        awaitDispatched();
+
+        Assert.assertEquals("runnable should run once per burst", 2, fooRunCount.get());
+        Assert.assertEquals("runnable should run once per burst", 1, barRunCount.get());
+    }
+
+    @Test
+    public void nonStringValuesAreHandled() throws InterruptedException {
+        changeProperty("foo.one", 5);
+        changeProperty("bar.one", 6L);
+        awaitDispatched();
+
+        changeProperty("foo.one", 5);
+        changeProperty("bar.one", null);
+        awaitDispatched();
+
+        Assert.assertEquals("unchanged integer value shouldn't run the runnable again", 1, fooRunCount.get());
+        Assert.assertEquals("cleared property should run the runnable", 2, barRunCount.get());
+    }
+
+    @Test
+    public void runnableAddedAfterConstructionRuns() throws InterruptedException {
+        AtomicInteger bazRunCount = new AtomicInteger();
+        listener.addRunnable(Arrays.asList("foo.one", "baz.one"), bazRunCount::incrementAndGet);
+
+        changeProperty("foo.one", "b");
+        awaitDispatched();
+
+        Assert.assertEquals("runnable added later should run", 1, bazRunCount.get());
+        Assert.assertEquals("runnable registered at construction should still run", 1, fooRunCount.get());
+    }
+
+    @Test
+    public void runnableThatFailsToDispatchDoesNotDropRestOfBurst() throws InterruptedException {
+        listener.addRunnable(Collections.singletonList("foo.one"), new HarnessedRouteBuilderRunnable() {
+            @Override
+            public String getBaseId() { throw new IllegalStateException("no base id"); }
+
+            @Override
+            public void run() {}
+        });
+
+        changeProperty("foo.one", "b");
+        changeProperty("bar.one", "b");
+        awaitDispatched();
+
+        Assert.assertEquals("runnable on the same property should still run", 1, fooRunCount.get());
+        Assert.assertEquals("runnable on another property should still run", 1, barRunCount.get());
+    }
+
+    @Test
+    public void reloadMetricsAreOnlyKeptForHarnessRunnablesUntilShutdown() throws InterruptedException {
+        String baseId = ConfigurationChangeListenerTest.class.getSimpleName();
+
+        listener.addRunnable(Collections.singletonList("foo.one"), new HarnessedRouteBuilderRunnable() {
+            @Override
+            public String getBaseId() { return baseId; }
+
+            @Override
+            public void run() {}
+        });
+
+        changeProperty("foo.one", "b");
+        changeProperty("bar.one", "b");
+        awaitDispatched();
+
+        Map<String, ?> harnessReloadMetricsMap = ReloadMetrics.getJmxRecorder().getHarnessReloadMetricsMap();
+        Assert.assertTrue(harnessReloadMetricsMap.containsKey(baseId));
+        Assert.assertTrue(
+                "plain runnables shouldn't be recorded under their toString()",
+                harnessReloadMetricsMap.keySet().stream().noneMatch(key -> key.contains("$$Lambda"))
+        );
+
+        listener.shutdown();
+        Assert.assertFalse(harnessReloadMetricsMap.containsKey(baseId));
+    }
+
+    @Test
+    public void propertyClearedAndRestoredInOneBurstDoesNotRunRunnable() throws InterruptedException {
+        changeProperty("foo.one", "a");
+        awaitDispatched();
+
+        changeProperty("foo.one", null);
+        changeProperty("foo.one", "a");
+        awaitDispatched();
+
+        Assert.assertEquals("a property that ends the burst where it started shouldn't run anything",
+                            1, fooRunCount.get());
+    }
+
+    @Test
+    public void bulkReloadOnlyRunsRunnablesWhosePropertiesChanged() throws InterruptedException {
+        ConcurrentMapConfiguration configuration = new ConcurrentMapConfiguration();
+        configuration.addConfigurationListener(listener);
+
+        configuration.setProperty("foo.one", "a");
+        configuration.setProperty("foo.two", "a");
+        configuration.setProperty("bar.one", "a");
+        awaitDispatched();
+
+        // the whole source replaced with one that no longer has bar.one. properties that didn't come back are only
+        // worked out once the burst is over, so a sentinel changed during the burst would be dispatched ahead of
+        // bar's runnable. bar's runnable is waited on instead and the sentinel goes in a burst of its own
+        configuration.clear();
+        configuration.setProperty("foo.one", "a");
+        configuration.setProperty("foo.two", "a");
+        awaitRunCount(barRunCount, 2);
+        awaitDispatched();
+
+        Assert.assertEquals("runnable whose properties came back unchanged shouldn't run again", 1, fooRunCount.get());
+        Assert.assertEquals("runnable whose property didn't come back should run", 2, barRunCount.get());
+    }
+
+    @Test
+    public void firstBulkReloadIsCheckedAgainstWhatTheConfigurationAlreadyHeld() throws InterruptedException {
+        ConcurrentCompositeConfiguration compositeConfiguration =
+                (ConcurrentCompositeConfiguration)ConfigurationManager.getConfigInstance();
+
+        ConcurrentMapConfiguration configuration = new ConcurrentMapConfiguration();
+        configuration.setProperty("held.one", "a");
+        configuration.setProperty("held.two", "b");
+        compositeConfiguration.addConfiguration(configuration, "heldPropertiesTest");
+
+        try {
+            AtomicInteger heldOneRunCount = new AtomicInteger();
+            AtomicInteger heldTwoRunCount = new AtomicInteger();
+            listener.addRunnable(Collections.singletonList("held.one"), heldOneRunCount::incrementAndGet);
+            listener.addRunnable(Collections.singletonList("held.two"), heldTwoRunCount::incrementAndGet);
+            configuration.addConfigurationListener(listener);
+
+            // the listener has never had an event for either property. held.one comes back as it was and held.two
+            // doesn't come back at all
+            configuration.clear();
+            configuration.setProperty("held.one", "a");
+            awaitRunCount(heldTwoRunCount, 1);
+            awaitDispatched();
+
+            Assert.assertEquals("a property that came back as it was shouldn't run anything", 0, heldOneRunCount.get());
+            Assert.assertEquals("a property the reload deleted should run its runnable", 1, heldTwoRunCount.get());
+        } finally {
+            compositeConfiguration.removeConfiguration("heldPropertiesTest");
+        }
+    }
+
+
+    /**
+     * mimics archaius, which sends the new value with both the before and the after event
+     */
+    private void changeProperty(String propertyName, Object currentValue) {
+        listener.configurationChanged(new ConfigurationEvent(
+                this, AbstractConfiguration.EVENT_SET_PROPERTY, propertyName, currentValue, true
+        ));
+
+        listener.configurationChanged(new ConfigurationEvent(
+                this, AbstractConfiguration.EVENT_SET_PROPERTY, propertyName, currentValue, false
+        ));
+    }
+
+    /**
+     * changes the sentinel property as part of the current burst and waits for its runnable to run
+     */
+    private void awaitDispatched() throws InterruptedException {
+        int expectedSentinelRunCount = sentinelRunCount.get() + 1;
+        changeProperty(SENTINEL_PROPERTY_NAME, ++sentinelValue);
+        awaitRunCount(sentinelRunCount, expectedSentinelRunCount);
+    }
+
+    private void awaitRunCount(AtomicInteger runCount, int expectedRunCount) throws InterruptedException {
+        long deadlineMillis = System.currentTimeMillis() + AWAIT_TIMEOUT_MILLIS;
+
+        while (runCount.get() < expectedRunCount) {
+            if (System.currentTimeMillis() > deadlineMillis) {
+                Assert.fail("runnable ran " + runCount.get() + " time(s), expected " + expectedRunCount);
+            }
+
+            Thread.sleep(5);
+        }
+    }
+
+}
@@ -0,0 +1,245 @@
+package com.davidholiday.camel.harness.test.config;
+
+
+import com.davidholiday.camel.harness.config.HarnessRouteCatalog;
+import com.davidholiday.camel.harness.config.ShutDownAndRecreateRoutesRunnable;
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+import com.davidholiday.camel.harness.test.config.mocks.EndpointRoute;
+import com.davidholiday.camel.harness.test.config.mocks.GenerationRoute;
+import com.davidholiday.camel.harness.threading.VirtualThreadPoolFactory;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Route;
+import org.apache.camel.ServiceStatus;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.properties.PropertiesComponent;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+
+/**
+ * ensures the catalog knows where each routebuilder's routes are live and that bulk reloads only touch the
+ * routebuilders they should, side by side.
+ */
+public class HarnessRouteCatalogTest extends CamelTestSupport {
+
+    private static final String GENERATION_BASE_ID = GenerationRoute.class.getSimpleName();
+
+    private HarnessRouteCatalog harnessRouteCatalog;
+
+
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext camelContext = super.createCamelContext();
+
+        Properties initialProperties = new Properties();
+        initialProperties.setProperty(EndpointRoute.PLACEHOLDER_PROPERTY, "placeholder");
+        camelContext.getComponent("properties", PropertiesComponent.class).setInitialProperties(initialProperties);
+
+        return camelContext;
+    }
+
+    protected RouteBuilder[] createRouteBuilders() {
+        return new RouteBuilder[] {new GenerationRoute(), new EndpointRoute()};
+    }
+
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        harnessRouteCatalog = new HarnessRouteCatalog(context, 2);
+    }
+
+
+    @Override
+    public void tearDown() throws Exception {
+        harnessRouteCatalog.shutdown();
+        super.tearDown();
+    }
+
+
+    @Test
+    public void lookupFollowsLiveRoutesAcrossSwaps() throws InterruptedException {
+        harnessRouteCatalog.register(
+                new ShutDownAndRecreateRoutesRunnable(context, GenerationRoute.class, true),
+                Collections.singletonList("generation.property")
+        );
+
+        HarnessRouteCatalog.CatalogEntry catalogEntry = harnessRouteCatalog.get(GENERATION_BASE_ID);
+        List<String> harnessRouteIdList = new GenerationRoute().getRouteIdList();
+
+        Assert.assertEquals(harnessRouteIdList, catalogEntry.getLiveRouteIdList());
+        Assert.assertTrue(catalogEntry.isStarted());
+        Assert.assertTrue(catalogEntry.getRouteStatusMap()
+                                      .values()
+                                      .stream()
+                                      .allMatch(serviceStatus -> serviceStatus == ServiceStatus.Started));
+
+        Assert.assertEquals(Collections.singletonMap(GENERATION_BASE_ID, true), harnessRouteCatalog.reloadAll());
+
+        String swapSuffix = ShutDownAndRecreateRoutesRunnable.SWAP_SUFFIX;
+        List<String> swappedRouteIdList = harnessRouteIdList.stream()
+                                                            .map(routeId -> routeId + swapSuffix)
+                                                            .collect(Collectors.toList());
+
+        Assert.assertEquals("lookup should follow the swap", swappedRouteIdList, catalogEntry.getLiveRouteIdList());
+        Assert.assertEquals(swappedRouteIdList, Arrays.asList(catalogEntry.getRouteStatusMap().keySet().toArray()));
+    }
+
+    @Test
+    public void reloadForPropertiesOnlyReloadsWatchingRouteBuilders() throws InterruptedException {
+        harnessRouteCatalog.register(
+                new ShutDownAndRecreateRoutesRunnable(context, GenerationRoute.class),
+                Collections.singletonList("generation.property")
+        );
+
+        ShutDownAndRecreateRoutesRunnable endpointRunnable =
+                new ShutDownAndRecreateRoutesRunnable(context, EndpointRoute.class);
+
+        harnessRouteCatalog.register(endpointRunnable, Collections.singletonList(EndpointRoute.PLACEHOLDER_PROPERTY));
+
+        int initialGeneration = requestGeneration();
+
+        Map<String, Boolean> reloadResultMap =
+                harnessRouteCatalog.reloadForProperties(Arrays.asList("generation.property", "unwatched.property"));
+
+        Assert.assertEquals(Collections.singletonMap(GENERATION_BASE_ID, true), reloadResultMap);
+        Assert.assertTrue("the reloaded routes should be serving traffic", requestGeneration() > initialGeneration);
+
+        Assert.assertEquals(
+                "the catalog should hand the listener the same property names",
+                Collections.singletonList(EndpointRoute.PLACEHOLDER_PROPERTY),
+                harnessRouteCatalog.getPropertiesNamesToRunnableMap()
+                                   .entrySet()
+                                   .stream()
+                                   .filter(entry -> entry.getValue() == endpointRunnable)
+                                   .findFirst()
+                                   .get()
+                                   .getKey()
+        );
+    }
+
+    @Test
+    public void reloadForPropertiesHandsTheChangedPropertiesToTheReload() throws InterruptedException {
+        EndpointRoute endpointRoute = new EndpointRoute();
+        Route liveBusinessLogicRoute = context.getRoute(endpointRoute.getBusinessLogicRouteId());
+        Route liveToRoute = context.getRoute(endpointRoute.getToRouteId());
+
+        ShutDownAndRecreateRoutesRunnable endpointRunnable =
+                new ShutDownAndRecreateRoutesRunnable(context, EndpointRoute.class);
+
+        endpointRunnable.setSelectiveCycling(true);
+        harnessRouteCatalog.register(endpointRunnable, Collections.singletonList(EndpointRoute.PLACEHOLDER_PROPERTY));
+
+        Assert.assertEquals(
+                Collections.singletonMap(EndpointRoute.class.getSimpleName(), true),
+                harnessRouteCatalog.reloadForProperties(Collections.singletonList(EndpointRoute.PLACEHOLDER_PROPERTY))
+        );
+
+        Assert.assertSame("only the route whose endpoint uses the property should've been cycled",
+                          liveBusinessLogicRoute, context.getRoute(endpointRoute.getBusinessLogicRouteId()));
+        Assert.assertNotSame(liveToRoute, context.getRoute(endpointRoute.getToRouteId()));
+    }
+
+    @Test
+    public void bulkReloadRunsOnThreadPoolProfile() throws InterruptedException {
+        VirtualThreadPoolFactory.install(context);
+        HarnessRouteCatalog profileRouteCatalog = new HarnessRouteCatalog(context, VirtualThreadPoolFactory.PROFILE_ID);
+        List<String> reloadThreadNameList = new CopyOnWriteArrayList<>();
+
+        try {
+            profileRouteCatalog.register(
+                    new ShutDownAndRecreateRoutesRunnable(context, GENERATION_BASE_ID, () -> {
+                        reloadThreadNameList.add(Thread.currentThread().getName());
+                        return new GenerationRoute();
+                    }, false),
+                    Collections.singletonList("generation.property")
+            );
+
+            Assert.assertEquals(Collections.singletonMap(GENERATION_BASE_ID, true), profileRouteCatalog.reloadAll());
+            Assert.assertTrue("the reload should've run on a camel managed thread, ran on " + reloadThreadNameList,
+                              reloadThreadNameList.stream()
+                                                  .anyMatch(threadName -> threadName.contains("HarnessRouteCatalog")));
+        } finally {
+            profileRouteCatalog.shutdown();
+        }
+    }
+
+    @Test
+    public void bulkReloadRunsRouteBuildersSideBySide() throws InterruptedException {
+        CountDownLatch constructionLatch = new CountDownLatch(2);
+        AtomicBoolean constructedSideBySide = new AtomicBoolean(true);
+        AtomicBoolean armed = new AtomicBoolean();
+
+        Supplier<RouteBuilderHarness> generationRouteSupplier =
+                awaitingSupplier(GenerationRoute::new, armed, constructionLatch, constructedSideBySide);
+
+        Supplier<RouteBuilderHarness> endpointRouteSupplier =
+                awaitingSupplier(EndpointRoute::new, armed, constructionLatch, constructedSideBySide);
+
+        harnessRouteCatalog.register(
+                new ShutDownAndRecreateRoutesRunnable(
+                        context, GenerationRoute.class.getSimpleName(), generationRouteSupplier, false
+                ),
+                Collections.singletonList("generation.property")
+        );
+
+        harnessRouteCatalog.register(
+                new ShutDownAndRecreateRoutesRunnable(
+                        context, EndpointRoute.class.getSimpleName(), endpointRouteSupplier, false
+                ),
+                Collections.singletonList(EndpointRoute.PLACEHOLDER_PROPERTY)
+        );
+
+        armed.set(true);
+        Map<String, Boolean> reloadResultMap = harnessRouteCatalog.reloadAll();
+
+        Assert.assertEquals(2, reloadResultMap.size());
+        Assert.assertTrue(reloadResultMap.values().stream().allMatch(succeeded -> succeeded));
+        Assert.assertTrue("both routebuilders should've been reloading at once", constructedSideBySide.get());
+    }
+
+
+    /**
+     * once armed, every routebuilder the supplier makes waits until the latch says the other reload got that far too
+     */
+    private static Supplier<RouteBuilderHarness> awaitingSupplier(Supplier<RouteBuilderHarness> routeBuilderSupplier,
+                                                                  AtomicBoolean armed,
+                                                                  CountDownLatch constructionLatch,
+                                                                  AtomicBoolean constructedSideBySide) {
+
+        return () -> {
+            if (armed.get()) {
+                constructionLatch.countDown();
+
+                try {
+                    if (constructionLatch.await(2, TimeUnit.SECONDS) == false) {
+                        constructedSideBySide.set(false);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return routeBuilderSupplier.get();
+        };
+    }
+
+    private int requestGeneration() {
+        return template.requestBody(GenerationRoute.ENTRY_NAME, "", Integer.class);
+    }
+
+}
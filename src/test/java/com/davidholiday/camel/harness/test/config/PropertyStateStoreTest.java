@@ -0,0 +1,88 @@
+package com.davidholiday.camel.harness.test.config;
+
+
+import com.davidholiday.camel.harness.config.PropertyStateStore;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * ensures the store reports each change exactly once, including when updates race each other.
+ */
+public class PropertyStateStoreTest {
+
+    private final PropertyStateStore propertyStateStore = new PropertyStateStore();
+
+
+    @Test
+    public void changesAreVersioned() {
+        Assert.assertTrue("first value seen counts as a change", propertyStateStore.update("foo", "a"));
+        Assert.assertFalse("same value isn't a change", propertyStateStore.update("foo", "a"));
+        Assert.assertTrue("different value is a change", propertyStateStore.update("foo", "b"));
+        Assert.assertTrue("array value is a change", propertyStateStore.update("foo", new String[] {"a", "b"}));
+        Assert.assertFalse("equal array isn't a change", propertyStateStore.update("foo", new String[] {"a", "b"}));
+
+        Assert.assertEquals(3, propertyStateStore.getVersion("foo"));
+        Assert.assertEquals(0, propertyStateStore.getVersion("bar"));
+    }
+
+    @Test
+    public void getAndUpdateHandsBackWhatItReplaced() {
+        Assert.assertSame(PropertyStateStore.ABSENT, propertyStateStore.getAndUpdate("foo", "a"));
+        Assert.assertSame(PropertyStateStore.UNCHANGED, propertyStateStore.getAndUpdate("foo", "a"));
+        Assert.assertEquals("a", propertyStateStore.getAndUpdate("foo", null));
+        Assert.assertNull(propertyStateStore.getAndUpdate("foo", "b"));
+
+        Assert.assertFalse("a value seen since shouldn't be overwritten",
+                           propertyStateStore.updateIfAbsent("foo", "c"));
+        Assert.assertTrue(propertyStateStore.updateIfAbsent("bar", null));
+        Assert.assertEquals("b", propertyStateStore.getValue("foo"));
+        Assert.assertSame(PropertyStateStore.UNCHANGED, propertyStateStore.getAndUpdate("bar", null));
+    }
+
+    @Test
+    public void racingUpdatesReportOneChangePerVersion() throws InterruptedException {
+        int threadCount = 8;
+        int updatesPerThread = 10000;
+        AtomicInteger reportedChangeCount = new AtomicInteger();
+        CountDownLatch startLatch = new CountDownLatch(1);
+        List<Thread> threadList = new ArrayList<>();
+
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                for (int j = 0; j < updatesPerThread; j++) {
+                    if (propertyStateStore.update("foo", j % 3)) {
+                        reportedChangeCount.incrementAndGet();
+                    }
+                }
+            });
+
+            thread.start();
+            threadList.add(thread);
+        }
+
+        startLatch.countDown();
+        for (Thread thread : threadList) {
+            thread.join();
+        }
+
+        Assert.assertEquals(
+                "every reported change should have produced exactly one new version",
+                reportedChangeCount.get(),
+                propertyStateStore.getVersion("foo")
+        );
+    }
+
+}
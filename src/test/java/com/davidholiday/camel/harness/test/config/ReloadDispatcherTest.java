@@ -0,0 +1,118 @@
+package com.davidholiday.camel.harness.test.config;
+
+
+import com.davidholiday.camel.harness.config.HarnessedRouteBuilderRunnable;
+import com.davidholiday.camel.harness.config.ReloadDispatcher;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * ensures the dispatcher serializes runnables per base id, runs different base ids side by side, and drops duplicates
+ * that are already waiting their turn.
+ */
+public class ReloadDispatcherTest {
+
+    private final ReloadDispatcher reloadDispatcher = new ReloadDispatcher(ReloadDispatcher.DEFAULT_POOL_SIZE);
+
+
+    @After
+    public void tearDown() { reloadDispatcher.shutdown(); }
+
+
+    @Test
+    public void sameBaseIdRunsSerially() throws InterruptedException {
+        AtomicInteger activeCount = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch doneLatch = new CountDownLatch(3);
+
+        for (int i = 0; i < 3; i++) {
+            reloadDispatcher.dispatch(harnessedRouteBuilderRunnable("foo", () -> {
+                if (activeCount.incrementAndGet() > 1) {
+                    overlapped.set(true);
+                }
+
+                sleep(50);
+                activeCount.decrementAndGet();
+                doneLatch.countDown();
+            }));
+        }
+
+        Assert.assertTrue("all runnables should run", doneLatch.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse("runnables for the same base id shouldn't overlap", overlapped.get());
+    }
+
+    @Test
+    public void differentBaseIdsRunInParallel() throws InterruptedException {
+        CountDownLatch barRunningLatch = new CountDownLatch(1);
+        CountDownLatch fooSawBarLatch = new CountDownLatch(1);
+
+        reloadDispatcher.dispatch(harnessedRouteBuilderRunnable("foo", () -> {
+            try {
+                if (barRunningLatch.await(5, TimeUnit.SECONDS)) {
+                    fooSawBarLatch.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        reloadDispatcher.dispatch(harnessedRouteBuilderRunnable("bar", barRunningLatch::countDown));
+
+        Assert.assertTrue(
+                "runnable for one base id should run while another base id's runnable is running",
+                fooSawBarLatch.await(5, TimeUnit.SECONDS)
+        );
+    }
+
+    @Test
+    public void duplicateWaitingRunnableIsDropped() throws InterruptedException {
+        CountDownLatch gateLatch = new CountDownLatch(1);
+        CountDownLatch blockerRunningLatch = new CountDownLatch(1);
+
+        reloadDispatcher.dispatch(harnessedRouteBuilderRunnable("foo", () -> {
+            blockerRunningLatch.countDown();
+            try {
+                gateLatch.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+
+        Assert.assertTrue(blockerRunningLatch.await(5, TimeUnit.SECONDS));
+
+        HarnessedRouteBuilderRunnable waitingRunnable = harnessedRouteBuilderRunnable("foo", () -> {});
+        reloadDispatcher.dispatch(waitingRunnable);
+        reloadDispatcher.dispatch(waitingRunnable);
+
+        Assert.assertEquals("duplicate of a waiting runnable should be dropped", 1, reloadDispatcher.getQueueDepth("foo"));
+        gateLatch.countDown();
+    }
+
+
+    private static HarnessedRouteBuilderRunnable harnessedRouteBuilderRunnable(String baseId, Runnable runnable) {
+        return new HarnessedRouteBuilderRunnable() {
+            @Override
+            public String getBaseId() { return baseId; }
+
+            @Override
+            public void run() { runnable.run(); }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,342 @@
+package com.davidholiday.camel.harness.test.config;
+
+
+import com.davidholiday.camel.harness.config.ShutDownAndRecreateRoutesRunnable;
+import com.davidholiday.camel.harness.metrics.JmxReloadMetricsRecorder;
+import com.davidholiday.camel.harness.routing.ConcurrencyStage;
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+import com.davidholiday.camel.harness.test.config.mocks.EndpointRoute;
+import com.davidholiday.camel.harness.test.config.mocks.GenerationRoute;
+import com.davidholiday.camel.harness.test.routes.mocks.LimitedRoute;
+import com.davidholiday.camel.harness.threading.VirtualThreadPoolFactory;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Route;
+import org.apache.camel.ServiceStatus;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.component.properties.PropertiesComponent;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * ensures both ways of recreating harnessed routes leave a working route set behind and that swap mode alternates
+ * between the plain and the suffixed route ids.
+ */
+public class ShutDownAndRecreateRoutesRunnableTest extends CamelTestSupport {
+
+    private static final String FROM_ROUTE_ID = GenerationRoute.class.getSimpleName()
+                                                    + RouteBuilderHarness.FROM_ROUTE_ID_SUFFIX;
+
+    private static final String SWAP_FROM_ROUTE_ID = FROM_ROUTE_ID + ShutDownAndRecreateRoutesRunnable.SWAP_SUFFIX;
+
+    @SuppressWarnings("unchecked")
+    private static final Class<RouteBuilderHarness> GENERATION_ROUTE_CLAZZ =
+            (Class<RouteBuilderHarness>)(Class<?>)GenerationRoute.class;
+
+
+    protected CamelContext createCamelContext() throws Exception {
+        CamelContext camelContext = super.createCamelContext();
+
+        Properties initialProperties = new Properties();
+        initialProperties.setProperty(EndpointRoute.PLACEHOLDER_PROPERTY, "placeholder");
+        camelContext.getComponent("properties", PropertiesComponent.class).setInitialProperties(initialProperties);
+
+        return camelContext;
+    }
+
+    protected RouteBuilder[] createRouteBuilders() {
+        return new RouteBuilder[] {new GenerationRoute(), new EndpointRoute()};
+    }
+
+
+    @Test
+    public void cycleRoutesHappyPath() {
+        ShutDownAndRecreateRoutesRunnable runnable =
+                new ShutDownAndRecreateRoutesRunnable(context, GENERATION_ROUTE_CLAZZ);
+
+        // constructing the runnable creates a routebuilder to learn its base id
+        int initialGeneration = GenerationRoute.getLatestGeneration();
+        runnable.run();
+
+        Assert.assertEquals(
+                "the recreated route set should be serving traffic",
+                initialGeneration + 1,
+                requestGeneration()
+        );
+
+        Assert.assertNotNull("cycled routes should keep the harness route ids", context.getRoute(FROM_ROUTE_ID));
+    }
+
+    @Test
+    public void swapRoutesHappyPath() throws InterruptedException {
+        ShutDownAndRecreateRoutesRunnable runnable =
+                new ShutDownAndRecreateRoutesRunnable(context, GENERATION_ROUTE_CLAZZ, true);
+
+        int initialGeneration = GenerationRoute.getLatestGeneration();
+        runnable.run();
+
+        Assert.assertEquals(
+                "the swapped in route set should be serving traffic",
+                initialGeneration + 1,
+                requestGeneration()
+        );
+
+        Assert.assertNotNull("swapped in routes should use the suffixed ids", context.getRoute(SWAP_FROM_ROUTE_ID));
+        waitForRouteRemoval(FROM_ROUTE_ID);
+
+        runnable.run();
+
+        Assert.assertEquals(
+                "the second swap should put a new route set back under the harness route ids",
+                initialGeneration + 2,
+                requestGeneration()
+        );
+
+        Assert.assertNotNull("second swap should use the harness route ids", context.getRoute(FROM_ROUTE_ID));
+        waitForRouteRemoval(SWAP_FROM_ROUTE_ID);
+    }
+
+    @Test
+    public void swapRoutesDrainsOnThreadPoolProfile() throws InterruptedException {
+        VirtualThreadPoolFactory.install(context);
+
+        ShutDownAndRecreateRoutesRunnable runnable =
+                new ShutDownAndRecreateRoutesRunnable(context, GENERATION_ROUTE_CLAZZ, true);
+
+        int initialGeneration = GenerationRoute.getLatestGeneration();
+        runnable.setThreadPoolProfileId(VirtualThreadPoolFactory.PROFILE_ID);
+        runnable.run();
+
+        Assert.assertEquals(
+                "the swapped in route set should be serving traffic",
+                initialGeneration + 1,
+                requestGeneration()
+        );
+
+        waitForRouteRemoval(FROM_ROUTE_ID);
+    }
+
+    @Test
+    public void drainWaitsForInflightExchange() throws Exception {
+        int liveGeneration = requestGeneration();
+        ShutDownAndRecreateRoutesRunnable runnable =
+                new ShutDownAndRecreateRoutesRunnable(context, GENERATION_ROUTE_CLAZZ);
+
+        int initialGeneration = GenerationRoute.getLatestGeneration();
+        runnable.setDrainTimeout(5, TimeUnit.SECONDS);
+
+        Future<Integer> inflightFuture = requestGenerationAsync(300);
+        Thread.sleep(100);
+        runnable.run();
+
+        Assert.assertEquals(
+                "in-flight exchange should be allowed to finish on the old route set",
+                liveGeneration,
+                (int)inflightFuture.get(5, TimeUnit.SECONDS)
+        );
+
+        Assert.assertEquals(1, runnable.getLastDrainResult().getDrainedCount());
+        Assert.assertEquals(0, runnable.getLastDrainResult().getTimedOutCount());
+        Assert.assertEquals(initialGeneration + 1, requestGeneration());
+    }
+
+    @Test
+    public void drainGivesUpAtDeadline() throws Exception {
+        ShutDownAndRecreateRoutesRunnable runnable =
+                new ShutDownAndRecreateRoutesRunnable(context, GENERATION_ROUTE_CLAZZ);
+
+        runnable.setDrainTimeout(200, TimeUnit.MILLISECONDS);
+
+        requestGenerationAsync(2000);
+        Thread.sleep(100);
+
+        long startNanos = System.nanoTime();
+        runnable.run();
+        long runMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+        Assert.assertEquals(0, runnable.getLastDrainResult().getDrainedCount());
+        Assert.assertEquals(1, runnable.getLastDrainResult().getTimedOutCount());
+        Assert.assertTrue("reload shouldn't wait on the exchange past the deadline, took " + runMillis,
+                          runMillis < 1500);
+    }
+
+    @Test
+    public void supplierIsCalledOncePerReload() {
+        int initialGeneration = requestGeneration();
+        AtomicInteger supplyCount = new AtomicInteger();
+
+        ShutDownAndRecreateRoutesRunnable runnable =
+                new ShutDownAndRecreateRoutesRunnable(context, GenerationRoute.class.getSimpleName(), () -> {
+                    supplyCount.incrementAndGet();
+                    return new GenerationRoute();
+                }, false);
+
+        runnable.run();
+        runnable.run();
+
+        Assert.assertEquals(2, supplyCount.get());
+        Assert.assertEquals(initialGeneration + 2, requestGeneration());
+    }
+
+    @Test
+    public void removeRoutesReleasesWhatTheBaseIdKept() throws Exception {
+        LimitedRoute limitedRoute = new LimitedRoute();
+        context.addRoutes(limitedRoute);
+        Assert.assertEquals("done", template.requestBody(LimitedRoute.ENTRY_NAME, ""));
+
+        String baseId = limitedRoute.getBaseId();
+        ExecutorService concurrencyStageExecutorService =
+                ConcurrencyStage.getConcurrencyStage(baseId).getExecutorService();
+
+        ShutDownAndRecreateRoutesRunnable runnable = new ShutDownAndRecreateRoutesRunnable(context, LimitedRoute.class);
+        Assert.assertTrue(runnable.removeRoutes());
+
+        for (String routeId : limitedRoute.getRouteIdList()) {
+            Assert.assertNull("route " + routeId + " should be gone", context.getRoute(routeId));
+        }
+
+        Assert.assertTrue("the concurrency stage's threads should be let go",
+                          concurrencyStageExecutorService.isShutdown());
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        for (String mBeanType : new String[] {"ConcurrencyLimiter", "RouteMetrics"}) {
+            ObjectName objectName = new ObjectName(
+                    JmxReloadMetricsRecorder.JMX_DOMAIN + ":type=" + mBeanType + ",name=" + ObjectName.quote(baseId)
+            );
+
+            Assert.assertFalse(mBeanType + " should be taken off JMX", mBeanServer.isRegistered(objectName));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void classWithoutNoArgConstructorIsRejectedUpFront() {
+        new ShutDownAndRecreateRoutesRunnable(context, NoNoArgConstructorRoute.class);
+    }
+
+
+    @Test
+    public void selectiveCyclingOnlyCyclesRoutesWhoseEndpointsChanged() throws InterruptedException {
+        EndpointRoute endpointRoute = new EndpointRoute();
+        Route liveFromRoute = context.getRoute(endpointRoute.getFromRouteId());
+        Route liveBusinessLogicRoute = context.getRoute(endpointRoute.getBusinessLogicRouteId());
+        Route liveToRoute = context.getRoute(endpointRoute.getToRouteId());
+        int liveGeneration = template.requestBody(EndpointRoute.ENTRY_NAME, "", Integer.class);
+
+        ShutDownAndRecreateRoutesRunnable runnable =
+                new ShutDownAndRecreateRoutesRunnable(context, EndpointRoute.class);
+
+        runnable.setSelectiveCycling(true);
+        EndpointRoute.RESOLVED_ENDPOINT.set("mock:resolvedB");
+        runnable.run();
+
+        Assert.assertSame(liveFromRoute, context.getRoute(endpointRoute.getFromRouteId()));
+        Assert.assertSame(liveBusinessLogicRoute, context.getRoute(endpointRoute.getBusinessLogicRouteId()));
+        Assert.assertNotSame(liveToRoute, context.getRoute(endpointRoute.getToRouteId()));
+
+        MockEndpoint resolvedMockEndpoint = getMockEndpoint("mock:resolvedB");
+        resolvedMockEndpoint.expectedMessageCount(1);
+
+        Assert.assertEquals(
+                "the business logic route shouldn't have been recreated",
+                liveGeneration,
+                (int)template.requestBody(EndpointRoute.ENTRY_NAME, "", Integer.class)
+        );
+
+        resolvedMockEndpoint.assertIsSatisfied();
+    }
+
+    @Test
+    public void selectiveCyclingDrainsThroughTheFromRoute() throws InterruptedException {
+        EndpointRoute endpointRoute = new EndpointRoute();
+        Route liveFromRoute = context.getRoute(endpointRoute.getFromRouteId());
+
+        ShutDownAndRecreateRoutesRunnable runnable =
+                new ShutDownAndRecreateRoutesRunnable(context, EndpointRoute.class);
+
+        runnable.setSelectiveCycling(true);
+        runnable.setDrainTimeout(5, TimeUnit.SECONDS);
+        EndpointRoute.RESOLVED_ENDPOINT.set("mock:resolvedDrained");
+        runnable.run();
+
+        // only the to-route is cycled. it's the from-route that has to be held back while it drains, and the
+        // from-route has to take traffic again once it's back
+        Assert.assertSame(liveFromRoute, context.getRoute(endpointRoute.getFromRouteId()));
+        Assert.assertEquals(ServiceStatus.Started, context.getRouteStatus(endpointRoute.getFromRouteId()));
+        Assert.assertEquals(0, runnable.getLastDrainResult().getTimedOutCount());
+
+        MockEndpoint resolvedMockEndpoint = getMockEndpoint("mock:resolvedDrained");
+        resolvedMockEndpoint.expectedMessageCount(1);
+        template.requestBody(EndpointRoute.ENTRY_NAME, "");
+        resolvedMockEndpoint.assertIsSatisfied();
+    }
+
+    @Test
+    public void selectiveCyclingFollowsPlaceholders() {
+        EndpointRoute endpointRoute = new EndpointRoute();
+        Route liveBusinessLogicRoute = context.getRoute(endpointRoute.getBusinessLogicRouteId());
+        Route liveToRoute = context.getRoute(endpointRoute.getToRouteId());
+
+        ShutDownAndRecreateRoutesRunnable runnable =
+                new ShutDownAndRecreateRoutesRunnable(context, EndpointRoute.class);
+
+        runnable.setSelectiveCycling(true);
+        runnable.propertiesChanged(Collections.singletonList(EndpointRoute.PLACEHOLDER_PROPERTY));
+        runnable.run();
+
+        Assert.assertSame(liveBusinessLogicRoute, context.getRoute(endpointRoute.getBusinessLogicRouteId()));
+        Assert.assertNotSame(liveToRoute, context.getRoute(endpointRoute.getToRouteId()));
+
+        liveToRoute = context.getRoute(endpointRoute.getToRouteId());
+        runnable.propertiesChanged(Collections.singletonList("not.referenced.by.any.endpoint"));
+        runnable.run();
+
+        Assert.assertNotSame(
+                "a change that can't be tied to an endpoint should cycle every route",
+                liveBusinessLogicRoute,
+                context.getRoute(endpointRoute.getBusinessLogicRouteId())
+        );
+
+        Assert.assertNotSame(liveToRoute, context.getRoute(endpointRoute.getToRouteId()));
+    }
+
+
+    private int requestGeneration() {
+        return template.requestBody(GenerationRoute.ENTRY_NAME, "", Integer.class);
+    }
+
+    private Future<Integer> requestGenerationAsync(long sleepMillis) {
+        return template.asyncRequestBodyAndHeader(
+                GenerationRoute.ENTRY_NAME, "", GenerationRoute.SLEEP_MILLIS_HEADER, sleepMillis, Integer.class
+        );
+    }
+
+    private void waitForRouteRemoval(String routeId) throws InterruptedException {
+        for (int i = 0; i < 50 && context.getRoute(routeId) != null; i++) {
+            Thread.sleep(100);
+        }
+
+        Assert.assertNull("retired route should be removed in the background", context.getRoute(routeId));
+    }
+
+
+    public static class NoNoArgConstructorRoute extends GenerationRoute {
+        public NoNoArgConstructorRoute(String ignored) { super(); }
+    }
+
+}
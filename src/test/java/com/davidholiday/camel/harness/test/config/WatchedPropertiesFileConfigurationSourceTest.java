@@ -0,0 +1,123 @@
+package com.davidholiday.camel.harness.test.config;
+
+
+import com.davidholiday.camel.harness.config.WatchedPropertiesFileConfigurationSource;
+
+import com.netflix.config.ConcurrentCompositeConfiguration;
+import com.netflix.config.ConfigurationManager;
+import com.netflix.config.DynamicPropertyFactory;
+import com.netflix.config.DynamicStringProperty;
+import com.netflix.config.DynamicWatchedConfiguration;
+
+import org.apache.commons.configuration.event.ConfigurationListener;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * ensures an edit to a watched properties file reaches archaius without polling and only for the keys that changed.
+ */
+public class WatchedPropertiesFileConfigurationSourceTest {
+
+    private static final String CONFIGURATION_NAME = "watchedPropertiesTest";
+
+    private final ConcurrentCompositeConfiguration configuration =
+            (ConcurrentCompositeConfiguration)ConfigurationManager.getConfigInstance();
+
+    private final List<String> changedPropertyNameList = new CopyOnWriteArrayList<>();
+
+    private final ConfigurationListener recordingListener = event -> {
+        if (event.isBeforeUpdate() == false && event.getPropertyName() != null) {
+            changedPropertyNameList.add(event.getPropertyName());
+        }
+    };
+
+    private Path propertiesPath;
+
+    private WatchedPropertiesFileConfigurationSource source;
+
+
+    @Before
+    public void setUp() throws IOException {
+        propertiesPath = Files.createTempDirectory("watched").resolve("app.properties");
+        writeProperties("watched.test.host=a\nwatched.test.port=1\n");
+
+        source = new WatchedPropertiesFileConfigurationSource(propertiesPath);
+        configuration.addConfiguration(new DynamicWatchedConfiguration(source), CONFIGURATION_NAME);
+        configuration.addConfigurationListener(recordingListener);
+        source.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        source.close();
+        configuration.removeConfigurationListener(recordingListener);
+        configuration.removeConfiguration(CONFIGURATION_NAME);
+    }
+
+
+    @Test
+    public void editIsPushedForChangedKeysOnly() throws Exception {
+        DynamicStringProperty hostProperty =
+                DynamicPropertyFactory.getInstance().getStringProperty("watched.test.host", null);
+
+        Assert.assertEquals("a", hostProperty.get());
+
+        long startNanos = System.nanoTime();
+        writeProperties("watched.test.host=b\nwatched.test.port=1\nwatched.test.added=x\n");
+
+        for (int i = 0; i < 100 && "a".equals(hostProperty.get()); i++) {
+            Thread.sleep(20);
+        }
+
+        Assert.assertEquals("b", hostProperty.get());
+        Assert.assertTrue(
+                "the change should arrive well inside a polling interval",
+                System.nanoTime() - startNanos < 2_000_000_000L
+        );
+
+        Assert.assertTrue(changedPropertyNameList.contains("watched.test.host"));
+        Assert.assertTrue(changedPropertyNameList.contains("watched.test.added"));
+        Assert.assertFalse(
+                "an unchanged key shouldn't fire an event",
+                changedPropertyNameList.contains("watched.test.port")
+        );
+    }
+
+    @Test
+    public void malformedFileKeepsLastContentsAndWatchingCarriesOn() throws Exception {
+        DynamicStringProperty hostProperty =
+                DynamicPropertyFactory.getInstance().getStringProperty("watched.test.host", null);
+
+        // a broken unicode escape is enough to make Properties.load() give up on the whole file
+        writeProperties("watched.test.host=\\uZZZZ\nwatched.test.port=2\n");
+        source.refresh();
+
+        Assert.assertEquals("a", hostProperty.get());
+        Assert.assertEquals("a", source.getCurrentData().get("watched.test.host"));
+
+        writeProperties("watched.test.host=c\nwatched.test.port=1\n");
+
+        for (int i = 0; i < 100 && "c".equals(hostProperty.get()) == false; i++) {
+            Thread.sleep(20);
+        }
+
+        Assert.assertEquals("the watch thread should've survived the malformed file", "c", hostProperty.get());
+    }
+
+
+    private void writeProperties(String contents) throws IOException {
+        Files.write(propertiesPath, contents.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.davidholiday.camel.harness.test.config.mocks;
+
+
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * request/reply route with a to-route. the to-route sends to a mock endpoint whose name is resolved when the
+ * routebuilder is constructed (like a connection string read with DynamicPropertyHelpers) and to a second mock
+ * endpoint named by the PLACEHOLDER_PROPERTY placeholder. the reply is the generation of the routebuilder instance
+ * whose business logic route handled the exchange.
+ */
+public class EndpointRoute extends RouteBuilderHarness {
+
+    public static final String ENTRY_NAME = "direct:endpointIn";
+
+    public static final String PLACEHOLDER_PROPERTY = "endpoint.placeholder";
+
+    // what the next routebuilder instance will resolve its to-route's first endpoint to
+    public static final AtomicReference<String> RESOLVED_ENDPOINT = new AtomicReference<>("mock:resolvedA");
+
+    private static final AtomicInteger GENERATION_COUNTER = new AtomicInteger();
+
+    private static final String NAME = EndpointRoute.class.getSimpleName();
+
+    private final int generation = GENERATION_COUNTER.incrementAndGet();
+
+    private final String resolvedEndpoint = RESOLVED_ENDPOINT.get();
+
+
+    public EndpointRoute() { super(NAME, true); }
+
+
+    public void configure() throws Exception {
+        from(ENTRY_NAME).routeId(FROM_ROUTE_ID)
+                        .to(BUSINESS_LOGIC_ROUTE_FROM_NAME);
+
+        from(BUSINESS_LOGIC_ROUTE_FROM_NAME).routeId(BUSINESS_LOGIC_ROUTE_ID)
+                                            .description(BUSINESS_LOGIC_ROUTE_DESCRIPTION)
+                                            .setBody(constant(generation))
+                                            .to(BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL.get());
+
+        from(BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL.get()).routeId(TO_ROUTE_ID)
+                                                         .to(resolvedEndpoint)
+                                                         .to("mock:{{" + PLACEHOLDER_PROPERTY + "}}");
+    }
+
+}
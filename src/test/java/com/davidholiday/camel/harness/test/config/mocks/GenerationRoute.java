@@ -0,0 +1,49 @@
+package com.davidholiday.camel.harness.test.config.mocks;
+
+
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * request/reply route that answers with the generation of the routebuilder instance that handled the exchange. every
+ * time the route is recreated the generation goes up by one so tests can tell which route set served a request. if
+ * the SLEEP_MILLIS_HEADER is set the business logic route sleeps that long first so tests can keep an exchange in
+ * flight.
+ */
+public class GenerationRoute extends RouteBuilderHarness {
+
+    public static final String ENTRY_NAME = "direct:generationIn";
+
+    public static final String SLEEP_MILLIS_HEADER = "sleepMillis";
+
+    private static final AtomicInteger GENERATION_COUNTER = new AtomicInteger();
+
+    private static final String NAME = GenerationRoute.class.getSimpleName();
+
+    private final int generation = GENERATION_COUNTER.incrementAndGet();
+
+
+    public GenerationRoute() { super(NAME, false); }
+
+
+    /**
+     * @return the generation of the most recently constructed instance, whether or not its routes are live
+     */
+    public static int getLatestGeneration() { return GENERATION_COUNTER.get(); }
+
+
+    public void configure() throws Exception {
+        from(ENTRY_NAME).routeId(FROM_ROUTE_ID)
+                        .to(BUSINESS_LOGIC_ROUTE_FROM_NAME);
+
+        from(BUSINESS_LOGIC_ROUTE_FROM_NAME).routeId(BUSINESS_LOGIC_ROUTE_ID)
+                                            .description(BUSINESS_LOGIC_ROUTE_DESCRIPTION)
+                                            .process(exchange -> Thread.sleep(
+                                                    exchange.getIn().getHeader(SLEEP_MILLIS_HEADER, 0L, Long.class)
+                                            ))
+                                            .setBody(constant(generation));
+    }
+
+}
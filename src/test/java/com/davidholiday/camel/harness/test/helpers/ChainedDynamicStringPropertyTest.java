@@ -0,0 +1,86 @@
+package com.davidholiday.camel.harness.test.helpers;
+
+
+import com.davidholiday.camel.harness.helpers.ChainedDynamicStringProperty;
+import com.davidholiday.camel.harness.helpers.DynamicPropertyHelpers;
+
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * ensures the chain follows whichever of its properties is set, including after it was created.
+ */
+public class ChainedDynamicStringPropertyTest {
+
+    private static final String FIRST = "chain.test.first";
+    private static final String SECOND = "chain.test.second";
+    private static final String THIRD = "chain.test.third";
+
+    private final AbstractConfiguration configuration = ConfigurationManager.getConfigInstance();
+
+
+    @After
+    public void tearDown() {
+        configuration.clearProperty(FIRST);
+        configuration.clearProperty(SECOND);
+        configuration.clearProperty(THIRD);
+    }
+
+
+    @Test
+    public void followsChangesToAnyLink() {
+        configuration.setProperty(THIRD, "three");
+
+        ChainedDynamicStringProperty chainedProperty =
+                DynamicPropertyHelpers.getChainedDynamicStringProperty(FIRST, SECOND, THIRD);
+
+        AtomicInteger callbackCount = new AtomicInteger();
+        chainedProperty.addCallback(callbackCount::incrementAndGet);
+
+        Assert.assertEquals("three", chainedProperty.get());
+        Assert.assertEquals(THIRD, chainedProperty.getResolvedPropertyName());
+
+        configuration.setProperty(FIRST, "one");
+        Assert.assertEquals("a link set after the chain was created should take over", "one", chainedProperty.get());
+
+        configuration.setProperty(SECOND, "two");
+        Assert.assertEquals("a lower priority link shouldn't take over", "one", chainedProperty.get());
+
+        configuration.clearProperty(FIRST);
+        Assert.assertEquals("clearing a link should fall through to the next", "two", chainedProperty.get());
+
+        configuration.clearProperty(SECOND);
+        configuration.clearProperty(THIRD);
+        Assert.assertEquals("", chainedProperty.get());
+        Assert.assertNull(chainedProperty.getResolvedPropertyName());
+
+        Assert.assertEquals("callbacks should fire once per change of the resolved value", 4, callbackCount.get());
+    }
+
+
+    @Test
+    public void closedChainStopsFollowingChanges() {
+        configuration.setProperty(SECOND, "two");
+
+        ChainedDynamicStringProperty chainedProperty =
+                DynamicPropertyHelpers.getChainedDynamicStringProperty(FIRST, SECOND);
+
+        AtomicInteger callbackCount = new AtomicInteger();
+        chainedProperty.addCallback(callbackCount::incrementAndGet);
+
+        chainedProperty.close();
+        configuration.setProperty(FIRST, "one");
+
+        Assert.assertEquals("a closed chain should keep its last value", "two", chainedProperty.get());
+        Assert.assertEquals(0, callbackCount.get());
+    }
+
+}
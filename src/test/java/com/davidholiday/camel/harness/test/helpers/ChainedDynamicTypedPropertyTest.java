@@ -0,0 +1,96 @@
+package com.davidholiday.camel.harness.test.helpers;
+
+
+import com.davidholiday.camel.harness.helpers.ChainedDynamicBooleanProperty;
+import com.davidholiday.camel.harness.helpers.ChainedDynamicDurationProperty;
+import com.davidholiday.camel.harness.helpers.ChainedDynamicIntProperty;
+import com.davidholiday.camel.harness.helpers.ChainedDynamicListProperty;
+import com.davidholiday.camel.harness.helpers.DynamicPropertyHelpers;
+
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+
+/**
+ * ensures the typed chained properties parse their values, skip links whose values don't parse and keep up with
+ * changes.
+ */
+public class ChainedDynamicTypedPropertyTest {
+
+    private static final String FIRST = "typed.test.first";
+    private static final String SECOND = "typed.test.second";
+
+    private final AbstractConfiguration configuration = ConfigurationManager.getConfigInstance();
+
+
+    @After
+    public void tearDown() {
+        configuration.clearProperty(FIRST);
+        configuration.clearProperty(SECOND);
+    }
+
+
+    @Test
+    public void intSkipsUnparseableLinks() {
+        ChainedDynamicIntProperty intProperty = DynamicPropertyHelpers.getChainedDynamicIntProperty(7, FIRST, SECOND);
+        Assert.assertEquals(7, intProperty.get());
+
+        configuration.setProperty(SECOND, "42");
+        Assert.assertEquals(42, intProperty.get());
+
+        configuration.setProperty(FIRST, "not a number");
+        Assert.assertEquals("an unparseable link should be skipped", 42, intProperty.get());
+        Assert.assertEquals(SECOND, intProperty.getResolvedPropertyName());
+
+        configuration.setProperty(FIRST, " 13 ");
+        Assert.assertEquals(13, intProperty.get());
+    }
+
+    @Test
+    public void booleanOnlyAcceptsTrueOrFalse() {
+        ChainedDynamicBooleanProperty booleanProperty =
+                DynamicPropertyHelpers.getChainedDynamicBooleanProperty(true, FIRST, SECOND);
+
+        configuration.setProperty(FIRST, "nope");
+        Assert.assertTrue("a value that isn't true or false shouldn't count as false", booleanProperty.get());
+
+        configuration.setProperty(FIRST, "FALSE");
+        Assert.assertFalse(booleanProperty.get());
+    }
+
+    @Test
+    public void durationAcceptsIsoAndMillis() {
+        ChainedDynamicDurationProperty durationProperty =
+                DynamicPropertyHelpers.getChainedDynamicDurationProperty(Duration.ofSeconds(1), FIRST);
+
+        Assert.assertEquals(1000, durationProperty.getMillis());
+
+        configuration.setProperty(FIRST, "PT30S");
+        Assert.assertEquals(Duration.ofSeconds(30), durationProperty.get());
+        Assert.assertEquals(30000, durationProperty.getMillis());
+
+        configuration.setProperty(FIRST, "250");
+        Assert.assertEquals(250, durationProperty.getMillis());
+    }
+
+    @Test
+    public void listIsSplitOnCommas() {
+        ChainedDynamicListProperty listProperty =
+                DynamicPropertyHelpers.getChainedDynamicListProperty(Collections.singletonList("default"), FIRST);
+
+        Assert.assertEquals(Collections.singletonList("default"), listProperty.get());
+
+        configuration.setProperty(FIRST, "a, b ,, c");
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), listProperty.get());
+    }
+
+}
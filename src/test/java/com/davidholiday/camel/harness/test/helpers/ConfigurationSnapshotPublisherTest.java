@@ -0,0 +1,77 @@
+package com.davidholiday.camel.harness.test.helpers;
+
+
+import com.davidholiday.camel.harness.config.ConfigurationChangeListener;
+import com.davidholiday.camel.harness.helpers.ConfigurationSnapshot;
+import com.davidholiday.camel.harness.helpers.ConfigurationSnapshotPublisher;
+
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.commons.configuration.AbstractConfiguration;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+
+
+/**
+ * ensures a burst of changes is published as one new snapshot and that snapshots already handed out don't change.
+ */
+public class ConfigurationSnapshotPublisherTest {
+
+    private static final long QUIET_WINDOW_MILLIS = 50;
+
+    private static final String HOST = "snapshot.test.host";
+    private static final String TIMEOUT = "snapshot.test.timeout";
+
+    private final AbstractConfiguration configuration = ConfigurationManager.getConfigInstance();
+
+    private final ConfigurationChangeListener listener =
+            new ConfigurationChangeListener(Collections.emptyMap(), QUIET_WINDOW_MILLIS);
+
+
+    @After
+    public void tearDown() {
+        configuration.removeConfigurationListener(listener);
+        listener.shutdown();
+        configuration.clearProperty(HOST);
+        configuration.clearProperty(TIMEOUT);
+    }
+
+
+    @Test
+    public void burstIsPublishedAsOneSnapshot() throws InterruptedException {
+        configuration.setProperty(HOST, "old-host");
+        configuration.setProperty(TIMEOUT, "PT1S");
+
+        ConfigurationSnapshotPublisher publisher = new ConfigurationSnapshotPublisher("test", HOST, TIMEOUT);
+        listener.addSnapshotPublisher(publisher);
+        configuration.addConfigurationListener(listener);
+
+        ConfigurationSnapshot oldSnapshot = publisher.get();
+        Assert.assertEquals(1, oldSnapshot.getVersion());
+        Assert.assertEquals("old-host", oldSnapshot.getString(HOST));
+
+        configuration.setProperty(HOST, "new-host");
+        configuration.setProperty(TIMEOUT, "PT5S");
+
+        for (int i = 0; i < 40 && publisher.get().getVersion() == 1; i++) {
+            Thread.sleep(QUIET_WINDOW_MILLIS);
+        }
+
+        Thread.sleep(QUIET_WINDOW_MILLIS * 2);
+
+        ConfigurationSnapshot newSnapshot = publisher.get();
+        Assert.assertEquals("one burst should publish one snapshot", 2, newSnapshot.getVersion());
+        Assert.assertEquals("new-host", newSnapshot.getString(HOST));
+        Assert.assertEquals(Duration.ofSeconds(5), newSnapshot.getDuration(TIMEOUT, Duration.ZERO));
+
+        Assert.assertEquals("a snapshot already handed out shouldn't change", "old-host", oldSnapshot.getString(HOST));
+        Assert.assertEquals(1000, oldSnapshot.getDuration(TIMEOUT, Duration.ZERO).toMillis());
+        Assert.assertEquals(3, newSnapshot.getInt("snapshot.test.missing", 3));
+    }
+
+}
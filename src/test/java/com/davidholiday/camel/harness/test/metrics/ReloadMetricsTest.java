@@ -0,0 +1,87 @@
+package com.davidholiday.camel.harness.test.metrics;
+
+
+import com.davidholiday.camel.harness.metrics.JmxReloadMetricsRecorder;
+import com.davidholiday.camel.harness.metrics.LatencyHistogram;
+import com.davidholiday.camel.harness.metrics.LatencySnapshot;
+import com.davidholiday.camel.harness.metrics.ReloadMetrics;
+import com.davidholiday.camel.harness.metrics.ReloadPhase;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * ensures the histogram's percentiles land within its bucket error and that reload measurements make it out over JMX.
+ */
+public class ReloadMetricsTest {
+
+    @Test
+    public void histogramPercentilesAreWithinBucketError() {
+        LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+        for (long millis = 1; millis <= 100; millis++) {
+            latencyHistogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        LatencySnapshot latencySnapshot = latencyHistogram.snapshot();
+
+        Assert.assertEquals(100, latencySnapshot.getCount());
+        Assert.assertEquals(50.5, latencySnapshot.getMeanMillis(), 0.01);
+        Assert.assertEquals(50, latencySnapshot.getP50Millis(), 50 * 0.07);
+        Assert.assertEquals(99, latencySnapshot.getP99Millis(), 99 * 0.07);
+        Assert.assertEquals(100, latencySnapshot.getMaxMillis(), 0.001);
+
+        latencyHistogram.reset();
+        Assert.assertEquals(0, latencyHistogram.snapshot().getCount());
+    }
+
+    @Test
+    public void reloadMetricsArePublishedOverJmx() throws Exception {
+        String baseId = ReloadMetricsTest.class.getSimpleName();
+
+        ReloadMetrics.recordPhase(baseId, ReloadPhase.ADD_ROUTES, TimeUnit.MILLISECONDS.toNanos(5));
+        ReloadMetrics.recordReload(baseId, true);
+        ReloadMetrics.recordReload(baseId, false);
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(
+                JmxReloadMetricsRecorder.JMX_DOMAIN + ":type=ReloadMetrics,name=" + ObjectName.quote(baseId)
+        );
+
+        Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "SuccessCount"));
+        Assert.assertEquals(1L, mBeanServer.getAttribute(objectName, "FailureCount"));
+
+        LatencySnapshot addRoutesLatency =
+                ReloadMetrics.getJmxRecorder().getHarnessReloadMetrics(baseId).getPhaseLatency(ReloadPhase.ADD_ROUTES);
+
+        Assert.assertEquals(1, addRoutesLatency.getCount());
+        Assert.assertEquals(5, addRoutesLatency.getMaxMillis(), 0.001);
+    }
+
+    @Test
+    public void removedReloadMetricsAreUnregisteredFromJmx() throws Exception {
+        String baseId = ReloadMetricsTest.class.getSimpleName() + "Removed";
+
+        ReloadMetrics.recordReload(baseId, true);
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(
+                JmxReloadMetricsRecorder.JMX_DOMAIN + ":type=ReloadMetrics,name=" + ObjectName.quote(baseId)
+        );
+        Assert.assertTrue(mBeanServer.isRegistered(objectName));
+
+        ReloadMetrics.remove(baseId);
+
+        Assert.assertFalse(mBeanServer.isRegistered(objectName));
+        Assert.assertFalse(ReloadMetrics.getJmxRecorder().getHarnessReloadMetricsMap().containsKey(baseId));
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.davidholiday.camel.harness.test.metrics;
+
+
+import com.davidholiday.camel.harness.metrics.HarnessRouteMetrics;
+import com.davidholiday.camel.harness.metrics.HarnessedRoute;
+import com.davidholiday.camel.harness.metrics.JmxReloadMetricsRecorder;
+import com.davidholiday.camel.harness.metrics.RouteMetrics;
+import com.davidholiday.camel.harness.test.metrics.mocks.TimedRoute;
+
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+
+
+/**
+ * ensures every harnessed route is timed without the routebuilder wiring anything up, and that failures are counted
+ * against the routes they came out of.
+ */
+public class RouteMetricsTest extends CamelTestSupport {
+
+    private static final String BASE_ID = TimedRoute.class.getSimpleName();
+
+    private final HarnessRouteMetrics harnessRouteMetrics = RouteMetrics.getHarnessRouteMetrics(BASE_ID);
+
+
+    protected RouteBuilder createRouteBuilder() { return new TimedRoute(); }
+
+
+    @Override
+    public void setUp() throws Exception {
+        harnessRouteMetrics.reset();
+        super.setUp();
+    }
+
+
+    @Test
+    public void everyHarnessedRouteIsTimed() {
+        for (int i = 0; i < 3; i++) {
+            Assert.assertEquals(
+                    "done",
+                    template.requestBodyAndHeader(TimedRoute.ENTRY_NAME, "", TimedRoute.SLEEP_MILLIS_HEADER, 20L)
+            );
+        }
+
+        for (HarnessedRoute harnessedRoute : HarnessedRoute.values()) {
+            Assert.assertEquals(harnessedRoute + " exchanges should be counted",
+                                3, harnessRouteMetrics.getExchangeCount(harnessedRoute));
+
+            Assert.assertEquals(0, harnessRouteMetrics.getErrorCount(harnessedRoute));
+        }
+
+        double businessLogicP50Millis =
+                harnessRouteMetrics.getRouteLatency(HarnessedRoute.BUSINESS_LOGIC).getP50Millis();
+        Assert.assertTrue("business logic latency should include the sleep", businessLogicP50Millis >= 19);
+
+        Assert.assertTrue(
+                "the from-route's latency should include the routes it hands off to",
+                harnessRouteMetrics.getRouteLatency(HarnessedRoute.FROM).getMaxMillis() >= businessLogicP50Millis
+        );
+    }
+
+    @Test
+    public void failedExchangesAreCountedAgainstTheirRoutes() {
+        try {
+            template.requestBodyAndHeader(TimedRoute.ENTRY_NAME, "", TimedRoute.FAIL_HEADER, true);
+            Assert.fail("exchange should fail");
+        } catch (CamelExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        Assert.assertEquals(1, harnessRouteMetrics.getErrorCount(HarnessedRoute.FROM));
+        Assert.assertEquals(1, harnessRouteMetrics.getErrorCount(HarnessedRoute.BUSINESS_LOGIC));
+        Assert.assertEquals("the to-route never saw the exchange",
+                            0, harnessRouteMetrics.getExchangeCount(HarnessedRoute.TO));
+    }
+
+    @Test
+    public void routeMetricsArePublishedOverJmx() throws Exception {
+        template.requestBody(TimedRoute.ENTRY_NAME, "");
+
+        ObjectName objectName = new ObjectName(
+                JmxReloadMetricsRecorder.JMX_DOMAIN + ":type=RouteMetrics,name=" + ObjectName.quote(BASE_ID)
+        );
+
+        Assert.assertEquals(BASE_ID, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "BaseId"));
+        Assert.assertTrue(RouteMetrics.getHarnessRouteMetricsMap().containsKey(BASE_ID));
+    }
+
+}
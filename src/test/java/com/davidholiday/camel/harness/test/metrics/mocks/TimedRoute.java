@@ -0,0 +1,46 @@
+package com.davidholiday.camel.harness.test.metrics.mocks;
+
+
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+
+
+/**
+ * request/reply route with a from, business logic and to route. the business logic route sleeps for the
+ * SLEEP_MILLIS_HEADER, if it's set, and fails if the FAIL_HEADER is set.
+ */
+public class TimedRoute extends RouteBuilderHarness {
+
+    public static final String ENTRY_NAME = "direct:timedIn";
+
+    public static final String SLEEP_MILLIS_HEADER = "sleepMillis";
+
+    public static final String FAIL_HEADER = "fail";
+
+    private static final String NAME = TimedRoute.class.getSimpleName();
+
+
+    public TimedRoute() { super(NAME, true); }
+
+
+    public void configure() throws Exception {
+        from(ENTRY_NAME).routeId(FROM_ROUTE_ID)
+                        .to(BUSINESS_LOGIC_ROUTE_FROM_NAME);
+
+        from(BUSINESS_LOGIC_ROUTE_FROM_NAME).routeId(BUSINESS_LOGIC_ROUTE_ID)
+                                            .description(BUSINESS_LOGIC_ROUTE_DESCRIPTION)
+                                            .process(exchange -> {
+                                                Thread.sleep(
+                                                        exchange.getIn().getHeader(SLEEP_MILLIS_HEADER, 0L, Long.class)
+                                                );
+
+                                                if (exchange.getIn().getHeader(FAIL_HEADER) != null) {
+                                                    throw new IllegalStateException("business logic failed");
+                                                }
+                                            })
+                                            .to(BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL.get());
+
+        from(BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL.get()).routeId(TO_ROUTE_ID)
+                                                         .setBody(constant("done"));
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.davidholiday.camel.harness.test.routes;
+
+
+import com.davidholiday.camel.harness.metrics.JmxReloadMetricsRecorder;
+import com.davidholiday.camel.harness.routing.AdaptiveConcurrencyLimiter;
+import com.davidholiday.camel.harness.routing.ConcurrencyLimitExceededException;
+import com.davidholiday.camel.harness.test.routes.mocks.LimitedRoute;
+
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * ensures the limiter turns exchanges away once its limit is in flight, moves the limit with latency and reports what
+ * it's doing.
+ */
+public class AdaptiveConcurrencyLimiterTest extends CamelTestSupport {
+
+    private static final String BASE_ID = LimitedRoute.class.getSimpleName();
+
+
+    protected RouteBuilder createRouteBuilder() { return new LimitedRoute(); }
+
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+
+        for (String propertyName : new String[] {"minLimit", "maxLimit", "initialLimit", "latencyThresholdMillis"}) {
+            ConfigurationManager.getConfigInstance().clearProperty(
+                    BASE_ID + AdaptiveConcurrencyLimiter.PROPERTY_PREFIX + propertyName
+            );
+        }
+    }
+
+
+    @Test
+    public void exchangesPastLimitAreRejected() throws Exception {
+        setLimiterProperty(BASE_ID, "minLimit", 2);
+        setLimiterProperty(BASE_ID, "maxLimit", 2);
+
+        AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter =
+                AdaptiveConcurrencyLimiter.getAdaptiveConcurrencyLimiter(BASE_ID);
+        long initialRejectedCount = adaptiveConcurrencyLimiter.getRejectedCount();
+
+        List<Future<Object>> futureList = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            futureList.add(template.asyncRequestBodyAndHeader(
+                    LimitedRoute.ENTRY_NAME, "", LimitedRoute.SLEEP_MILLIS_HEADER, 1000L
+            ));
+        }
+
+        long deadlineMillis = System.currentTimeMillis() + 5000;
+        while (adaptiveConcurrencyLimiter.getInflightCount() < 2 && System.currentTimeMillis() < deadlineMillis) {
+            Thread.sleep(10);
+        }
+
+        try {
+            template.requestBody(LimitedRoute.ENTRY_NAME, "");
+            Assert.fail("an exchange past the limit should be turned away");
+        } catch (CamelExecutionException e) {
+            Assert.assertTrue(
+                    "exchange should be turned away with a ConcurrencyLimitExceededException, got " + e.getCause(),
+                    e.getCause() instanceof ConcurrencyLimitExceededException
+            );
+        }
+
+        Assert.assertEquals("the rejection should be counted",
+                            initialRejectedCount + 1, adaptiveConcurrencyLimiter.getRejectedCount());
+
+        for (Future<Object> future : futureList) {
+            Assert.assertEquals("exchanges let in should still complete", "done", future.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void limitBacksOffOnSlowExchangesAndGrowsUnderLoad() {
+        String baseId = "limitBacksOffOnSlowExchangesAndGrowsUnderLoad";
+        setLimiterProperty(baseId, "initialLimit", 10);
+        setLimiterProperty(baseId, "latencyThresholdMillis", 100);
+
+        AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter =
+                AdaptiveConcurrencyLimiter.getAdaptiveConcurrencyLimiter(baseId);
+
+        Assert.assertTrue(adaptiveConcurrencyLimiter.tryAcquire());
+        adaptiveConcurrencyLimiter.release(TimeUnit.MILLISECONDS.toNanos(500), false);
+        Assert.assertEquals("a slow exchange should cut the limit", 9, adaptiveConcurrencyLimiter.getLimit());
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(adaptiveConcurrencyLimiter.tryAcquire());
+        }
+
+        adaptiveConcurrencyLimiter.release(TimeUnit.MILLISECONDS.toNanos(1), false);
+        Assert.assertEquals("a fast exchange with the limit half used should raise the limit",
+                            10, adaptiveConcurrencyLimiter.getLimit());
+
+        adaptiveConcurrencyLimiter.release(TimeUnit.MILLISECONDS.toNanos(1), false);
+        adaptiveConcurrencyLimiter.release(TimeUnit.MILLISECONDS.toNanos(1), false);
+        Assert.assertEquals("a fast exchange with the limit barely used shouldn't raise the limit",
+                            10, adaptiveConcurrencyLimiter.getLimit());
+
+        Assert.assertEquals("limit changes should be counted", 2, adaptiveConcurrencyLimiter.getLimitChangeCount());
+    }
+
+    @Test
+    public void fastFailuresCutTheLimit() {
+        String baseId = "fastFailuresCutTheLimit";
+        setLimiterProperty(baseId, "initialLimit", 10);
+        setLimiterProperty(baseId, "latencyThresholdMillis", 100);
+
+        AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter =
+                AdaptiveConcurrencyLimiter.getAdaptiveConcurrencyLimiter(baseId);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(adaptiveConcurrencyLimiter.tryAcquire());
+        }
+
+        adaptiveConcurrencyLimiter.release(TimeUnit.MILLISECONDS.toNanos(1), true);
+        Assert.assertEquals("a fast failure should cut the limit, not raise it",
+                            9, adaptiveConcurrencyLimiter.getLimit());
+    }
+
+    @Test
+    public void failedExchangesThroughRouteCutTheLimit() {
+        setLimiterProperty(BASE_ID, "maxLimit", 10);
+
+        AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter =
+                AdaptiveConcurrencyLimiter.getAdaptiveConcurrencyLimiter(BASE_ID);
+        Assert.assertEquals(10, adaptiveConcurrencyLimiter.getLimit());
+
+        try {
+            template.requestBodyAndHeader(LimitedRoute.ENTRY_NAME, "", LimitedRoute.FAIL_HEADER, true);
+            Assert.fail("the business logic should have failed the exchange");
+        } catch (CamelExecutionException e) {
+            // expected
+        }
+
+        Assert.assertEquals("an exchange the business logic failed should cut the limit",
+                            9, adaptiveConcurrencyLimiter.getLimit());
+    }
+
+    @Test
+    public void limiterReportsOverJmx() throws Exception {
+        template.requestBody(LimitedRoute.ENTRY_NAME, "");
+
+        AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter =
+                AdaptiveConcurrencyLimiter.getAdaptiveConcurrencyLimiter(BASE_ID);
+
+        Assert.assertTrue("queueing delay should be recorded",
+                          adaptiveConcurrencyLimiter.getQueueingDelay().getCount() > 0);
+
+        Assert.assertTrue("latency should be recorded", adaptiveConcurrencyLimiter.getLatency().getCount() > 0);
+
+        ObjectName objectName = new ObjectName(
+                JmxReloadMetricsRecorder.JMX_DOMAIN + ":type=ConcurrencyLimiter,name=" + ObjectName.quote(BASE_ID)
+        );
+
+        Assert.assertEquals(
+                "the limit should be readable over JMX",
+                adaptiveConcurrencyLimiter.getLimit(),
+                ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Limit")
+        );
+    }
+
+
+    private static void setLimiterProperty(String baseId, String propertyName, Object value) {
+        ConfigurationManager.getConfigInstance().setProperty(
+                baseId + AdaptiveConcurrencyLimiter.PROPERTY_PREFIX + propertyName, value
+        );
+    }
+
+}
@@ -0,0 +1,129 @@
+package com.davidholiday.camel.harness.test.routes;
+
+
+import com.davidholiday.camel.harness.routing.BatchingProcessor;
+import com.davidholiday.camel.harness.test.routes.mocks.BatchingRoute;
+
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * ensures a routebuilder with a batching stage hands its business logic lists of bodies, flushes them on size and on
+ * timeout and gets every caller its own reply.
+ */
+public class BatchingProcessorTest extends CamelTestSupport {
+
+    private static final String BASE_ID = BatchingRoute.class.getSimpleName();
+
+
+    protected RouteBuilder createRouteBuilder() {
+        BatchingRoute.BATCH_SIZE_LIST.clear();
+        BatchingRoute.BATCH_THREAD_NAME_LIST.clear();
+        BatchingRoute.BATCH_UNIT_OF_WORK_LIST.clear();
+        return new BatchingRoute();
+    }
+
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+
+        ConfigurationManager.getConfigInstance().clearProperty(BASE_ID + BatchingProcessor.BATCH_SIZE_PROPERTY_SUFFIX);
+        ConfigurationManager.getConfigInstance().clearProperty(
+                BASE_ID + BatchingProcessor.TIMEOUT_MILLIS_PROPERTY_SUFFIX
+        );
+    }
+
+
+    @Test
+    public void fullBatchesFlushAndEveryCallerGetsItsOwnReply() throws Exception {
+        setBatching(2, 10000);
+
+        List<Future<Object>> futureList = requestAsync("a", "b", "c", "d");
+        for (int i = 0; i < futureList.size(); i++) {
+            Assert.assertEquals(
+                    "each caller should get the reply to its own body",
+                    Arrays.asList("a", "b", "c", "d").get(i) + "-reply",
+                    futureList.get(i).get(5, TimeUnit.SECONDS)
+            );
+        }
+
+        Assert.assertEquals("four exchanges should go through as two full batches",
+                            Arrays.asList(2, 2), BatchingRoute.BATCH_SIZE_LIST);
+    }
+
+    @Test
+    public void partialBatchFlushesOnTimeout() throws Exception {
+        setBatching(100, 50);
+
+        Object reply = requestAsync("a").get(0).get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals("a lone exchange should be answered once the timeout passes", "a-reply", reply);
+        Assert.assertEquals("the timed out batch should hold the lone exchange",
+                            Collections.singletonList(1), BatchingRoute.BATCH_SIZE_LIST);
+    }
+
+    @Test
+    public void timedOutBatchRunsOnConcurrencyStageWithItsOwnUnitOfWork() throws Exception {
+        setBatching(100, 50);
+
+        requestAsync("a").get(0).get(5, TimeUnit.SECONDS);
+
+        Assert.assertTrue(
+                "a timed out batch should be handed off to the concurrency stage, not run on the timer thread",
+                BatchingRoute.BATCH_THREAD_NAME_LIST.get(0).contains("-concurrencyStage-")
+        );
+
+        Assert.assertEquals("the batch exchange should have a unit of work",
+                            Collections.singletonList(true), BatchingRoute.BATCH_UNIT_OF_WORK_LIST);
+    }
+
+    @Test
+    public void failedBatchFailsEveryExchangeInIt() throws Exception {
+        setBatching(2, 10000);
+
+        for (Future<Object> future : requestAsync("a", BatchingRoute.FAIL_BODY)) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                Assert.fail("every exchange in a failed batch should fail");
+            } catch (ExecutionException e) {
+                // expected
+            }
+        }
+    }
+
+
+    private void setBatching(int batchSize, long timeoutMillis) {
+        ConfigurationManager.getConfigInstance().setProperty(
+                BASE_ID + BatchingProcessor.BATCH_SIZE_PROPERTY_SUFFIX, batchSize
+        );
+
+        ConfigurationManager.getConfigInstance().setProperty(
+                BASE_ID + BatchingProcessor.TIMEOUT_MILLIS_PROPERTY_SUFFIX, timeoutMillis
+        );
+    }
+
+    private List<Future<Object>> requestAsync(String... bodies) {
+        List<Future<Object>> futureList = new ArrayList<>();
+        for (String body : bodies) {
+            futureList.add(template.asyncRequestBody(BatchingRoute.ENTRY_NAME, body));
+        }
+
+        return futureList;
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.davidholiday.camel.harness.test.routes;
+
+
+import com.davidholiday.camel.harness.routing.ConcurrencyStage;
+import com.davidholiday.camel.harness.test.routes.mocks.ConcurrentRoute;
+
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.camel.ServiceStatus;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * ensures a routebuilder with a concurrency stage runs its business logic on the stage's threads and that the stage
+ * follows its archaius properties without the routes being cycled.
+ */
+public class ConcurrencyStageTest extends CamelTestSupport {
+
+    private static final String BASE_ID = ConcurrentRoute.class.getSimpleName();
+
+
+    protected RouteBuilder createRouteBuilder() { return new ConcurrentRoute(); }
+
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+
+        ConcurrentRoute.setLatch(null);
+        ConfigurationManager.getConfigInstance().clearProperty(BASE_ID + ConcurrencyStage.POOL_SIZE_PROPERTY_SUFFIX);
+        ConfigurationManager.getConfigInstance().clearProperty(BASE_ID + ConcurrencyStage.QUEUE_SIZE_PROPERTY_SUFFIX);
+    }
+
+
+    @Test
+    public void businessLogicRunsOnConcurrencyStage() {
+        String threadName = template.requestBody(ConcurrentRoute.ENTRY_NAME, "", String.class);
+
+        Assert.assertTrue(
+                "business logic should run on the concurrency stage, ran on " + threadName,
+                threadName.startsWith(BASE_ID + "-concurrencyStage-")
+        );
+    }
+
+    @Test
+    public void stageRunsExchangesConcurrently() throws Exception {
+        int exchangeCount = 3;
+        CountDownLatch latch = new CountDownLatch(exchangeCount);
+        ConcurrentRoute.setLatch(latch);
+
+        List<Future<Object>> futureList = new ArrayList<>();
+        for (int i = 0; i < exchangeCount; i++) {
+            futureList.add(template.asyncRequestBody(ConcurrentRoute.ENTRY_NAME, ""));
+        }
+
+        for (Future<Object> future : futureList) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        Assert.assertEquals("every exchange should have been in the business logic route at once", 0, latch.getCount());
+    }
+
+    @Test
+    public void stageIsResizedWithoutCyclingRoutes() {
+        ConcurrencyStage concurrencyStage = ConcurrencyStage.getConcurrencyStage(BASE_ID);
+
+        ConfigurationManager.getConfigInstance().setProperty(BASE_ID + ConcurrencyStage.POOL_SIZE_PROPERTY_SUFFIX, 3);
+        ConfigurationManager.getConfigInstance().setProperty(BASE_ID + ConcurrencyStage.QUEUE_SIZE_PROPERTY_SUFFIX, 5);
+
+        Assert.assertEquals("pool size should follow its property", 3, concurrencyStage.getPoolSize());
+        Assert.assertEquals("queue size should follow its property", 5, concurrencyStage.getQueueSize());
+
+        Assert.assertEquals(
+                "resizing shouldn't touch the routes",
+                ServiceStatus.Started,
+                context.getRouteStatus(BASE_ID + "_businessLogicRoute")
+        );
+
+        String threadName = template.requestBody(ConcurrentRoute.ENTRY_NAME, "", String.class);
+        Assert.assertTrue("resized stage should still serve traffic", threadName.startsWith(BASE_ID));
+    }
+
+    @Test
+    public void invalidSizesAreClamped() {
+        ConcurrencyStage concurrencyStage = ConcurrencyStage.getConcurrencyStage(BASE_ID);
+
+        ConfigurationManager.getConfigInstance().setProperty(BASE_ID + ConcurrencyStage.POOL_SIZE_PROPERTY_SUFFIX, 0);
+        ConfigurationManager.getConfigInstance().setProperty(BASE_ID + ConcurrencyStage.QUEUE_SIZE_PROPERTY_SUFFIX, -1);
+
+        Assert.assertEquals("pool size should be clamped to one thread", 1, concurrencyStage.getPoolSize());
+        Assert.assertEquals("queue size should be clamped to zero", 0, concurrencyStage.getQueueSize());
+
+        String threadName = template.requestBody(ConcurrentRoute.ENTRY_NAME, "", String.class);
+        Assert.assertNotNull("a single thread stage with no queue should still serve traffic", threadName);
+    }
+
+}
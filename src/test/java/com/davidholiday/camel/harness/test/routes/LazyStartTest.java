@@ -0,0 +1,100 @@
+package com.davidholiday.camel.harness.test.routes;
+
+
+import com.davidholiday.camel.harness.config.ShutDownAndRecreateRoutesRunnable;
+import com.davidholiday.camel.harness.metrics.HarnessReloadMetrics;
+import com.davidholiday.camel.harness.metrics.ReloadMetrics;
+import com.davidholiday.camel.harness.metrics.ReloadPhase;
+import com.davidholiday.camel.harness.test.routes.mocks.LazyRoute;
+
+import org.apache.camel.ServiceStatus;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * ensures a lazily started routebuilder only brings up its business logic and to-routes for its first exchange, and
+ * only once however many exchanges arrive first.
+ */
+public class LazyStartTest extends CamelTestSupport {
+
+    private final LazyRoute lazyRoute = new LazyRoute();
+
+    private final HarnessReloadMetrics harnessReloadMetrics =
+            ReloadMetrics.getJmxRecorder().getHarnessReloadMetrics(lazyRoute.getBaseId());
+
+
+    protected RouteBuilder createRouteBuilder() { return new LazyRoute(); }
+
+
+    @Override
+    public void setUp() throws Exception {
+        harnessReloadMetrics.reset();
+        super.setUp();
+    }
+
+
+    @Test
+    public void deferredRoutesWaitForFirstExchange() {
+        Assert.assertEquals(ServiceStatus.Started, context.getRouteStatus(lazyRoute.getFromRouteId()));
+        Assert.assertEquals(ServiceStatus.Stopped, context.getRouteStatus(lazyRoute.getBusinessLogicRouteId()));
+        Assert.assertEquals(ServiceStatus.Stopped, context.getRouteStatus(lazyRoute.getToRouteId()));
+
+        Assert.assertEquals("a-businessLogic-to", template.requestBody(LazyRoute.ENTRY_NAME, "a"));
+
+        Assert.assertEquals(ServiceStatus.Started, context.getRouteStatus(lazyRoute.getBusinessLogicRouteId()));
+        Assert.assertEquals(ServiceStatus.Started, context.getRouteStatus(lazyRoute.getToRouteId()));
+        Assert.assertEquals("time to ready should be recorded",
+                            1, harnessReloadMetrics.getPhaseLatency(ReloadPhase.LAZY_START).getCount());
+    }
+
+    @Test
+    public void concurrentFirstExchangesStartRoutesOnce() throws Exception {
+        List<Future<Object>> futureList = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futureList.add(template.asyncRequestBody(LazyRoute.ENTRY_NAME, String.valueOf(i)));
+        }
+
+        for (int i = 0; i < futureList.size(); i++) {
+            Assert.assertEquals(i + "-businessLogic-to", futureList.get(i).get(5, TimeUnit.SECONDS));
+        }
+
+        Assert.assertEquals("routes should only be started once",
+                            1, harnessReloadMetrics.getPhaseLatency(ReloadPhase.LAZY_START).getCount());
+    }
+
+    @Test
+    public void swappedInRoutesAreWarm() {
+        template.requestBody(LazyRoute.ENTRY_NAME, "a");
+
+        new ShutDownAndRecreateRoutesRunnable(context, LazyRoute.class, true).run();
+
+        String standbyBusinessLogicRouteId =
+                lazyRoute.getBusinessLogicRouteId() + ShutDownAndRecreateRoutesRunnable.SWAP_SUFFIX;
+
+        Assert.assertEquals("the standby set should be started before traffic is swapped to it",
+                            ServiceStatus.Started, context.getRouteStatus(standbyBusinessLogicRouteId));
+
+        Assert.assertEquals("b-businessLogic-to", template.requestBody(LazyRoute.ENTRY_NAME, "b"));
+    }
+
+    @Test
+    public void cycledRoutesAreLazyAgain() {
+        template.requestBody(LazyRoute.ENTRY_NAME, "a");
+
+        new ShutDownAndRecreateRoutesRunnable(context, LazyRoute.class).run();
+
+        Assert.assertEquals(ServiceStatus.Stopped, context.getRouteStatus(lazyRoute.getBusinessLogicRouteId()));
+        Assert.assertEquals("b-businessLogic-to", template.requestBody(LazyRoute.ENTRY_NAME, "b"));
+        Assert.assertEquals(2, harnessReloadMetrics.getPhaseLatency(ReloadPhase.LAZY_START).getCount());
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.davidholiday.camel.harness.test.routes;
+
+
+import com.davidholiday.camel.harness.config.ShutDownAndRecreateRoutesRunnable;
+import com.davidholiday.camel.harness.metrics.JmxReloadMetricsRecorder;
+import com.davidholiday.camel.harness.routing.ResultCache;
+import com.davidholiday.camel.harness.test.routes.mocks.CachedRoute;
+
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.camel.CamelExecutionException;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * ensures the business logic route only runs for lookups the result cache can't answer, that concurrent misses for a
+ * key share one run, and that entries go when they should.
+ */
+public class ResultCacheTest extends CamelTestSupport {
+
+    private static final String BASE_ID = CachedRoute.class.getSimpleName();
+
+    private final ResultCache resultCache = ResultCache.getResultCache(BASE_ID);
+
+
+    protected RouteBuilder createRouteBuilder() { return new CachedRoute(); }
+
+
+    @Override
+    public void setUp() throws Exception {
+        resultCache.clear();
+        resultCache.reset();
+        CachedRoute.RUN_COUNT.set(0);
+
+        super.setUp();
+    }
+
+
+    @Override
+    public void tearDown() throws Exception {
+        super.tearDown();
+
+        CachedRoute.setLatch(null);
+        ConfigurationManager.getConfigInstance().clearProperty(BASE_ID + ResultCache.PROPERTY_PREFIX + "maxSize");
+        ConfigurationManager.getConfigInstance().clearProperty(BASE_ID + ResultCache.PROPERTY_PREFIX + "ttlMillis");
+    }
+
+
+    @Test
+    public void repeatLookupIsServedFromCache() {
+        Assert.assertEquals("a-1", lookup("a"));
+        Assert.assertEquals("repeat lookup should get the cached answer", "a-1", lookup("a"));
+        Assert.assertEquals("a different key should run the business logic", "b-2", lookup("b"));
+
+        Assert.assertEquals(2, CachedRoute.RUN_COUNT.get());
+        Assert.assertEquals(1, resultCache.getHitCount());
+        Assert.assertEquals(2, resultCache.getMissCount());
+    }
+
+    @Test
+    public void concurrentMissesForOneKeyShareOneRun() throws Exception {
+        CountDownLatch countDownLatch = new CountDownLatch(1);
+        CachedRoute.setLatch(countDownLatch);
+
+        List<Future<Object>> futureList = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futureList.add(template.asyncRequestBodyAndHeader(CachedRoute.ENTRY_NAME, "", CachedRoute.ID_HEADER, "a"));
+        }
+
+        long deadlineMillis = System.currentTimeMillis() + 5000;
+        while (resultCache.getCollapsedCount() < 4 && System.currentTimeMillis() < deadlineMillis) {
+            Thread.sleep(10);
+        }
+
+        countDownLatch.countDown();
+
+        for (Future<Object> future : futureList) {
+            Assert.assertEquals("every lookup should get the one run's answer", "a-1", future.get(5, TimeUnit.SECONDS));
+        }
+
+        Assert.assertEquals(1, CachedRoute.RUN_COUNT.get());
+        Assert.assertEquals(4, resultCache.getCollapsedCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        ConfigurationManager.getConfigInstance().setProperty(BASE_ID + ResultCache.PROPERTY_PREFIX + "maxSize", 2);
+
+        lookup("a");
+        lookup("b");
+        lookup("a");
+        lookup("c");
+
+        Assert.assertEquals("recently used entry should still be cached", "a-1", lookup("a"));
+        Assert.assertEquals("least recently used entry should've been evicted", "b-4", lookup("b"));
+        Assert.assertEquals(2, resultCache.getSize());
+        Assert.assertTrue(resultCache.getEvictionCount() >= 1);
+    }
+
+    @Test
+    public void expiredEntryIsEvicted() throws InterruptedException {
+        ConfigurationManager.getConfigInstance().setProperty(BASE_ID + ResultCache.PROPERTY_PREFIX + "ttlMillis", 50);
+
+        lookup("a");
+        Thread.sleep(100);
+
+        Assert.assertEquals("entry past its ttl shouldn't be used", "a-2", lookup("a"));
+        Assert.assertEquals(1, resultCache.getEvictionCount());
+    }
+
+    @Test
+    public void failedLookupIsNotCached() {
+        for (int i = 0; i < 2; i++) {
+            try {
+                lookup(CachedRoute.FAIL_ID);
+                Assert.fail("lookup should fail");
+            } catch (CamelExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalArgumentException);
+            }
+        }
+
+        Assert.assertEquals("failed lookup should run again", 2, CachedRoute.RUN_COUNT.get());
+        Assert.assertEquals(0, resultCache.getSize());
+    }
+
+    @Test
+    public void cacheIsClearedWhenRoutesAreRecreated() {
+        lookup("a");
+
+        new ShutDownAndRecreateRoutesRunnable(context, CachedRoute.class).run();
+
+        Assert.assertEquals("lookup after the routes were recreated should run the new routes", "a-2", lookup("a"));
+    }
+
+    @Test
+    public void cacheIsDroppedWhenRoutesAreRemoved() throws Exception {
+        lookup("a");
+
+        ObjectName objectName = new ObjectName(
+                JmxReloadMetricsRecorder.JMX_DOMAIN + ":type=ResultCache,name=" + ObjectName.quote(BASE_ID)
+        );
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+
+        Assert.assertTrue(new ShutDownAndRecreateRoutesRunnable(context, CachedRoute.class).removeRoutes());
+
+        Assert.assertEquals("the dropped cache should be emptied", 0, resultCache.getSize());
+        Assert.assertFalse("the dropped cache should be taken off JMX",
+                           ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+        Assert.assertNotSame(resultCache, ResultCache.getResultCache(BASE_ID));
+    }
+
+
+    private String lookup(String id) {
+        return template.requestBodyAndHeader(CachedRoute.ENTRY_NAME, "", CachedRoute.ID_HEADER, id, String.class);
+    }
+
+}
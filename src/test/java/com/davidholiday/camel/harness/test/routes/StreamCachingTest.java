@@ -0,0 +1,179 @@
+package com.davidholiday.camel.harness.test.routes;
+
+
+import com.davidholiday.camel.harness.metrics.HarnessedRoute;
+import com.davidholiday.camel.harness.metrics.JmxReloadMetricsRecorder;
+import com.davidholiday.camel.harness.routing.StreamCachingStage;
+import com.davidholiday.camel.harness.test.routes.mocks.StreamingRoute;
+
+import com.netflix.config.ConfigurationManager;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.management.ObjectName;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * ensures a stream caching routebuilder keeps small bodies on the heap, spools big ones to its spool directory and
+ * cleans up after itself, and that either way the body can be read by every route it passes through.
+ */
+public class StreamCachingTest extends CamelTestSupport {
+
+    private static final String BASE_ID = new StreamingRoute().getBaseId();
+
+    private static final int SPOOL_THRESHOLD_BYTES = 1024;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final StreamCachingStage streamCachingStage = StreamCachingStage.getStreamCachingStage(BASE_ID);
+
+    private File spoolDirectory;
+
+
+    protected RouteBuilder createRouteBuilder() { return new StreamingRoute(); }
+
+
+    @Override
+    public void setUp() throws Exception {
+        spoolDirectory = new File(temporaryFolder.getRoot(), "spool");
+
+        ConfigurationManager.getConfigInstance().setProperty(
+                BASE_ID + StreamCachingStage.PROPERTY_PREFIX + "spoolThresholdBytes", SPOOL_THRESHOLD_BYTES
+        );
+
+        ConfigurationManager.getConfigInstance().setProperty(
+                BASE_ID + StreamCachingStage.PROPERTY_PREFIX + "spoolDirectory", spoolDirectory.getPath()
+        );
+
+        streamCachingStage.reset();
+        super.setUp();
+    }
+
+
+    @After
+    public void clearProperties() {
+        ConfigurationManager.getConfigInstance().clearProperty(
+                BASE_ID + StreamCachingStage.PROPERTY_PREFIX + "spoolThresholdBytes"
+        );
+
+        ConfigurationManager.getConfigInstance().clearProperty(
+                BASE_ID + StreamCachingStage.PROPERTY_PREFIX + "spoolDirectory"
+        );
+    }
+
+
+    @Test
+    public void smallBodyStaysOnHeap() {
+        String body = buildBody(SPOOL_THRESHOLD_BYTES);
+        Exchange exchange = send(body);
+
+        Assert.assertEquals(body, reply(exchange).getBody(String.class));
+        Assert.assertEquals(true, reply(exchange).getHeader(StreamingRoute.IN_MEMORY_HEADER));
+        Assert.assertEquals(body.length(), reply(exchange).getHeader(StreamingRoute.FIRST_READ_LENGTH_HEADER));
+        Assert.assertEquals("nothing should've been spooled",
+                            0L, (long)streamCachingStage.getSpooledBytes().get(HarnessedRoute.FROM.name()));
+        Assert.assertEquals("the heap held should be given back once the exchange is done",
+                            0L, (long)streamCachingStage.getHeapBytes().get(HarnessedRoute.FROM.name()));
+        Assert.assertEquals(0, streamCachingStage.getInMemoryCount());
+    }
+
+    @Test
+    public void bigBodySpoolsToDisk() {
+        String body = buildBody(SPOOL_THRESHOLD_BYTES * 100 + 1);
+        Exchange exchange = send(body);
+
+        Assert.assertEquals(body, reply(exchange).getBody(String.class));
+        Assert.assertEquals(false, reply(exchange).getHeader(StreamingRoute.IN_MEMORY_HEADER));
+        Assert.assertEquals(1L, reply(exchange).getHeader(StreamingRoute.SPOOLED_COUNT_HEADER));
+        Assert.assertEquals(body.length(), reply(exchange).getHeader(StreamingRoute.FIRST_READ_LENGTH_HEADER));
+        Assert.assertEquals((long)body.length(),
+                            (long)streamCachingStage.getSpooledBytes().get(HarnessedRoute.FROM.name()));
+
+        Assert.assertEquals("the spool file should be deleted once the exchange is done",
+                            0, spoolDirectory.listFiles().length);
+        Assert.assertEquals(0, streamCachingStage.getSpooledCount());
+    }
+
+    @Test
+    public void thresholdChangeAppliesToNextBody() {
+        String body = buildBody(SPOOL_THRESHOLD_BYTES * 2);
+        Assert.assertEquals(false, reply(send(body)).getHeader(StreamingRoute.IN_MEMORY_HEADER));
+
+        ConfigurationManager.getConfigInstance().setProperty(
+                BASE_ID + StreamCachingStage.PROPERTY_PREFIX + "spoolThresholdBytes", SPOOL_THRESHOLD_BYTES * 4
+        );
+
+        Assert.assertEquals(true, reply(send(body)).getHeader(StreamingRoute.IN_MEMORY_HEADER));
+    }
+
+    @Test
+    public void removedStageIsTakenOffJmxAndStartsOverWhenAskedForAgain() throws Exception {
+        ObjectName objectName = new ObjectName(
+                JmxReloadMetricsRecorder.JMX_DOMAIN + ":type=StreamCache,name=" + ObjectName.quote(BASE_ID)
+        );
+
+        send(buildBody(SPOOL_THRESHOLD_BYTES * 2));
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+
+        StreamCachingStage.remove(BASE_ID);
+        Assert.assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+
+        StreamCachingStage recreatedStreamCachingStage = StreamCachingStage.getStreamCachingStage(BASE_ID);
+        Assert.assertNotSame(streamCachingStage, recreatedStreamCachingStage);
+        Assert.assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+        Assert.assertEquals(0, recreatedStreamCachingStage.getSpooledCount());
+    }
+
+
+    /**
+     *
+     * @param body
+     * @return
+     */
+    private Exchange send(String body) {
+        return template.request(StreamingRoute.ENTRY_NAME, exchange -> {
+            exchange.getIn().setBody(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        });
+    }
+
+
+    /**
+     *
+     * @param exchange
+     * @return
+     */
+    private static Message reply(Exchange exchange) {
+        return exchange.hasOut() ? exchange.getOut() : exchange.getIn();
+    }
+
+
+    /**
+     *
+     * @param length
+     * @return
+     */
+    private static String buildBody(int length) {
+        StringBuilder stringBuilder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            stringBuilder.append((char)('a' + i % 26));
+        }
+
+        return stringBuilder.toString();
+    }
+
+}
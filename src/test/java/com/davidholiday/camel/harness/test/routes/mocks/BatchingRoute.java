@@ -0,0 +1,64 @@
+package com.davidholiday.camel.harness.test.routes.mocks;
+
+
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+
+/**
+ * request/reply route with a concurrency and a batching stage. the business logic route answers each body in a batch
+ * with the body and "-reply", and fails the whole batch if any body is FAIL_BODY. the size of every batch it sees, the
+ * thread it ran on and whether it had a unit of work are recorded so tests can check how exchanges were batched.
+ */
+public class BatchingRoute extends RouteBuilderHarness {
+
+    public static final String ENTRY_NAME = "direct:batchingIn";
+
+    public static final String FAIL_BODY = "fail";
+
+    public static final List<Integer> BATCH_SIZE_LIST = new CopyOnWriteArrayList<>();
+    public static final List<String> BATCH_THREAD_NAME_LIST = new CopyOnWriteArrayList<>();
+    public static final List<Boolean> BATCH_UNIT_OF_WORK_LIST = new CopyOnWriteArrayList<>();
+
+    private static final String NAME = BatchingRoute.class.getSimpleName();
+
+
+    public BatchingRoute() { super(NAME, false); }
+
+
+    @Override
+    protected boolean hasConcurrencyStage() { return true; }
+
+
+    @Override
+    protected boolean isBatching() { return true; }
+
+
+    public void configure() throws Exception {
+        from(ENTRY_NAME).routeId(FROM_ROUTE_ID)
+                        .to(BUSINESS_LOGIC_ROUTE_FROM_NAME);
+
+        from(BUSINESS_LOGIC_ROUTE_FROM_NAME).routeId(BUSINESS_LOGIC_ROUTE_ID)
+                                            .description(BUSINESS_LOGIC_ROUTE_DESCRIPTION)
+                                            .process(exchange -> {
+                                                List<?> bodyList = exchange.getIn().getBody(List.class);
+                                                BATCH_SIZE_LIST.add(bodyList.size());
+                                                BATCH_THREAD_NAME_LIST.add(Thread.currentThread().getName());
+                                                BATCH_UNIT_OF_WORK_LIST.add(exchange.getUnitOfWork() != null);
+
+                                                if (bodyList.contains(FAIL_BODY)) {
+                                                    throw new IllegalArgumentException("batch had " + FAIL_BODY);
+                                                }
+
+                                                exchange.getIn().setBody(
+                                                        bodyList.stream()
+                                                                .map(body -> body + "-reply")
+                                                                .collect(Collectors.toList())
+                                                );
+                                            });
+    }
+
+}
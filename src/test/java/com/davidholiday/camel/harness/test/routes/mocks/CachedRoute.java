@@ -0,0 +1,66 @@
+package com.davidholiday.camel.harness.test.routes.mocks;
+
+
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+
+import org.apache.camel.Expression;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * request/reply route whose answers are cached on the ID_HEADER. the business logic route answers with the id and how
+ * many times it's run, and fails for FAIL_ID. if a latch is set every run waits for it to open, so tests can keep a
+ * miss in flight.
+ */
+public class CachedRoute extends RouteBuilderHarness {
+
+    public static final String ENTRY_NAME = "direct:cachedIn";
+
+    public static final String ID_HEADER = "id";
+
+    public static final String FAIL_ID = "fail";
+
+    public static final AtomicInteger RUN_COUNT = new AtomicInteger();
+
+    private static final String NAME = CachedRoute.class.getSimpleName();
+
+    private static volatile CountDownLatch latch;
+
+
+    public CachedRoute() { super(NAME, false); }
+
+
+    public static void setLatch(CountDownLatch countDownLatch) { latch = countDownLatch; }
+
+
+    @Override
+    protected Expression getResultCacheKeyExpression() { return header(ID_HEADER); }
+
+
+    public void configure() throws Exception {
+        from(ENTRY_NAME).routeId(FROM_ROUTE_ID)
+                        .to(BUSINESS_LOGIC_ROUTE_FROM_NAME);
+
+        from(BUSINESS_LOGIC_ROUTE_FROM_NAME).routeId(BUSINESS_LOGIC_ROUTE_ID)
+                                            .description(BUSINESS_LOGIC_ROUTE_DESCRIPTION)
+                                            .process(exchange -> {
+                                                int runCount = RUN_COUNT.incrementAndGet();
+
+                                                CountDownLatch countDownLatch = latch;
+                                                if (countDownLatch != null) {
+                                                    countDownLatch.await(5, TimeUnit.SECONDS);
+                                                }
+
+                                                String id = exchange.getIn().getHeader(ID_HEADER, String.class);
+                                                if (FAIL_ID.equals(id)) {
+                                                    throw new IllegalArgumentException("lookup failed for " + id);
+                                                }
+
+                                                exchange.getIn().setBody(id + "-" + runCount);
+                                            });
+    }
+
+}
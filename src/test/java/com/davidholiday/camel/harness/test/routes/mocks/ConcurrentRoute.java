@@ -0,0 +1,51 @@
+package com.davidholiday.camel.harness.test.routes.mocks;
+
+
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * request/reply route with a concurrency stage. the business logic route answers with the name of the thread it ran
+ * on. if a latch is set every exchange counts it down and waits for it to open, so tests can check how many exchanges
+ * the stage runs at once.
+ */
+public class ConcurrentRoute extends RouteBuilderHarness {
+
+    public static final String ENTRY_NAME = "direct:concurrentIn";
+
+    private static final String NAME = ConcurrentRoute.class.getSimpleName();
+
+    private static volatile CountDownLatch latch;
+
+
+    public ConcurrentRoute() { super(NAME, false); }
+
+
+    @Override
+    protected boolean hasConcurrencyStage() { return true; }
+
+
+    public static void setLatch(CountDownLatch countDownLatch) { latch = countDownLatch; }
+
+
+    public void configure() throws Exception {
+        from(ENTRY_NAME).routeId(FROM_ROUTE_ID)
+                        .to(BUSINESS_LOGIC_ROUTE_FROM_NAME);
+
+        from(BUSINESS_LOGIC_ROUTE_FROM_NAME).routeId(BUSINESS_LOGIC_ROUTE_ID)
+                                            .description(BUSINESS_LOGIC_ROUTE_DESCRIPTION)
+                                            .process(exchange -> {
+                                                CountDownLatch countDownLatch = latch;
+                                                if (countDownLatch != null) {
+                                                    countDownLatch.countDown();
+                                                    countDownLatch.await(5, TimeUnit.SECONDS);
+                                                }
+
+                                                exchange.getIn().setBody(Thread.currentThread().getName());
+                                            });
+    }
+
+}
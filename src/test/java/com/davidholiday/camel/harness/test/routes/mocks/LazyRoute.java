@@ -0,0 +1,37 @@
+package com.davidholiday.camel.harness.test.routes.mocks;
+
+
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+
+
+/**
+ * lazily started request/reply route with a from, business logic and to route
+ */
+public class LazyRoute extends RouteBuilderHarness {
+
+    public static final String ENTRY_NAME = "direct:lazyIn";
+
+    private static final String NAME = LazyRoute.class.getSimpleName();
+
+
+    public LazyRoute() { super(NAME, true); }
+
+
+    @Override
+    protected boolean isLazyStart() { return true; }
+
+
+    public void configure() throws Exception {
+        from(ENTRY_NAME).routeId(FROM_ROUTE_ID)
+                        .to(BUSINESS_LOGIC_ROUTE_FROM_NAME);
+
+        from(BUSINESS_LOGIC_ROUTE_FROM_NAME).routeId(BUSINESS_LOGIC_ROUTE_ID)
+                                            .description(BUSINESS_LOGIC_ROUTE_DESCRIPTION)
+                                            .setBody(simple("${body}-businessLogic"))
+                                            .to(BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL.get());
+
+        from(BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL.get()).routeId(TO_ROUTE_ID)
+                                                         .setBody(simple("${body}-to"));
+    }
+
+}
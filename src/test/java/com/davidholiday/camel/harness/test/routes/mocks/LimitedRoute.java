@@ -0,0 +1,50 @@
+package com.davidholiday.camel.harness.test.routes.mocks;
+
+
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+
+
+/**
+ * request/reply route with a concurrency stage and a concurrency limit. if the SLEEP_MILLIS_HEADER is set the business
+ * logic route sleeps that long so tests can keep exchanges in flight. if the FAIL_HEADER is true it fails the exchange.
+ */
+public class LimitedRoute extends RouteBuilderHarness {
+
+    public static final String ENTRY_NAME = "direct:limitedIn";
+
+    public static final String SLEEP_MILLIS_HEADER = "sleepMillis";
+
+    public static final String FAIL_HEADER = "fail";
+
+    private static final String NAME = LimitedRoute.class.getSimpleName();
+
+
+    public LimitedRoute() { super(NAME, false); }
+
+
+    @Override
+    protected boolean hasConcurrencyStage() { return true; }
+
+
+    @Override
+    protected boolean isConcurrencyLimited() { return true; }
+
+
+    public void configure() throws Exception {
+        from(ENTRY_NAME).routeId(FROM_ROUTE_ID)
+                        .to(BUSINESS_LOGIC_ROUTE_FROM_NAME);
+
+        from(BUSINESS_LOGIC_ROUTE_FROM_NAME).routeId(BUSINESS_LOGIC_ROUTE_ID)
+                                            .description(BUSINESS_LOGIC_ROUTE_DESCRIPTION)
+                                            .process(exchange -> Thread.sleep(
+                                                    exchange.getIn().getHeader(SLEEP_MILLIS_HEADER, 0L, Long.class)
+                                            ))
+                                            .process(exchange -> {
+                                                if (exchange.getIn().getHeader(FAIL_HEADER, false, Boolean.class)) {
+                                                    throw new IllegalStateException("asked to fail");
+                                                }
+                                            })
+                                            .setBody(constant("done"));
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.davidholiday.camel.harness.test.routes.mocks;
+
+
+import com.davidholiday.camel.harness.routing.RouteBuilderHarness;
+import com.davidholiday.camel.harness.routing.StreamCachingStage;
+
+import org.apache.camel.StreamCache;
+
+
+/**
+ * stream caching request/reply route whose business logic route reads the body and its to-route reads it again. the
+ * business logic route notes what it was handed in headers
+ */
+public class StreamingRoute extends RouteBuilderHarness {
+
+    public static final String ENTRY_NAME = "direct:streamingIn";
+
+    public static final String IN_MEMORY_HEADER = "inMemory";
+    public static final String SPOOLED_COUNT_HEADER = "spooledCount";
+    public static final String FIRST_READ_LENGTH_HEADER = "firstReadLength";
+
+    private static final String NAME = StreamingRoute.class.getSimpleName();
+
+
+    public StreamingRoute() { super(NAME, true); }
+
+
+    @Override
+    protected boolean isStreamCaching() { return true; }
+
+
+    public void configure() throws Exception {
+        from(ENTRY_NAME).routeId(FROM_ROUTE_ID)
+                        .to(BUSINESS_LOGIC_ROUTE_FROM_NAME);
+
+        from(BUSINESS_LOGIC_ROUTE_FROM_NAME).routeId(BUSINESS_LOGIC_ROUTE_ID)
+                                            .description(BUSINESS_LOGIC_ROUTE_DESCRIPTION)
+                                            .process(exchange -> {
+                                                StreamCache streamCache =
+                                                        exchange.getIn().getBody(StreamCache.class);
+
+                                                exchange.getIn().setHeader(IN_MEMORY_HEADER, streamCache.inMemory());
+                                                exchange.getIn().setHeader(
+                                                        SPOOLED_COUNT_HEADER,
+                                                        StreamCachingStage.getStreamCachingStage(BASE_ID)
+                                                                          .getSpooledCount()
+                                                );
+                                            })
+                                            .setHeader(FIRST_READ_LENGTH_HEADER, simple("${bodyAs(String).length}"))
+                                            .to(BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL.get());
+
+        from(BUSINESS_LOGIC_ROUTE_TO_NAME_OPTIONAL.get()).routeId(TO_ROUTE_ID)
+                                                         .convertBodyTo(String.class);
+    }
+
+}
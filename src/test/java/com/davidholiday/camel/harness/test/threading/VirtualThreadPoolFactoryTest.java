@@ -0,0 +1,80 @@
+package com.davidholiday.camel.harness.test.threading;
+
+
+import com.davidholiday.camel.harness.test.routes.mocks.ConcurrentRoute;
+import com.davidholiday.camel.harness.threading.VirtualThreadPoolFactory;
+import com.davidholiday.camel.harness.threading.VirtualThreads;
+
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.test.junit4.CamelTestSupport;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * ensures the virtual thread profile can be installed on any runtime and that pools made from it are backed by
+ * virtual threads exactly when the runtime has them.
+ */
+public class VirtualThreadPoolFactoryTest extends CamelTestSupport {
+
+    protected RouteBuilder createRouteBuilder() throws Exception {
+        VirtualThreadPoolFactory.install(context);
+
+        return new ConcurrentRoute() {
+            @Override
+            protected String getThreadPoolProfileId() { return VirtualThreadPoolFactory.PROFILE_ID; }
+        };
+    }
+
+
+    @Test
+    public void installRegistersProfile() {
+        Assert.assertEquals(
+                "install should report whether the profile is backed by virtual threads",
+                VirtualThreads.isAvailable(),
+                VirtualThreadPoolFactory.install(context)
+        );
+
+        Assert.assertNotNull(
+                "the profile should be registered whether or not the runtime has virtual threads",
+                context.getExecutorServiceManager().getThreadPoolProfile(VirtualThreadPoolFactory.PROFILE_ID)
+        );
+    }
+
+    @Test
+    public void poolFromProfileUsesVirtualThreadsWhenAvailable() throws Exception {
+        ExecutorService executorService = context.getExecutorServiceManager()
+                                                 .newThreadPool(this, "test", VirtualThreadPoolFactory.PROFILE_ID);
+
+        try {
+            boolean ranOnVirtualThread = executorService.submit(() -> VirtualThreads.isVirtual(Thread.currentThread()))
+                                                        .get(5, TimeUnit.SECONDS);
+
+            Assert.assertEquals(
+                    "pool should be backed by virtual threads exactly when the runtime has them",
+                    VirtualThreads.isAvailable(),
+                    ranOnVirtualThread
+            );
+        } finally {
+            context.getExecutorServiceManager().shutdown(executorService);
+        }
+    }
+
+    @Test
+    public void concurrencyStageRunsOnProfile() {
+        String threadName = template.requestBody(ConcurrentRoute.ENTRY_NAME, "", String.class);
+
+        Assert.assertFalse(
+                "business logic should run on a pool made from the profile, ran on " + threadName,
+                threadName.startsWith(ConcurrentRoute.class.getSimpleName() + "-concurrencyStage-")
+        );
+
+        Assert.assertNotEquals("business logic shouldn't run on the caller", Thread.currentThread().getName(),
+                               threadName);
+    }
+
+}
@@ -0,0 +1,149 @@
+package com.davidholiday.camel.harness.test.threading;
+
+
+import com.davidholiday.camel.harness.threading.VirtualThreadPoolFactory;
+import com.davidholiday.camel.harness.threading.VirtualThreads;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.impl.DefaultCamelContext;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * compares how many blocking exchanges per second a threads block gets through on camel's default thread pool profile
+ * and on VirtualThreadPoolFactory.PROFILE_ID. each exchange sleeps to stand in for an http or jdbc call.
+ *
+ * every exchange is sent with a blocking requestBody from a caller thread of its own - virtual ones where the runtime
+ * has them, otherwise an unbounded pool - so what's measured is the threads block rather than whatever is sending.
+ *
+ * takes long enough that it's skipped unless asked for, which also needs java 21 or later to see virtual threads:
+ *
+ *   -Dharness.benchmark=true [-Dharness.benchmark.exchangeCount=5000] [-Dharness.benchmark.blockingMillis=20]
+ */
+public class VirtualThreadProfileBenchmarkTest {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadProfileBenchmarkTest.class);
+
+    private static final String ENTRY_NAME = "direct:benchmarkIn";
+
+    private static final int DEFAULT_EXCHANGE_COUNT = 5000;
+    private static final long DEFAULT_BLOCKING_MILLIS = 20;
+
+    private static final int WARMUP_EXCHANGE_COUNT = 500;
+
+
+    @Test
+    public void virtualThreadProfileKeepsUpWithDefaultProfile() throws Exception {
+        Assume.assumeTrue("set -Dharness.benchmark=true to run", Boolean.getBoolean("harness.benchmark"));
+
+        int exchangeCount = Integer.getInteger("harness.benchmark.exchangeCount", DEFAULT_EXCHANGE_COUNT);
+        long blockingMillis = Long.getLong("harness.benchmark.blockingMillis", DEFAULT_BLOCKING_MILLIS);
+
+        LOGGER.info("virtual threads available: {}, exchanges: {}, blocking millis per exchange: {}",
+                    VirtualThreads.isAvailable(), exchangeCount, blockingMillis);
+
+        // a throwaway round so neither profile pays for class loading and jit warmup the other doesn't
+        run(null, WARMUP_EXCHANGE_COUNT, blockingMillis);
+        run(VirtualThreadPoolFactory.PROFILE_ID, WARMUP_EXCHANGE_COUNT, blockingMillis);
+
+        double defaultExchangesPerSecond = run(null, exchangeCount, blockingMillis);
+        double virtualExchangesPerSecond = run(VirtualThreadPoolFactory.PROFILE_ID, exchangeCount, blockingMillis);
+
+        LOGGER.info("default profile: {} exchanges/s, {}: {} exchanges/s",
+                    Math.round(defaultExchangesPerSecond),
+                    VirtualThreadPoolFactory.PROFILE_ID,
+                    Math.round(virtualExchangesPerSecond));
+
+        // without virtual threads both profiles are platform thread pools, so there's nothing to compare
+        if (VirtualThreads.isAvailable()) {
+            Assert.assertTrue(
+                    "blocking exchanges shouldn't be slower on virtual threads",
+                    virtualExchangesPerSecond >= defaultExchangesPerSecond
+            );
+        }
+    }
+
+
+    /**
+     *
+     * @param threadPoolProfileId null for camel's default profile
+     * @param exchangeCount
+     * @param blockingMillis
+     * @return
+     * @throws Exception
+     */
+    private static double run(String threadPoolProfileId, int exchangeCount, long blockingMillis) throws Exception {
+        CamelContext camelContext = new DefaultCamelContext();
+        VirtualThreadPoolFactory.install(camelContext);
+
+        String executorServiceRef = threadPoolProfileId == null
+                ? camelContext.getExecutorServiceManager().getDefaultThreadPoolProfile().getId()
+                : threadPoolProfileId;
+
+        camelContext.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from(ENTRY_NAME).threads()
+                                .executorServiceRef(executorServiceRef)
+                                .process(exchange -> Thread.sleep(blockingMillis));
+            }
+        });
+
+        camelContext.start();
+        ProducerTemplate producerTemplate = camelContext.createProducerTemplate();
+        ExecutorService callerExecutorService = VirtualThreads.isAvailable()
+                ? VirtualThreads.newVirtualThreadPerTaskExecutor("benchmarkCaller-")
+                : Executors.newCachedThreadPool();
+
+        try {
+            long startNanos = System.nanoTime();
+            sendAndWait(producerTemplate, callerExecutorService, exchangeCount);
+            long elapsedNanos = System.nanoTime() - startNanos;
+
+            return exchangeCount / (elapsedNanos / (double)TimeUnit.SECONDS.toNanos(1));
+        } finally {
+            callerExecutorService.shutdownNow();
+            producerTemplate.stop();
+            camelContext.stop();
+        }
+    }
+
+
+    /**
+     *
+     * @param producerTemplate
+     * @param callerExecutorService
+     * @param exchangeCount
+     * @throws Exception
+     */
+    private static void sendAndWait(ProducerTemplate producerTemplate,
+                                    ExecutorService callerExecutorService,
+                                    int exchangeCount) throws Exception {
+
+        List<Future<Object>> futureList = new ArrayList<>(exchangeCount);
+        for (int i = 0; i < exchangeCount; i++) {
+            Object body = i;
+            futureList.add(callerExecutorService.submit(() -> producerTemplate.requestBody(ENTRY_NAME, body)));
+        }
+
+        for (Future<Object> future : futureList) {
+            future.get();
+        }
+    }
+
+}